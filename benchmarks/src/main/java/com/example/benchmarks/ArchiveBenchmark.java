@@ -0,0 +1,92 @@
+package com.example.benchmarks;
+
+import com.example.CompactExpression;
+import com.example.ExpressionArchive;
+import com.example.ExpressionTreeBuilder;
+import com.example.FunctionRegistry;
+import com.example.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class compares loading 50,000 formulas at startup by parsing their text against opening an
+ * expression archive, with and without decoding every formula.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArchiveBenchmark {
+
+    private static final int FORMULAS = 50_000;
+
+    private FunctionRegistry functions;
+    private List<String> expressions;
+    private Path archive;
+
+    /**
+     * Generates the formulas and writes them to a temporary archive.
+     *
+     * @throws Exception If a formula cannot be parsed or the archive cannot be written.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        functions = FunctionRegistry.standard();
+        expressions = new ArrayList<>();
+        List<CompactExpression> compacts = new ArrayList<>();
+        for (int i = 0; i < FORMULAS; i++) {
+            String expression = "price" + i % 100 + " * (1 + rate / " + (i % 12 + 1) + ") ^ years - max(fee, "
+                    + i + ".25 * sin(x)) / ln(y + " + i + ")";
+            expressions.add(expression);
+            compacts.add(CompactExpression.parse(expression, functions));
+        }
+        archive = Files.createTempFile("formulas", ".bin");
+        ExpressionArchive.write(archive, compacts);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(archive);
+    }
+
+    @Benchmark
+    public Object parseAll() throws Exception {
+        Node[] trees = new Node[FORMULAS];
+        for (int i = 0; i < FORMULAS; i++) {
+            trees[i] = ExpressionTreeBuilder.buildExpressionTree(expressions.get(i), new HashMap<>(), functions);
+        }
+        return trees;
+    }
+
+    @Benchmark
+    public Object openArchive() throws Exception {
+        return ExpressionArchive.open(archive);
+    }
+
+    @Benchmark
+    public Object openAndDecodeAll() throws Exception {
+        ExpressionArchive loaded = ExpressionArchive.open(archive);
+        for (int i = 0; i < loaded.size(); i++) {
+            loaded.get(i);
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.benchmarks;
+
+import com.example.CompiledExpression;
+import com.example.CompiledGradient;
+import com.example.ExpressionCompiler;
+import com.example.ExpressionTreeBuilder;
+import com.example.ExpressionTreeEvaluator;
+import com.example.FunctionRegistry;
+import com.example.GradientCompiler;
+import com.example.Lexer;
+import com.example.Node;
+import com.example.Parser;
+import com.example.Token;
+import com.example.TokenType;
+import com.example.Tokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class benchmarks every phase of turning an expression string into a result:
+ * tokenizing, parsing, building the tree, and evaluating it with the tree evaluator or as a compiled program,
+ * with or without its gradient.
+ * The deep workloads recurse once per nesting level, so the forks run with a large thread stack.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss512m")
+public class ExpressionBenchmark {
+
+    /**
+     * The workload being measured. See Workloads for the expressions.
+     */
+    @Param({Workloads.SHORT, Workloads.NESTED, Workloads.LONG_SUM, Workloads.FUNCTION_HEAVY})
+    public String workload;
+
+    private String expression;
+    private Map<String, Double> variables;
+    private FunctionRegistry functions;
+    private List<Token> tokens;
+    private Node root;
+    private CompiledExpression compiled;
+    private double[] values;
+    private CompiledGradient gradientProgram;
+    private double[] gradient;
+
+    /**
+     * Prepares the inputs of every phase, so that each benchmark only measures its own phase.
+     *
+     * @throws Exception If the workload expression cannot be built or compiled.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        expression = Workloads.expression(workload);
+        variables = Workloads.variables();
+        functions = FunctionRegistry.standard();
+        tokens = new Tokenizer(expression).tokenize();
+        root = ExpressionTreeBuilder.buildExpressionTree(expression, variables, functions);
+        compiled = ExpressionCompiler.compile(root, functions);
+        values = compiled.getLayout().newValues();
+        compiled.getLayout().bind(variables, values);
+        gradientProgram = GradientCompiler.compile(root, compiled.getLayout(), functions);
+        gradient = gradientProgram.newGradient();
+    }
+
+    @Benchmark
+    public List<Token> tokenize() throws Exception {
+        return new Tokenizer(expression).tokenize();
+    }
+
+    @Benchmark
+    public int lex() throws Exception {
+        Lexer lexer = new Lexer(expression);
+        int count = 0;
+        while (lexer.next() != TokenType.EOF) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public Node parse() throws Exception {
+        return new Parser(tokens, variables, functions).parse();
+    }
+
+    @Benchmark
+    public Node build() throws Exception {
+        return ExpressionTreeBuilder.buildExpressionTree(expression, variables, functions);
+    }
+
+    @Benchmark
+    public double evaluateTree() throws Exception {
+        return ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions);
+    }
+
+    @Benchmark
+    public double evaluateCompiled() {
+        return compiled.evaluate(values);
+    }
+
+    @Benchmark
+    public double evaluateGradient() {
+        return gradientProgram.evaluate(values, gradient);
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.benchmarks;
+
+import com.example.CompiledExpression;
+import com.example.ExpressionCompiler;
+import com.example.ExpressionTreeBuilder;
+import com.example.FastMath;
+import com.example.FunctionRegistry;
+import com.example.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class compares the fast math functions with the exact ones, called directly over an array of arguments
+ * and from a compiled grid expression built with FunctionRegistry.standard() or FunctionRegistry.fastMath().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FastMathBenchmark {
+
+    /**
+     * The number of arguments each benchmark goes through.
+     */
+    private static final int SIZE = 1024;
+
+    /**
+     * The grid expression evaluated at every point.
+     */
+    private static final String EXPRESSION = "sin(x) * cos(y) + tan(x / 4) - ln(1 + x * x)";
+
+    private double[] arguments;
+    private CompiledExpression exact;
+    private CompiledExpression fast;
+    private double[] point;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(1);
+        arguments = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            arguments[i] = 0.001 + 100 * random.nextDouble();
+        }
+        Map<String, Double> variables = new HashMap<>();
+        FunctionRegistry standard = FunctionRegistry.standard();
+        FunctionRegistry fastMath = FunctionRegistry.fastMath();
+        Node root = ExpressionTreeBuilder.buildExpressionTree(EXPRESSION, variables, standard);
+        exact = ExpressionCompiler.compile(root, standard);
+        fast = ExpressionCompiler.compile(root, fastMath);
+        point = new double[2];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double sinExact() {
+        double sum = 0;
+        for (double x : arguments) {
+            sum += StrictMath.sin(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double sinMath() {
+        double sum = 0;
+        for (double x : arguments) {
+            sum += Math.sin(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double sinFast() {
+        double sum = 0;
+        for (double x : arguments) {
+            sum += FastMath.sin(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double tanMath() {
+        double sum = 0;
+        for (double x : arguments) {
+            sum += Math.tan(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double tanFast() {
+        double sum = 0;
+        for (double x : arguments) {
+            sum += FastMath.tan(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double logMath() {
+        double sum = 0;
+        for (double x : arguments) {
+            sum += Math.log(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double logFast() {
+        double sum = 0;
+        for (double x : arguments) {
+            sum += FastMath.log(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double gridExact() {
+        return grid(exact);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double gridFast() {
+        return grid(fast);
+    }
+
+    /**
+     * Evaluates a compiled grid expression at SIZE points.
+     *
+     * @param expression The compiled expression.
+     * @return The sum of the values.
+     */
+    private double grid(CompiledExpression expression) {
+        double sum = 0;
+        for (int i = 0; i < SIZE; i++) {
+            point[0] = arguments[i];
+            point[1] = arguments[SIZE - 1 - i];
+            sum += expression.evaluate(point);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.benchmarks;
+
+import com.example.CompiledExpression;
+import com.example.ExpressionCompiler;
+import com.example.ExpressionTreeBuilder;
+import com.example.ExpressionTreeEvaluator;
+import com.example.FormulaSet;
+import com.example.FunctionRegistry;
+import com.example.Node;
+import com.example.VariableLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class compares computing a report of 200 related formulas for one record: each formula evaluated as its
+ * own tree, each compiled separately, and all of them fused into one FormulaSet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormulaSetBenchmark {
+
+    /**
+     * The number of formulas in the report.
+     */
+    private static final int FORMULAS = 200;
+
+    private FunctionRegistry functions;
+    private Map<String, Double> variables;
+    private Node[] roots;
+    private CompiledExpression[] compiled;
+    private FormulaSet set;
+    private double[] values;
+    private double[] results;
+
+    @Setup
+    public void setUp() throws Exception {
+        functions = FunctionRegistry.standard();
+        variables = new HashMap<>();
+        String[] names = {"price", "quantity", "tax", "cost", "discount"};
+        for (int i = 0; i < names.length; i++) {
+            variables.put(names[i], 1.5 + i);
+        }
+        Map<String, String> formulas = new LinkedHashMap<>();
+        for (int i = 0; i < FORMULAS; i++) {
+            formulas.put("f" + i, "price * quantity * (1 + tax) - cost * " + (i % 7 + 1)
+                    + " + ln(price * quantity) / (" + (i % 5 + 2) + " - discount) + max(cost, discount) ^ " + (i % 3));
+        }
+        VariableLayout layout = new VariableLayout(names);
+        roots = new Node[FORMULAS];
+        compiled = new CompiledExpression[FORMULAS];
+        int i = 0;
+        for (String formula : formulas.values()) {
+            roots[i] = ExpressionTreeBuilder.buildExpressionTree(formula, variables, functions);
+            compiled[i] = ExpressionCompiler.compile(roots[i], layout, functions);
+            i++;
+        }
+        set = FormulaSet.compile(formulas, layout, functions);
+        values = layout.newValues();
+        layout.bind(variables, values);
+        results = set.newResults();
+    }
+
+    @Benchmark
+    public double[] separateTrees() throws Exception {
+        for (int i = 0; i < FORMULAS; i++) {
+            results[i] = ExpressionTreeEvaluator.evaluateExpressionTree(roots[i], variables, functions);
+        }
+        return results;
+    }
+
+    @Benchmark
+    public double[] separateCompiled() {
+        for (int i = 0; i < FORMULAS; i++) {
+            results[i] = compiled[i].evaluate(values);
+        }
+        return results;
+    }
+
+    @Benchmark
+    public double[] fused() {
+        set.evaluate(values, results);
+        return results;
+    }
+}
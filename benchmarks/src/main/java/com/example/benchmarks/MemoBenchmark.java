@@ -0,0 +1,101 @@
+package com.example.benchmarks;
+
+import com.example.BatchEvaluator;
+import com.example.CompiledExpression;
+import com.example.ExpressionCompiler;
+import com.example.ExpressionFunction;
+import com.example.ExpressionTreeBuilder;
+import com.example.FunctionRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class compares a batch of rows calling an expensive pure function directly and through a memoized copy,
+ * for a varying number of distinct arguments in the batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoBenchmark {
+
+    /**
+     * The number of rows in the batch.
+     */
+    private static final int ROWS = 4096;
+
+    /**
+     * The number of distinct values of the argument across the batch.
+     */
+    @Param({"64", "4096"})
+    public int distinct;
+
+    private CompiledExpression direct;
+    private CompiledExpression memoized;
+    private double[][] columns;
+    private double[] out;
+
+    @Setup
+    public void setUp() throws Exception {
+        ExpressionFunction gamma = ExpressionFunction.unary("gamma", MemoBenchmark::gamma, true);
+        FunctionRegistry plain = FunctionRegistry.standard().register(gamma);
+        FunctionRegistry cached = FunctionRegistry.standard().register(gamma.memoized(8192));
+        String expression = "gamma(x) * 2 + x";
+        direct = ExpressionCompiler.compile(ExpressionTreeBuilder.buildExpressionTree(expression, new HashMap<>(), plain), plain);
+        memoized = ExpressionCompiler.compile(ExpressionTreeBuilder.buildExpressionTree(expression, new HashMap<>(), cached), cached);
+        Random random = new Random(5);
+        columns = new double[1][ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            columns[0][i] = 1 + random.nextInt(distinct) * 0.01;
+        }
+        out = new double[ROWS];
+    }
+
+    /**
+     * Computes the gamma function by the Lanczos approximation, standing in for an expensive special function.
+     *
+     * @param x The argument, above 0.5.
+     * @return The value of the gamma function.
+     */
+    private static double gamma(double x) {
+        double[] coefficients = {0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313,
+                -176.61502916214059, 12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6, 1.5056327351493116e-7};
+        x -= 1;
+        double sum = coefficients[0];
+        for (int i = 1; i < coefficients.length; i++) {
+            sum += coefficients[i] / (x + i);
+        }
+        double t = x + 7.5;
+        return Math.sqrt(2 * Math.PI) * Math.pow(t, x + 0.5) * Math.exp(-t) * sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public double[] direct() {
+        BatchEvaluator.evaluate(direct, columns, out);
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public double[] memoized() {
+        BatchEvaluator.evaluate(memoized, columns, out);
+        return out;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.benchmarks;
+
+import com.example.CompactExpression;
+import com.example.ExpressionTreeBuilder;
+import com.example.FunctionRegistry;
+import com.example.Node;
+
+import java.util.HashMap;
+
+/**
+ * This class measures how much heap each stored formula takes as a tree of Node objects and as a CompactExpression.
+ * For every workload it keeps many parsed copies of the formula alive, measures the growth of the used heap after
+ * a full collection, and prints the measured bytes per formula next to the estimates of CompactExpression.
+ * Usage: java -cp benchmarks/target/benchmarks.jar com.example.benchmarks.MemoryFootprint [copies]
+ */
+public class MemoryFootprint {
+    public static void main(String[] args) throws Exception {
+        int copies = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        FunctionRegistry functions = FunctionRegistry.standard();
+        System.out.printf("%-14s %14s %14s %14s %14s%n", "workload", "Node measured", "Node estimate",
+                "compact meas.", "compact est.");
+        for (String workload : new String[] {Workloads.SHORT, Workloads.FUNCTION_HEAVY}) {
+            String expression = Workloads.expression(workload);
+            int count = workload.equals(Workloads.SHORT) ? copies : Math.max(1, copies / 200);
+
+            Object[] trees = new Object[count];
+            long before = usedHeap();
+            for (int i = 0; i < count; i++) {
+                trees[i] = ExpressionTreeBuilder.buildExpressionTree(expression, new HashMap<>(), functions);
+            }
+            long treeBytes = (usedHeap() - before) / count;
+            long treeEstimate = CompactExpression.estimateBytes((Node) trees[0]);
+            trees = null;
+
+            Object[] compacts = new Object[count];
+            before = usedHeap();
+            for (int i = 0; i < count; i++) {
+                compacts[i] = CompactExpression.parse(expression, functions);
+            }
+            long compactBytes = (usedHeap() - before) / count;
+            long compactEstimate = ((CompactExpression) compacts[0]).estimateBytes();
+
+            System.out.printf("%-14s %14d %14d %14d %14d%n", workload, treeBytes, treeEstimate, compactBytes, compactEstimate);
+        }
+    }
+
+    /**
+     * Returns the used heap after running the garbage collector a few times.
+     *
+     * @return The used heap in bytes.
+     */
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
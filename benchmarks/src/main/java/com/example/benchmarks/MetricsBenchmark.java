@@ -0,0 +1,79 @@
+package com.example.benchmarks;
+
+import com.example.ExpressionMetrics;
+import com.example.ExpressionTreeBuilder;
+import com.example.ExpressionTreeEvaluator;
+import com.example.FunctionRegistry;
+import com.example.Lexer;
+import com.example.Node;
+import com.example.Parser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures the cost of instrumentation on building and evaluating a short expression.
+ * The baseline benchmarks call the Parser directly, bypassing the instrumented entry point, so comparing them
+ * with the instrumented ones while metrics are off shows the cost of the disabled check alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    /**
+     * Whether instrumentation is on.
+     */
+    @Param({"false", "true"})
+    public boolean enabled;
+
+    private String expression;
+    private Map<String, Double> variables;
+    private FunctionRegistry functions;
+    private Node root;
+
+    @Setup
+    public void setUp() throws Exception {
+        expression = Workloads.expression(Workloads.SHORT);
+        variables = Workloads.variables();
+        functions = FunctionRegistry.standard();
+        root = ExpressionTreeBuilder.buildExpressionTree(expression, variables, functions);
+        ExpressionMetrics.setEnabled(enabled);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ExpressionMetrics.setEnabled(false);
+        ExpressionMetrics.reset();
+    }
+
+    @Benchmark
+    public Node buildBaseline() throws Exception {
+        return new Parser(new Lexer(expression), variables, functions).parse();
+    }
+
+    @Benchmark
+    public Node build() throws Exception {
+        return ExpressionTreeBuilder.buildExpressionTree(expression, variables, functions);
+    }
+
+    @Benchmark
+    public double evaluate() throws Exception {
+        return ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.benchmarks;
+
+import com.example.ExpressionTreeBuilder;
+import com.example.FunctionRegistry;
+import com.example.ValidationResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class compares checking user formulas with the exception-free validation API against
+ * building them and catching the exception, for valid and invalid input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    /**
+     * The formula being checked.
+     */
+    @Param({"2 * (x + 3) ^ (1 / y)", "2 * (x + 3 ^ (1 / y", "max(x, y) + * sin z"})
+    public String formula;
+
+    private FunctionRegistry functions;
+    private ValidationResult result;
+
+    @Setup
+    public void setUp() {
+        functions = FunctionRegistry.standard();
+        result = new ValidationResult();
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return ExpressionTreeBuilder.validate(formula, functions, result);
+    }
+
+    @Benchmark
+    public boolean buildAndCatch() {
+        try {
+            ExpressionTreeBuilder.buildExpressionTree(formula, new HashMap<>(), functions);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
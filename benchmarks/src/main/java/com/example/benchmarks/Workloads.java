@@ -0,0 +1,75 @@
+package com.example.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class generates the expressions the benchmarks run on, keyed by workload name.
+ */
+public class Workloads {
+
+    /**
+     * The names of the workloads, as used in the benchmark parameters.
+     */
+    public static final String SHORT = "short";
+    public static final String NESTED = "nested";
+    public static final String LONG_SUM = "longSum";
+    public static final String FUNCTION_HEAVY = "functionHeavy";
+
+    /**
+     * This method returns the expression of the given workload.
+     * <ul>
+     *     <li>short: a typical hand-written formula.</li>
+     *     <li>nested: a term wrapped in 1,000 levels of parentheses.</li>
+     *     <li>longSum: a sum of 100,000 terms alternating between a variable and a constant.</li>
+     *     <li>functionHeavy: 200 products of function calls over several variables.</li>
+     * </ul>
+     *
+     * @param workload The name of the workload.
+     * @return The expression of the workload.
+     */
+    public static String expression(String workload) {
+        StringBuilder builder = new StringBuilder();
+        switch (workload) {
+            case SHORT:
+                return "2 * (x + 3) ^ (1 / y)";
+            case NESTED:
+                for (int i = 0; i < 1000; i++) {
+                    builder.append('(');
+                }
+                builder.append("x + 1");
+                for (int i = 0; i < 1000; i++) {
+                    builder.append(") * y");
+                }
+                return builder.toString();
+            case LONG_SUM:
+                builder.append("x");
+                for (int i = 1; i < 100000; i++) {
+                    builder.append(i % 2 == 0 ? " + x" : " + " + i);
+                }
+                return builder.toString();
+            case FUNCTION_HEAVY:
+                builder.append("0");
+                for (int i = 0; i < 200; i++) {
+                    builder.append(" + sin(x * ").append(i).append(") * cos(y) - ln(x + ").append(i + 1)
+                            .append(") / max(x, y, z) + tan(z / 3)");
+                }
+                return builder.toString();
+            default:
+                throw new IllegalArgumentException("Unknown workload: " + workload);
+        }
+    }
+
+    /**
+     * This method returns the variable bindings shared by all workloads.
+     *
+     * @return A map of the variables x, y and z to their values.
+     */
+    public static Map<String, Double> variables() {
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 1.25);
+        variables.put("y", 0.999);
+        variables.put("z", 3.5);
+        return variables;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example;
+
+import java.util.Arrays;
+
+/**
+ * This class is responsible for evaluating a compiled expression over many rows of variable values at once.
+ * Variables are given as columns indexed by slot, and the program is run one instruction at a time over
+ * whole chunks of rows, so each instruction becomes a tight loop over primitive arrays that the JIT compiler
+ * can unroll and vectorise.
+ */
+public class BatchEvaluator {
+
+    /**
+     * The number of rows processed by each pass over the program. Chunks are small enough for the operand
+     * buffers to stay in cache and large enough to amortise the instruction dispatch.
+     */
+    static final int CHUNK_SIZE = 1024;
+
+    /**
+     * This method evaluates a compiled expression for every row and writes the results into the output array.
+     *
+     * @param expression The compiled expression.
+     * @param columns The values of the variables, indexed by slot and then by row.
+     * @param out The array the result of each row is written to. Its length is the number of rows.
+     */
+    public static void evaluate(CompiledExpression expression, double[][] columns, double[] out) {
+        evaluate(expression, columns, out, 0, out.length);
+    }
+
+    /**
+     * This method evaluates a compiled expression for a range of rows and writes the results into the output array.
+     *
+     * @param expression The compiled expression.
+     * @param columns The values of the variables, indexed by slot and then by row.
+     * @param out The array the result of each row is written to.
+     * @param from The first row to be evaluated, inclusive.
+     * @param to The last row to be evaluated, exclusive.
+     */
+    public static void evaluate(CompiledExpression expression, double[][] columns, double[] out, int from, int to) {
+        evaluate(expression, columns, from, out, from, to - from);
+    }
+
+    /**
+     * This method evaluates a compiled expression for a range of rows and writes the results into a range of the output array.
+     *
+     * @param expression The compiled expression.
+     * @param columns The values of the variables, indexed by slot and then by row.
+     * @param from The first row to be evaluated.
+     * @param out The array the results are written to.
+     * @param outFrom The index the result of the first row is written to.
+     * @param length The number of rows to be evaluated.
+     */
+    static void evaluate(CompiledExpression expression, double[][] columns, int from, double[] out, int outFrom, int length) {
+        if (columns.length < expression.getLayout().size()) {
+            throw new IllegalArgumentException("Expected " + expression.getLayout().size() + " columns, got " + columns.length);
+        }
+        int bufferLength = Math.min(CHUNK_SIZE, Math.max(length, 0));
+        double[][] stack = new double[expression.getMaxStackDepth()][bufferLength];
+        double[][] temps = new double[expression.getTempCount()][bufferLength];
+        for (int done = 0; done < length; done += CHUNK_SIZE) {
+            int chunk = Math.min(CHUNK_SIZE, length - done);
+            evaluateChunk(expression, columns, from + done, chunk, stack, temps);
+            System.arraycopy(stack[0], 0, out, outFrom + done, chunk);
+        }
+    }
+
+    /**
+     * Runs the program over one chunk of rows, leaving the results in the bottom buffer of the operand stack.
+     * A binary operator whose right operand is a constant, a variable or a temporary reads it directly instead of
+     * copying it into a stack buffer first.
+     *
+     * @param expression The compiled expression.
+     * @param columns The values of the variables, indexed by slot and then by row.
+     * @param start The first row of the chunk.
+     * @param length The number of rows in the chunk.
+     * @param stack The operand stack, one buffer per level.
+     * @param temps The temporaries, one buffer each.
+     */
+    private static void evaluateChunk(CompiledExpression expression, double[][] columns, int start, int length,
+                                      double[][] stack, double[][] temps) {
+        byte[] opcodes = expression.getOpcodes();
+        int[] operands = expression.getOperands();
+        double[] constants = expression.getConstants();
+        int top = -1;
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            byte opcode = opcodes[pc];
+            if (pc + 1 < opcodes.length && isBinaryOperator(opcodes[pc + 1]) && top >= 0) {
+                if (opcode == CompiledExpression.PUSH_CONSTANT) {
+                    applyConstant(opcodes[++pc], stack[top], constants[operands[pc - 1]], length);
+                    continue;
+                } else if (opcode == CompiledExpression.LOAD_VARIABLE) {
+                    apply(opcodes[++pc], stack[top], columns[operands[pc - 1]], start, length);
+                    continue;
+                } else if (opcode == CompiledExpression.LOAD_TEMP) {
+                    apply(opcodes[++pc], stack[top], temps[operands[pc - 1]], 0, length);
+                    continue;
+                }
+            }
+            switch (opcode) {
+                case CompiledExpression.PUSH_CONSTANT:
+                    Arrays.fill(stack[++top], 0, length, constants[operands[pc]]);
+                    break;
+                case CompiledExpression.LOAD_VARIABLE:
+                    System.arraycopy(columns[operands[pc]], start, stack[++top], 0, length);
+                    break;
+                case CompiledExpression.CALL_FUNCTION: {
+                    double[] arguments = stack[top];
+                    ExpressionFunction function = expression.getFunctions()[operands[pc]];
+                    for (int i = 0; i < length; i++) {
+                        arguments[i] = function.apply(arguments[i]);
+                    }
+                    break;
+                }
+                case CompiledExpression.CALL_BINARY: {
+                    top--;
+                    double[] first = stack[top];
+                    double[] second = stack[top + 1];
+                    ExpressionFunction function = expression.getFunctions()[operands[pc]];
+                    for (int i = 0; i < length; i++) {
+                        first[i] = function.apply(first[i], second[i]);
+                    }
+                    break;
+                }
+                case CompiledExpression.CALL_NARY: {
+                    int count = expression.getArgumentCounts()[operands[pc]];
+                    ExpressionFunction function = expression.getFunctions()[operands[pc]];
+                    top -= count - 1;
+                    double[] arguments = new double[count];
+                    for (int i = 0; i < length; i++) {
+                        for (int argument = 0; argument < count; argument++) {
+                            arguments[argument] = stack[top + argument][i];
+                        }
+                        stack[top][i] = function.apply(arguments);
+                    }
+                    break;
+                }
+                case CompiledExpression.STORE_TEMP:
+                    System.arraycopy(stack[top], 0, temps[operands[pc]], 0, length);
+                    break;
+                case CompiledExpression.LOAD_TEMP:
+                    System.arraycopy(temps[operands[pc]], 0, stack[++top], 0, length);
+                    break;
+                default:
+                    top--;
+                    apply(opcode, stack[top], stack[top + 1], 0, length);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given opcode pops two operands and pushes one result.
+     *
+     * @param opcode The opcode.
+     * @return Whether the opcode is a binary operator.
+     */
+    private static boolean isBinaryOperator(byte opcode) {
+        return opcode >= CompiledExpression.ADD && opcode <= CompiledExpression.POWER;
+    }
+
+    /**
+     * Applies a binary operator element-wise, storing the results in the left operand buffer.
+     *
+     * @param opcode The opcode of the operator.
+     * @param left The left operands, overwritten with the results.
+     * @param right The array holding the right operands.
+     * @param offset The index of the first right operand.
+     * @param length The number of elements.
+     */
+    private static void apply(byte opcode, double[] left, double[] right, int offset, int length) {
+        switch (opcode) {
+            case CompiledExpression.ADD:
+                for (int i = 0; i < length; i++) {
+                    left[i] = left[i] + right[offset + i];
+                }
+                break;
+            case CompiledExpression.SUBTRACT:
+                for (int i = 0; i < length; i++) {
+                    left[i] = left[i] - right[offset + i];
+                }
+                break;
+            case CompiledExpression.MULTIPLY:
+                for (int i = 0; i < length; i++) {
+                    left[i] = left[i] * right[offset + i];
+                }
+                break;
+            case CompiledExpression.DIVIDE:
+                for (int i = 0; i < length; i++) {
+                    left[i] = left[i] / right[offset + i];
+                }
+                break;
+            case CompiledExpression.POWER:
+                for (int i = 0; i < length; i++) {
+                    left[i] = Math.pow(left[i], right[offset + i]);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown opcode: " + opcode);
+        }
+    }
+
+    /**
+     * Applies a binary operator element-wise with a constant right operand, storing the results in the left operand buffer.
+     *
+     * @param opcode The opcode of the operator.
+     * @param left The left operands, overwritten with the results.
+     * @param right The right operand.
+     * @param length The number of elements.
+     */
+    private static void applyConstant(byte opcode, double[] left, double right, int length) {
+        switch (opcode) {
+            case CompiledExpression.ADD:
+                for (int i = 0; i < length; i++) {
+                    left[i] = left[i] + right;
+                }
+                break;
+            case CompiledExpression.SUBTRACT:
+                for (int i = 0; i < length; i++) {
+                    left[i] = left[i] - right;
+                }
+                break;
+            case CompiledExpression.MULTIPLY:
+                for (int i = 0; i < length; i++) {
+                    left[i] = left[i] * right;
+                }
+                break;
+            case CompiledExpression.DIVIDE:
+                for (int i = 0; i < length; i++) {
+                    left[i] = left[i] / right;
+                }
+                break;
+            case CompiledExpression.POWER:
+                for (int i = 0; i < length; i++) {
+                    left[i] = Math.pow(left[i], right);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown opcode: " + opcode);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * This class is responsible for evaluating large numbers of independent expressions concurrently.
+ * Items are parsed and evaluated on an executor, and their results are delivered in input order.
+ * At most a fixed number of items are in flight or waiting to be delivered at any time: once that limit is
+ * reached, reading the input stops until the oldest item is done, so memory use does not grow with the input.
+ * An item that fails produces a result holding its error and does not stop the rest of the batch.
+ * Expressions are compiled through a shared cache, so repeated formulas are only parsed once.
+ */
+public class BulkEvaluator implements AutoCloseable {
+
+    /**
+     * The default number of cached compiled expressions.
+     */
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+
+    /**
+     * The functions that can be called from the expressions.
+     */
+    private FunctionRegistry functions;
+
+    /**
+     * The cache the expressions are compiled through.
+     */
+    private ExpressionCache cache;
+
+    /**
+     * The executor the items are evaluated on.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Whether the executor was created by this evaluator and must be shut down when it is closed.
+     */
+    private boolean ownsExecutor;
+
+    /**
+     * The maximum number of items in flight or waiting to be delivered.
+     */
+    private int maxInFlight;
+
+    /**
+     * Constructs a new bulk evaluator on its own executor. Virtual threads are used when the runtime provides
+     * them; otherwise a fixed pool with one thread per processor is used.
+     *
+     * @param functions The functions that can be called from the expressions.
+     * @param maxInFlight The maximum number of items in flight or waiting to be delivered.
+     */
+    public BulkEvaluator(FunctionRegistry functions, int maxInFlight) {
+        this(functions, maxInFlight, newExecutor());
+        this.ownsExecutor = true;
+    }
+
+    /**
+     * Constructs a new bulk evaluator on the given executor, which is not shut down when the evaluator is closed.
+     *
+     * @param functions The functions that can be called from the expressions.
+     * @param maxInFlight The maximum number of items in flight or waiting to be delivered.
+     * @param executor The executor the items are evaluated on.
+     */
+    public BulkEvaluator(FunctionRegistry functions, int maxInFlight, ExecutorService executor) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("At least one item must be allowed in flight: " + maxInFlight);
+        }
+        this.functions = functions;
+        this.cache = new ExpressionCache(DEFAULT_CACHE_SIZE);
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per task if the runtime supports it,
+     * and a fixed pool with one thread per processor otherwise.
+     *
+     * @return The new executor.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * This method evaluates every item and passes the results to the consumer in input order.
+     * The consumer is called on the calling thread.
+     *
+     * @param items The items to be evaluated.
+     * @param results The consumer the results are passed to.
+     * @return The number of items evaluated.
+     */
+    public long evaluate(Iterator<BulkItem> items, Consumer<BulkResult> results) {
+        ArrayDeque<CompletableFuture<BulkResult>> pending = new ArrayDeque<>();
+        long index = 0;
+        while (items.hasNext()) {
+            BulkItem item = items.next();
+            submit(pending, index++, () -> evaluate(item), results);
+        }
+        drain(pending, 0, results);
+        return index;
+    }
+
+    /**
+     * This method evaluates one record per line of the input and writes one result per line to the output,
+     * in input order. Records have the form "expression;name=value;name=value"; a record that cannot be parsed
+     * or evaluated produces a line starting with "Error: ".
+     *
+     * @param input The reader the records are read from.
+     * @param output The writer the results are written to.
+     * @return The number of records evaluated.
+     * @throws IOException If the input cannot be read or the output cannot be written.
+     */
+    public long evaluate(BufferedReader input, Writer output) throws IOException {
+        ArrayDeque<CompletableFuture<BulkResult>> pending = new ArrayDeque<>();
+        IOException[] failure = new IOException[1];
+        Consumer<BulkResult> writer = result -> {
+            if (failure[0] == null) {
+                try {
+                    output.write(result.toString());
+                    output.write('\n');
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        long index = 0;
+        String line;
+        while (failure[0] == null && (line = input.readLine()) != null) {
+            String record = line;
+            submit(pending, index++, () -> evaluate(BulkItem.parse(record)), writer);
+        }
+        drain(pending, 0, writer);
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        output.flush();
+        return index;
+    }
+
+    /**
+     * Parses, compiles and evaluates one item. The compiled expression may be shared with other threads,
+     * so it is evaluated with an operand stack of its own.
+     *
+     * @param item The item to be evaluated.
+     * @return The value of the expression.
+     * @throws Exception If there is an error in the expression or a variable is not defined.
+     */
+    private double evaluate(BulkItem item) throws Exception {
+        CompiledExpression compiled = cache.get(item.getExpression(), functions);
+        VariableLayout layout = compiled.getLayout();
+        double[] values = layout.newValues();
+        layout.bind(item.getVariables(), values);
+        return compiled.evaluate(values, compiled.newStack());
+    }
+
+    /**
+     * Starts evaluating one item, first delivering the oldest results until there is room for it.
+     * Anything the evaluation throws, errors included, becomes the failed result of that item alone.
+     *
+     * @param pending The items in flight or waiting to be delivered, oldest first.
+     * @param index The position of the item in the input.
+     * @param task The evaluation of the item.
+     * @param results The consumer the results are passed to.
+     */
+    private void submit(ArrayDeque<CompletableFuture<BulkResult>> pending, long index, Callable<Double> task,
+                        Consumer<BulkResult> results) {
+        drain(pending, maxInFlight - 1, results);
+        pending.add(CompletableFuture.supplyAsync(() -> {
+            try {
+                return new BulkResult(index, task.call(), null);
+            } catch (Throwable e) {
+                return new BulkResult(index, Double.NaN, BulkResult.describe(e));
+            }
+        }, executor));
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            results.accept(pending.poll().join());
+        }
+    }
+
+    /**
+     * Delivers the oldest results, waiting for them if necessary, until at most the given number are left.
+     *
+     * @param pending The items in flight or waiting to be delivered, oldest first.
+     * @param remaining The number of items that may be left.
+     * @param results The consumer the results are passed to.
+     */
+    private static void drain(ArrayDeque<CompletableFuture<BulkResult>> pending, int remaining, Consumer<BulkResult> results) {
+        while (pending.size() > remaining) {
+            results.accept(pending.poll().join());
+        }
+    }
+
+    /**
+     * Returns the cache the expressions are compiled through.
+     *
+     * @return The expression cache.
+     */
+    public ExpressionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Shuts down the executor if it was created by this evaluator.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+}
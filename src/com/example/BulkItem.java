@@ -0,0 +1,82 @@
+package com.example;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class represents one independent unit of work for the bulk evaluator: an expression and the values of its variables.
+ */
+public class BulkItem {
+
+    /**
+     * The mathematical expression.
+     */
+    private String expression;
+
+    /**
+     * A map of variables in the expression to their respective values.
+     */
+    private Map<String, Double> variables;
+
+    /**
+     * Constructs a new item with the given expression and variable values.
+     *
+     * @param expression The mathematical expression.
+     * @param variables A map of variables in the expression to their respective values.
+     */
+    public BulkItem(String expression, Map<String, Double> variables) {
+        this.expression = expression;
+        this.variables = variables;
+    }
+
+    /**
+     * Parses an item from a record of the form "expression;name=value;name=value".
+     * Expressions never contain semicolons, so the first one ends the expression.
+     *
+     * @param record The record to be parsed.
+     * @return The parsed item.
+     * @throws Exception If the record has no expression or a binding is malformed.
+     */
+    public static BulkItem parse(String record) throws Exception {
+        String[] parts = record.split(";");
+        if (parts.length == 0 || parts[0].isBlank()) {
+            throw new Exception("Missing expression");
+        }
+        Map<String, Double> variables = new HashMap<>();
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].isBlank()) {
+                continue;
+            }
+            int equals = parts[i].indexOf('=');
+            if (equals < 0) {
+                throw new Exception("Invalid binding: " + parts[i].trim());
+            }
+            String name = parts[i].substring(0, equals).trim();
+            String value = parts[i].substring(equals + 1).trim();
+            try {
+                variables.put(name, Double.parseDouble(value));
+            } catch (NumberFormatException e) {
+                throw new Exception("Invalid value for variable " + name + ": " + value);
+            }
+        }
+        return new BulkItem(parts[0], variables);
+    }
+
+    /**
+     * Returns the expression of the item.
+     *
+     * @return The mathematical expression.
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Returns the variable values of the item.
+     *
+     * @return A map of variables in the expression to their respective values.
+     */
+    public Map<String, Double> getVariables() {
+        return variables;
+    }
+}
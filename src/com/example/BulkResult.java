@@ -0,0 +1,93 @@
+package com.example;
+
+/**
+ * This class represents the outcome of evaluating one bulk item: either its value or the error that prevented it.
+ */
+public class BulkResult {
+
+    /**
+     * The position of the item in the input, starting at 0.
+     */
+    private long index;
+
+    /**
+     * The value of the expression, or NaN if the item failed.
+     */
+    private double value;
+
+    /**
+     * The message of the error that prevented the item from being evaluated, or null if it succeeded.
+     */
+    private String error;
+
+    /**
+     * Constructs a new result.
+     *
+     * @param index The position of the item in the input.
+     * @param value The value of the expression, or NaN if the item failed.
+     * @param error The message of the error, or null if the item succeeded.
+     */
+    BulkResult(long index, double value, String error) {
+        this.index = index;
+        this.value = value;
+        this.error = error;
+    }
+
+    /**
+     * Returns the message describing why an item failed. Exceptions without a message, such as a
+     * NullPointerException thrown by a function, are described by their class name, so that the result
+     * never passes for a success.
+     *
+     * @param failure What the evaluation threw.
+     * @return The message of the failure, never null.
+     */
+    static String describe(Throwable failure) {
+        return failure.getMessage() != null ? failure.getMessage() : failure.toString();
+    }
+
+    /**
+     * Returns the position of the item in the input.
+     *
+     * @return The position of the item, starting at 0.
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the value of the expression.
+     *
+     * @return The value of the expression, or NaN if the item failed.
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the error that prevented the item from being evaluated.
+     *
+     * @return The message of the error, or null if the item succeeded.
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Returns whether the item was evaluated successfully.
+     *
+     * @return True if the item has a value, false if it failed.
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Returns a string representation of the result: the value, or the error message prefixed by "Error: ".
+     *
+     * @return A string representation of the result.
+     */
+    @Override
+    public String toString() {
+        return error == null ? Double.toString(value) : "Error: " + error;
+    }
+}
@@ -0,0 +1,537 @@
+package com.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+
+/**
+ * This class is responsible for translating compiled expressions into JVM bytecode.
+ * Each expression becomes a hidden class implementing DoubleExpression, whose evaluate method is straight-line
+ * code over the variable array that the JIT compiler can inline and optimise like hand-written Java.
+ * The hidden classes are not strongly linked to their class loader, so they are unloaded once the
+ * returned instance is no longer reachable.
+ */
+public class BytecodeCompiler {
+
+    /**
+     * The internal name of the generated classes. The JVM appends a unique suffix to every hidden class.
+     */
+    private static final String CLASS_NAME = "com/example/GeneratedExpression";
+
+    /**
+     * The descriptor of the field holding the call targets of a generated class.
+     */
+    private static final String FUNCTIONS_DESCRIPTOR = "[Ljava/lang/Object;";
+
+    /**
+     * The local variable slot used to hold the first argument of a call while the call target is loaded.
+     */
+    private static final int FIRST_ARGUMENT_LOCAL = 2;
+
+    /**
+     * The local variable slot used to hold the second argument of a call while the call target is loaded.
+     */
+    private static final int SECOND_ARGUMENT_LOCAL = 4;
+
+    /**
+     * The local variable slot used to hold the argument array of an n-ary call.
+     */
+    private static final int ARGUMENTS_LOCAL = 6;
+
+    /**
+     * The first local variable slot used to hold the temporaries of the expression, two slots each.
+     */
+    private static final int FIRST_TEMP_LOCAL = 7;
+
+    /**
+     * The largest code size allowed for a single method by the class file format.
+     */
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    /**
+     * The entries of the constant pool written so far.
+     */
+    private ByteArrayOutputStream constantPool;
+
+    /**
+     * The index of each constant pool entry, keyed by its contents.
+     */
+    private Map<String, Integer> constantIndexes;
+
+    /**
+     * The index the next constant pool entry will receive.
+     */
+    private int nextConstantIndex;
+
+    /**
+     * Constructs a new bytecode compiler with an empty constant pool.
+     */
+    private BytecodeCompiler() {
+        this.constantPool = new ByteArrayOutputStream();
+        this.constantIndexes = new HashMap<>();
+        this.nextConstantIndex = 1;
+    }
+
+    /**
+     * This method compiles an expression tree into a hidden class and returns an instance of it.
+     *
+     * @param root The root node of the expression tree.
+     * @param layout The slots of the variables.
+     * @param functions A map of functions in the expression to their respective implementations.
+     * @return The generated expression.
+     * @throws Exception If there is an error during compilation, or if the expression is too large for a single method.
+     */
+    public static DoubleExpression compile(Node root, VariableLayout layout, Map<String, Function<Double, Double>> functions) throws Exception {
+        return compile(ExpressionCompiler.compile(root, layout, functions));
+    }
+
+    /**
+     * This method compiles an expression tree with functions from a registry into a hidden class and returns an instance of it.
+     *
+     * @param root The root node of the expression tree.
+     * @param layout The slots of the variables.
+     * @param functions The functions that can be called from the expression.
+     * @return The generated expression.
+     * @throws Exception If there is an error during compilation, or if the expression is too large for a single method.
+     */
+    public static DoubleExpression compile(Node root, VariableLayout layout, FunctionRegistry functions) throws Exception {
+        return compile(ExpressionCompiler.compile(root, layout, functions));
+    }
+
+    /**
+     * This method translates a compiled expression into a hidden class and returns an instance of it.
+     * The generated expression reads its variables using the layout of the compiled expression.
+     *
+     * @param expression The compiled expression.
+     * @return The generated expression.
+     * @throws Exception If the expression is too large for a single method, or if the class cannot be defined.
+     */
+    public static DoubleExpression compile(CompiledExpression expression) throws Exception {
+        byte[] classBytes = new BytecodeCompiler().generateClass(expression);
+        MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+        Class<?> generated = lookup.lookupClass();
+        Object instance = generated.getDeclaredConstructor(Object[].class)
+                .newInstance((Object) callTargets(expression));
+        return (DoubleExpression) instance;
+    }
+
+    /**
+     * Returns the object each call instruction of the expression invokes. Calls whose argument count matches
+     * a unary or binary implementation invoke that implementation directly, so that every call site
+     * in the generated code has its own type profile and can be inlined; other calls go through the function.
+     *
+     * @param expression The compiled expression.
+     * @return The call targets, indexed like the function table of the expression.
+     */
+    private static Object[] callTargets(CompiledExpression expression) {
+        ExpressionFunction[] functions = expression.getFunctions();
+        Object[] targets = new Object[functions.length];
+        for (int i = 0; i < functions.length; i++) {
+            targets[i] = isDirectCall(functions[i], expression.getArgumentCounts()[i]) ? functions[i].getImplementation() : functions[i];
+        }
+        return targets;
+    }
+
+    /**
+     * Returns whether a call with the given number of arguments can invoke the implementation of the function directly.
+     *
+     * @param function The function.
+     * @param count The number of arguments.
+     * @return Whether the implementation is a unary or binary operator matching the number of arguments.
+     */
+    private static boolean isDirectCall(ExpressionFunction function, int count) {
+        Object implementation = function.getImplementation();
+        return (count == 1 && implementation instanceof DoubleUnaryOperator)
+                || (count == 2 && implementation instanceof DoubleBinaryOperator);
+    }
+
+    /**
+     * Generates the class file of a hidden class evaluating the given expression.
+     *
+     * @param expression The compiled expression.
+     * @return The bytes of the class file.
+     * @throws Exception If the expression is too large for a single method.
+     */
+    private byte[] generateClass(CompiledExpression expression) throws Exception {
+        int thisClass = classEntry(CLASS_NAME);
+        int superClass = classEntry("java/lang/Object");
+        int interfaceClass = classEntry("com/example/DoubleExpression");
+        int functionsField = memberEntry(9, CLASS_NAME, "functions", FUNCTIONS_DESCRIPTOR);
+        int codeName = utf8Entry("Code");
+
+        byte[] constructorCode = generateConstructor(functionsField);
+        byte[] evaluateCode = generateEvaluate(expression, functionsField);
+        if (evaluateCode.length > MAX_CODE_LENGTH || expression.getMaxStackDepth() > 32000 || expression.getTempCount() > 32000) {
+            throw new Exception("Expression too large for bytecode compilation: " + expression.size() + " instructions");
+        }
+        int constructorName = utf8Entry("<init>");
+        int constructorDescriptor = utf8Entry("(" + FUNCTIONS_DESCRIPTOR + ")V");
+        int evaluateName = utf8Entry("evaluate");
+        int evaluateDescriptor = utf8Entry("([D)D");
+        int fieldName = utf8Entry("functions");
+        int fieldDescriptor = utf8Entry(FUNCTIONS_DESCRIPTOR);
+        if (nextConstantIndex > 65535) {
+            throw new Exception("Expression too large for bytecode compilation: constant pool overflow");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(59);
+        out.writeShort(nextConstantIndex);
+        constantPool.writeTo(out);
+        out.writeShort(0x0031);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(interfaceClass);
+
+        out.writeShort(1);
+        out.writeShort(0x0012);
+        out.writeShort(fieldName);
+        out.writeShort(fieldDescriptor);
+        out.writeShort(0);
+
+        out.writeShort(2);
+        writeMethod(out, 0x0001, constructorName, constructorDescriptor, codeName, 2, 2, constructorCode);
+        int maxStack = 2 * expression.getMaxStackDepth() + 4;
+        int maxLocals = FIRST_TEMP_LOCAL + 2 * expression.getTempCount();
+        writeMethod(out, 0x0011, evaluateName, evaluateDescriptor, codeName, maxStack, maxLocals, evaluateCode);
+
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Generates the code of the constructor, which stores the function table in its field.
+     *
+     * @param functionsField The constant pool index of the function table field.
+     * @return The bytecode of the constructor.
+     * @throws IOException If the code cannot be written.
+     */
+    private byte[] generateConstructor(int functionsField) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(bytes);
+        code.writeByte(0x2a);
+        code.writeByte(0xb7);
+        code.writeShort(memberEntry(10, "java/lang/Object", "<init>", "()V"));
+        code.writeByte(0x2a);
+        code.writeByte(0x2b);
+        code.writeByte(0xb5);
+        code.writeShort(functionsField);
+        code.writeByte(0xb1);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Generates the code of the evaluate method by translating each instruction of the compiled expression.
+     * The operand stack of the compiled expression maps directly onto the JVM operand stack.
+     *
+     * @param expression The compiled expression.
+     * @param functionsField The constant pool index of the function table field.
+     * @return The bytecode of the evaluate method.
+     * @throws IOException If the code cannot be written.
+     */
+    private byte[] generateEvaluate(CompiledExpression expression, int functionsField) throws IOException {
+        byte[] opcodes = expression.getOpcodes();
+        int[] operands = expression.getOperands();
+        double[] constants = expression.getConstants();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(bytes);
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            switch (opcodes[pc]) {
+                case CompiledExpression.PUSH_CONSTANT:
+                    code.writeByte(0x14);
+                    code.writeShort(doubleEntry(constants[operands[pc]]));
+                    break;
+                case CompiledExpression.LOAD_VARIABLE:
+                    code.writeByte(0x2b);
+                    pushInt(code, operands[pc]);
+                    code.writeByte(0x31);
+                    break;
+                case CompiledExpression.CALL_FUNCTION:
+                case CompiledExpression.CALL_BINARY:
+                case CompiledExpression.CALL_NARY:
+                    int index = operands[pc];
+                    int count = expression.getArgumentCounts()[index];
+                    if (isDirectCall(expression.getFunctions()[index], count) && count == 1) {
+                        writeLocal(code, 0x39, FIRST_ARGUMENT_LOCAL);
+                        loadCallTarget(code, functionsField, index, "java/util/function/DoubleUnaryOperator");
+                        writeLocal(code, 0x18, FIRST_ARGUMENT_LOCAL);
+                        code.writeByte(0xb9);
+                        code.writeShort(memberEntry(11, "java/util/function/DoubleUnaryOperator", "applyAsDouble", "(D)D"));
+                        code.writeByte(3);
+                        code.writeByte(0);
+                    } else if (isDirectCall(expression.getFunctions()[index], count)) {
+                        writeLocal(code, 0x39, SECOND_ARGUMENT_LOCAL);
+                        writeLocal(code, 0x39, FIRST_ARGUMENT_LOCAL);
+                        loadCallTarget(code, functionsField, index, "java/util/function/DoubleBinaryOperator");
+                        writeLocal(code, 0x18, FIRST_ARGUMENT_LOCAL);
+                        writeLocal(code, 0x18, SECOND_ARGUMENT_LOCAL);
+                        code.writeByte(0xb9);
+                        code.writeShort(memberEntry(11, "java/util/function/DoubleBinaryOperator", "applyAsDouble", "(DD)D"));
+                        code.writeByte(5);
+                        code.writeByte(0);
+                    } else {
+                        pushInt(code, count);
+                        code.writeByte(0xbc);
+                        code.writeByte(7);
+                        writeLocal(code, 0x3a, ARGUMENTS_LOCAL);
+                        for (int argument = count - 1; argument >= 0; argument--) {
+                            writeLocal(code, 0x39, FIRST_ARGUMENT_LOCAL);
+                            writeLocal(code, 0x19, ARGUMENTS_LOCAL);
+                            pushInt(code, argument);
+                            writeLocal(code, 0x18, FIRST_ARGUMENT_LOCAL);
+                            code.writeByte(0x52);
+                        }
+                        loadCallTarget(code, functionsField, index, "com/example/ExpressionFunction");
+                        writeLocal(code, 0x19, ARGUMENTS_LOCAL);
+                        code.writeByte(0xb6);
+                        code.writeShort(memberEntry(10, "com/example/ExpressionFunction", "apply", "([D)D"));
+                    }
+                    break;
+                case CompiledExpression.ADD:
+                    code.writeByte(0x63);
+                    break;
+                case CompiledExpression.SUBTRACT:
+                    code.writeByte(0x67);
+                    break;
+                case CompiledExpression.MULTIPLY:
+                    code.writeByte(0x6b);
+                    break;
+                case CompiledExpression.DIVIDE:
+                    code.writeByte(0x6f);
+                    break;
+                case CompiledExpression.POWER:
+                    code.writeByte(0xb8);
+                    code.writeShort(memberEntry(10, "java/lang/Math", "pow", "(DD)D"));
+                    break;
+                case CompiledExpression.STORE_TEMP:
+                    code.writeByte(0x5c);
+                    writeLocal(code, 0x39, FIRST_TEMP_LOCAL + 2 * operands[pc]);
+                    break;
+                case CompiledExpression.LOAD_TEMP:
+                    writeLocal(code, 0x18, FIRST_TEMP_LOCAL + 2 * operands[pc]);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode: " + opcodes[pc]);
+            }
+        }
+        code.writeByte(0xaf);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a method with a single Code attribute.
+     *
+     * @param out The stream the class file is written to.
+     * @param accessFlags The access flags of the method.
+     * @param name The constant pool index of the method name.
+     * @param descriptor The constant pool index of the method descriptor.
+     * @param codeName The constant pool index of the "Code" attribute name.
+     * @param maxStack The maximum depth of the JVM operand stack, in slots.
+     * @param maxLocals The number of local variable slots.
+     * @param code The bytecode of the method.
+     * @throws IOException If the method cannot be written.
+     */
+    private static void writeMethod(DataOutputStream out, int accessFlags, int name, int descriptor, int codeName,
+                                    int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(accessFlags);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    /**
+     * Writes the instructions pushing the call target at the given index, cast to the given type.
+     *
+     * @param code The stream the bytecode is written to.
+     * @param functionsField The constant pool index of the call target field.
+     * @param index The index of the call target.
+     * @param type The internal name of the type of the call target.
+     * @throws IOException If the instructions cannot be written.
+     */
+    private void loadCallTarget(DataOutputStream code, int functionsField, int index, String type) throws IOException {
+        code.writeByte(0x2a);
+        code.writeByte(0xb4);
+        code.writeShort(functionsField);
+        pushInt(code, index);
+        code.writeByte(0x32);
+        code.writeByte(0xc0);
+        code.writeShort(classEntry(type));
+    }
+
+    /**
+     * Writes a local variable load or store, using the wide form when the index does not fit in a byte.
+     *
+     * @param code The stream the bytecode is written to.
+     * @param opcode The opcode of the instruction.
+     * @param index The index of the local variable.
+     * @throws IOException If the instruction cannot be written.
+     */
+    private static void writeLocal(DataOutputStream code, int opcode, int index) throws IOException {
+        if (index <= 255) {
+            code.writeByte(opcode);
+            code.writeByte(index);
+        } else {
+            code.writeByte(0xc4);
+            code.writeByte(opcode);
+            code.writeShort(index);
+        }
+    }
+
+    /**
+     * Writes the shortest instruction pushing the given int constant.
+     *
+     * @param code The stream the bytecode is written to.
+     * @param value The constant to be pushed.
+     * @throws IOException If the instruction cannot be written.
+     */
+    private void pushInt(DataOutputStream code, int value) throws IOException {
+        if (value <= 5) {
+            code.writeByte(0x03 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            code.writeByte(0x10);
+            code.writeByte(value);
+        } else if (value <= Short.MAX_VALUE) {
+            code.writeByte(0x11);
+            code.writeShort(value);
+        } else {
+            code.writeByte(0x13);
+            code.writeShort(intEntry(value));
+        }
+    }
+
+    /**
+     * Returns the constant pool index of a CONSTANT_Utf8 entry, adding it if necessary.
+     *
+     * @param value The string.
+     * @return The constant pool index of the entry.
+     * @throws IOException If the entry cannot be written.
+     */
+    private int utf8Entry(String value) throws IOException {
+        Integer index = constantIndexes.get("U" + value);
+        if (index == null) {
+            DataOutputStream out = new DataOutputStream(constantPool);
+            out.writeByte(1);
+            out.writeUTF(value);
+            index = addEntry("U" + value, 1);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the constant pool index of a CONSTANT_Class entry, adding it if necessary.
+     *
+     * @param internalName The internal name of the class.
+     * @return The constant pool index of the entry.
+     * @throws IOException If the entry cannot be written.
+     */
+    private int classEntry(String internalName) throws IOException {
+        Integer index = constantIndexes.get("C" + internalName);
+        if (index == null) {
+            int name = utf8Entry(internalName);
+            DataOutputStream out = new DataOutputStream(constantPool);
+            out.writeByte(7);
+            out.writeShort(name);
+            index = addEntry("C" + internalName, 1);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the constant pool index of a field, method or interface method reference, adding it if necessary.
+     *
+     * @param tag The constant pool tag: 9 for fields, 10 for methods and 11 for interface methods.
+     * @param owner The internal name of the class declaring the member.
+     * @param name The name of the member.
+     * @param descriptor The descriptor of the member.
+     * @return The constant pool index of the entry.
+     * @throws IOException If the entry cannot be written.
+     */
+    private int memberEntry(int tag, String owner, String name, String descriptor) throws IOException {
+        String key = "M" + tag + owner + "." + name + descriptor;
+        Integer index = constantIndexes.get(key);
+        if (index == null) {
+            int ownerClass = classEntry(owner);
+            int nameIndex = utf8Entry(name);
+            int descriptorIndex = utf8Entry(descriptor);
+            DataOutputStream out = new DataOutputStream(constantPool);
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            int nameAndType = addEntry("N" + name + descriptor, 1);
+            out.writeByte(tag);
+            out.writeShort(ownerClass);
+            out.writeShort(nameAndType);
+            index = addEntry(key, 1);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the constant pool index of a CONSTANT_Double entry, adding it if necessary.
+     *
+     * @param value The constant.
+     * @return The constant pool index of the entry.
+     * @throws IOException If the entry cannot be written.
+     */
+    private int doubleEntry(double value) throws IOException {
+        long bits = Double.doubleToRawLongBits(value);
+        Integer index = constantIndexes.get("D" + bits);
+        if (index == null) {
+            DataOutputStream out = new DataOutputStream(constantPool);
+            out.writeByte(6);
+            out.writeLong(bits);
+            index = addEntry("D" + bits, 2);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the constant pool index of a CONSTANT_Integer entry, adding it if necessary.
+     *
+     * @param value The constant.
+     * @return The constant pool index of the entry.
+     * @throws IOException If the entry cannot be written.
+     */
+    private int intEntry(int value) throws IOException {
+        Integer index = constantIndexes.get("I" + value);
+        if (index == null) {
+            DataOutputStream out = new DataOutputStream(constantPool);
+            out.writeByte(3);
+            out.writeInt(value);
+            index = addEntry("I" + value, 1);
+        }
+        return index;
+    }
+
+    /**
+     * Records a constant pool entry that has just been written.
+     *
+     * @param key The key identifying the contents of the entry.
+     * @param width The number of constant pool indexes the entry occupies.
+     * @return The constant pool index of the entry.
+     */
+    private int addEntry(String key, int width) {
+        int index = nextConstantIndex;
+        constantIndexes.put(key, index);
+        nextConstantIndex += width;
+        return index;
+    }
+}
@@ -0,0 +1,229 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is responsible for merging structurally identical subtrees of an expression tree.
+ * It hash-conses the tree bottom-up: two nodes with the same type, value and (already merged) children
+ * become one shared node, turning the tree into a DAG. The ExpressionCompiler computes each shared node
+ * once per evaluation and reuses its value from a temporary.
+ * Calls to functions that are not pure are never merged, since each call may return a different value.
+ * The given tree is not modified.
+ */
+public class CommonSubexpressionEliminator {
+
+    /**
+     * The canonical node of each distinct subtree seen so far.
+     */
+    private Map<Key, Node> canonicalNodes;
+
+    /**
+     * The canonical node each input node was mapped to, so that a DAG input is only scanned once per node.
+     */
+    private Map<Node, Node> replacements;
+
+    /**
+     * The number of nodes merged into an existing node by the last call to eliminate.
+     */
+    private int mergedNodes;
+
+    /**
+     * The functions that can be called from the expression, or null if every function is taken to be pure.
+     */
+    private FunctionRegistry functions;
+
+    /**
+     * Constructs a new eliminator that merges calls to every function, for trees whose functions are all pure.
+     */
+    public CommonSubexpressionEliminator() {
+        this(null);
+    }
+
+    /**
+     * Constructs a new eliminator that only merges calls to the pure functions of the given registry.
+     *
+     * @param functions The functions that can be called from the expression, or null if every function is pure.
+     */
+    public CommonSubexpressionEliminator(FunctionRegistry functions) {
+        this.canonicalNodes = new HashMap<>();
+        this.replacements = new IdentityHashMap<>();
+        this.functions = functions;
+    }
+
+    /**
+     * Merges the identical subtrees of an expression tree and returns the root of the resulting DAG.
+     * Subtrees are only merged within one call, so results of separate calls never share nodes.
+     *
+     * @param root The root node of the expression tree.
+     * @return The root node of the DAG.
+     */
+    public Node eliminate(Node root) {
+        canonicalNodes.clear();
+        replacements.clear();
+        mergedNodes = 0;
+        return intern(root);
+    }
+
+    /**
+     * Merges the identical subtrees of several expression trees, sharing nodes across all of them,
+     * and returns the roots of the resulting DAG in the same order.
+     *
+     * @param roots The root nodes of the expression trees.
+     * @return The root nodes of the DAG.
+     */
+    public List<Node> eliminate(List<Node> roots) {
+        canonicalNodes.clear();
+        replacements.clear();
+        mergedNodes = 0;
+        List<Node> result = new ArrayList<>(roots.size());
+        for (Node root : roots) {
+            result.add(intern(root));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of nodes merged into an existing node by the last call to eliminate.
+     *
+     * @return The number of merged nodes.
+     */
+    public int getMergedNodes() {
+        return mergedNodes;
+    }
+
+    /**
+     * Returns the canonical node of a subtree, creating it from the canonical nodes of its children if it was not seen yet.
+     * A call to an impure function is given its own node, which is never merged with another one.
+     *
+     * @param node The root node of the subtree.
+     * @return The canonical node of the subtree.
+     */
+    private Node intern(Node node) {
+        Node replacement = replacements.get(node);
+        if (replacement != null) {
+            return replacement;
+        }
+        List<Node> children = node.getChildren();
+        Node[] canonicalChildren = new Node[children.size()];
+        boolean unchanged = true;
+        for (int i = 0; i < canonicalChildren.length; i++) {
+            canonicalChildren[i] = intern(children.get(i));
+            unchanged &= canonicalChildren[i] == children.get(i);
+        }
+        Key key = isImpureCall(node) ? null : new Key(node.getType(), node.getValue(), canonicalChildren);
+        Node canonical = key == null ? null : canonicalNodes.get(key);
+        if (canonical == null) {
+            if (unchanged) {
+                canonical = node;
+            } else {
+                canonical = new Node(node.getValue(), node.getType());
+                for (Node child : canonicalChildren) {
+                    canonical.addChild(child);
+                }
+            }
+            if (key != null) {
+                canonicalNodes.put(key, canonical);
+            }
+        } else {
+            mergedNodes++;
+        }
+        replacements.put(node, canonical);
+        return canonical;
+    }
+
+    /**
+     * Returns whether a node calls a function that is not known to be pure.
+     *
+     * @param node The node to be checked.
+     * @return Whether the node is a call to an impure or unknown function.
+     */
+    private boolean isImpureCall(Node node) {
+        if (functions == null || node.getType() != NodeType.VARIABLE_OR_FUNCTION || node.getChildren().isEmpty()) {
+            return false;
+        }
+        ExpressionFunction function = functions.get(node.getValue());
+        return function == null || !function.isPure();
+    }
+
+    /**
+     * This class represents the identity of a subtree: its type, its value and the canonical nodes of its children.
+     * Children are compared by reference, since they are already canonical.
+     */
+    private static final class Key {
+
+        /**
+         * The type of the node.
+         */
+        private final NodeType type;
+
+        /**
+         * The value of the node.
+         */
+        private final String value;
+
+        /**
+         * The canonical nodes of the children of the node.
+         */
+        private final Node[] children;
+
+        /**
+         * The hash code of the key, computed once.
+         */
+        private final int hash;
+
+        /**
+         * Constructs a new key for a node.
+         *
+         * @param type The type of the node.
+         * @param value The value of the node.
+         * @param children The canonical nodes of the children of the node.
+         */
+        Key(NodeType type, String value, Node[] children) {
+            this.type = type;
+            this.value = value;
+            this.children = children;
+            int hash = 31 * type.hashCode() + value.hashCode();
+            for (Node child : children) {
+                hash = 31 * hash + System.identityHashCode(child);
+            }
+            this.hash = hash;
+        }
+
+        /**
+         * Returns whether another key describes the same subtree.
+         *
+         * @param other The object to be compared.
+         * @return Whether the other object is a key with the same type, value and children.
+         */
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            if (hash != key.hash || type != key.type || !value.equals(key.value) || children.length != key.children.length) {
+                return false;
+            }
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] != key.children[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the hash code of the key.
+         *
+         * @return The hash code.
+         */
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
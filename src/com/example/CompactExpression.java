@@ -0,0 +1,565 @@
+package com.example;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents an expression tree stored as a few primitive arrays instead of one object per node.
+ * The nodes are kept in postfix order. Each node has an opcode, an operand indexing the constant pool or the
+ * name pool, and the index of the first node of its subtree. The last child of a node is the node just before it,
+ * and each earlier child ends just before the subtree of the next one starts, so the tree can be walked without
+ * any per-node objects. A node costs 9 bytes, against at least 64 bytes for a Node with its child list.
+ * The arrays live on the Java heap.
+ */
+public class CompactExpression {
+
+    /**
+     * A number node, whose operand indexes the constant pool.
+     */
+    static final byte NUMBER = 0;
+
+    /**
+     * A variable node, whose operand indexes the name pool.
+     */
+    static final byte VARIABLE = 1;
+
+    /**
+     * A function call node, whose operand indexes the name pool and whose children are its arguments.
+     */
+    static final byte FUNCTION = 2;
+
+    /**
+     * Operator nodes for +, -, *, / and ^, with two children each.
+     */
+    static final byte ADD = 3, SUBTRACT = 4, MULTIPLY = 5, DIVIDE = 6, POWER = 7;
+
+    /**
+     * The characters of the operators, indexed by their opcode minus ADD.
+     */
+    private static final String OPERATORS = "+-*/^";
+
+    /**
+     * The opcode of each node, in postfix order.
+     */
+    private final byte[] opcodes;
+
+    /**
+     * The operand of each node: an index into the constant pool or the name pool, and unused for operators.
+     */
+    private final int[] operands;
+
+    /**
+     * The index of the first node of the subtree rooted at each node.
+     */
+    private final int[] subtreeStarts;
+
+    /**
+     * The pool of constants referenced by number nodes.
+     */
+    private final double[] constants;
+
+    /**
+     * The pool of distinct variable and function names referenced by the other nodes.
+     */
+    private final String[] names;
+
+    /**
+     * Constructs a new compact expression from the given arrays.
+     *
+     * @param opcodes The opcode of each node, in postfix order.
+     * @param operands The operand of each node.
+     * @param subtreeStarts The index of the first node of the subtree rooted at each node.
+     * @param constants The pool of constants.
+     * @param names The pool of names.
+     */
+    private CompactExpression(byte[] opcodes, int[] operands, int[] subtreeStarts, double[] constants, String[] names) {
+        this.opcodes = opcodes;
+        this.operands = operands;
+        this.subtreeStarts = subtreeStarts;
+        this.constants = constants;
+        this.names = names;
+    }
+
+    /**
+     * This method parses an expression straight into its compact form, without building Node objects.
+     *
+     * @param expression The mathematical expression.
+     * @param functions The functions that can be called from the expression.
+     * @return The compact expression.
+     * @throws Exception If there is an error in the expression, during tokenization, or during parsing.
+     */
+    public static CompactExpression parse(String expression, FunctionRegistry functions) throws Exception {
+        Builder builder = new Builder();
+        new Parser(new Lexer(expression), new HashMap<>(), functions).parse(builder);
+        return builder.build();
+    }
+
+    /**
+     * This method converts an expression tree to its compact form. Subtrees shared by several parents are copied
+     * once for each parent.
+     *
+     * @param root The root node of the expression tree.
+     * @return The compact expression.
+     * @throws Exception If there is an unknown node type or operator.
+     */
+    public static CompactExpression fromNode(Node root) throws Exception {
+        Builder builder = new Builder();
+        replay(root, builder);
+        return builder.build();
+    }
+
+    /**
+     * Reports the nodes of a subtree to a listener in postfix order. The tree is walked with explicit stacks,
+     * so that trees of any depth can be converted.
+     *
+     * @param root The root of the subtree.
+     * @param listener The listener the nodes are reported to.
+     * @throws Exception If there is an unknown node type or operator.
+     */
+    private static void replay(Node root, ParseListener listener) throws Exception {
+        Node[] path = new Node[64];
+        int[] nextChild = new int[64];
+        int depth = 0;
+        path[0] = root;
+        while (depth >= 0) {
+            Node node = path[depth];
+            List<Node> children = node.getChildren();
+            if (nextChild[depth] < children.size()) {
+                Node child = children.get(nextChild[depth]++);
+                if (++depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                    nextChild = Arrays.copyOf(nextChild, depth * 2);
+                }
+                path[depth] = child;
+                nextChild[depth] = 0;
+            } else {
+                report(node, listener);
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Reports one node to a listener, once its children have been reported.
+     *
+     * @param node The node.
+     * @param listener The listener the node is reported to.
+     * @throws Exception If there is an unknown node type or operator.
+     */
+    private static void report(Node node, ParseListener listener) throws Exception {
+        List<Node> children = node.getChildren();
+        if (node.getType() == NodeType.NUMBER) {
+            listener.number(node.getNumber());
+        } else if (node.getType() == NodeType.VARIABLE_OR_FUNCTION) {
+            if (children.isEmpty()) {
+                listener.variable(node.getValue());
+            } else {
+                listener.function(node.getValue(), children.size());
+            }
+        } else if (node.getType() == NodeType.OPERATOR && node.getValue().length() == 1
+                && OPERATORS.indexOf(node.getValue().charAt(0)) >= 0) {
+            listener.operator(node.getValue().charAt(0));
+        } else {
+            throw new Exception("Unknown node: " + node.getValue());
+        }
+    }
+
+    /**
+     * This method reports the nodes of the expression to a listener in postfix order, as a Parser would.
+     *
+     * @param listener The listener the nodes are reported to.
+     * @throws Exception If the listener rejects a node.
+     */
+    public void replay(ParseListener listener) throws Exception {
+        for (int i = 0; i < opcodes.length; i++) {
+            switch (opcodes[i]) {
+                case NUMBER:
+                    listener.number(constants[operands[i]]);
+                    break;
+                case VARIABLE:
+                    listener.variable(names[operands[i]]);
+                    break;
+                case FUNCTION:
+                    listener.function(names[operands[i]], childCount(i));
+                    break;
+                default:
+                    listener.operator(OPERATORS.charAt(opcodes[i] - ADD));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * This method converts the expression back to a tree of Node objects.
+     *
+     * @return The root node of the expression tree.
+     * @throws Exception If the expression is empty.
+     */
+    public Node toNode() throws Exception {
+        NodeBuilder builder = new NodeBuilder();
+        replay(builder);
+        return builder.getRoot();
+    }
+
+    /**
+     * Returns the number of children of a node by stepping back over their subtrees.
+     *
+     * @param node The index of the node.
+     * @return The number of children.
+     */
+    private int childCount(int node) {
+        int count = 0;
+        for (int child = node - 1; child >= subtreeStarts[node]; child = subtreeStarts[child] - 1) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of nodes in the expression.
+     *
+     * @return The number of nodes.
+     */
+    public int size() {
+        return opcodes.length;
+    }
+
+    /**
+     * Writes the arrays of this expression in the binary form read by read(ByteBuffer): the numbers of nodes,
+     * constants and names, the names as length-prefixed UTF-8, then the constants, opcodes, operands and subtree starts.
+     *
+     * @param out The output the expression is written to.
+     * @throws IOException If the output cannot be written.
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(opcodes.length);
+        out.writeInt(constants.length);
+        out.writeInt(names.length);
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+        for (double constant : constants) {
+            out.writeDouble(constant);
+        }
+        out.write(opcodes);
+        for (int operand : operands) {
+            out.writeInt(operand);
+        }
+        for (int start : subtreeStarts) {
+            out.writeInt(start);
+        }
+    }
+
+    /**
+     * Reads an expression written by write(DataOutput) from the current position of a buffer, checking that
+     * every opcode, operand and subtree start is in range so that a corrupt input cannot produce an invalid tree.
+     *
+     * @param in The buffer the expression is read from.
+     * @return The expression.
+     * @throws Exception If the data is truncated or does not describe a valid expression.
+     */
+    static CompactExpression read(ByteBuffer in) throws Exception {
+        int size = in.getInt();
+        int constantCount = in.getInt();
+        int nameCount = in.getInt();
+        if (size <= 0 || constantCount < 0 || nameCount < 0 || size > in.remaining()
+                || constantCount > in.remaining() / 8 || nameCount > in.remaining() / 2) {
+            throw new Exception("Invalid expression header");
+        }
+        String[] names = new String[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            byte[] bytes = new byte[in.getShort() & 0xFFFF];
+            in.get(bytes);
+            names[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        double[] constants = new double[constantCount];
+        in.asDoubleBuffer().get(constants);
+        in.position(in.position() + 8 * constantCount);
+        byte[] opcodes = new byte[size];
+        in.get(opcodes);
+        int[] operands = new int[size];
+        in.asIntBuffer().get(operands);
+        in.position(in.position() + 4 * size);
+        int[] subtreeStarts = new int[size];
+        in.asIntBuffer().get(subtreeStarts);
+        in.position(in.position() + 4 * size);
+
+        int pending = 0;
+        for (int i = 0; i < size; i++) {
+            int limit = opcodes[i] == NUMBER ? constantCount : opcodes[i] == VARIABLE || opcodes[i] == FUNCTION ? nameCount : 1;
+            boolean leaf = opcodes[i] == NUMBER || opcodes[i] == VARIABLE;
+            if (opcodes[i] < NUMBER || opcodes[i] > POWER || operands[i] < 0 || operands[i] >= limit
+                    || subtreeStarts[i] < 0 || subtreeStarts[i] > i || leaf != (subtreeStarts[i] == i)) {
+                throw new Exception("Invalid node " + i);
+            }
+            int children = 0;
+            int child = i - 1;
+            while (child >= subtreeStarts[i]) {
+                children++;
+                child = subtreeStarts[child] - 1;
+            }
+            if (child != subtreeStarts[i] - 1 || (opcodes[i] >= ADD && children != 2)) {
+                throw new Exception("Invalid node " + i);
+            }
+            pending += 1 - children;
+        }
+        if (pending != 1) {
+            throw new Exception("Incomplete expression");
+        }
+        return new CompactExpression(opcodes, operands, subtreeStarts, constants, names);
+    }
+
+    /**
+     * Estimates the heap memory used by this expression, assuming a 64-bit JVM with compressed references.
+     *
+     * @return The estimated size in bytes.
+     */
+    public long estimateBytes() {
+        long bytes = align(12 + 5 * 4);
+        bytes += align(16 + opcodes.length) + 2 * align(16 + 4L * operands.length) + align(16 + 8L * constants.length);
+        bytes += align(16 + 4L * names.length);
+        for (String name : names) {
+            bytes += estimateStringBytes(name);
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimates the heap memory used by an expression tree of Node objects, assuming a 64-bit JVM with compressed
+     * references. Shared subtrees and strings are counted once. The tree is walked with an explicit stack,
+     * so that trees of any depth can be measured.
+     *
+     * @param root The root node of the expression tree.
+     * @return The estimated size in bytes.
+     */
+    public static long estimateBytes(Node root) {
+        Map<Object, Boolean> counted = new IdentityHashMap<>();
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        long bytes = 0;
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            if (counted.put(node, Boolean.TRUE) != null) {
+                continue;
+            }
+            bytes += align(12 + 4 + 8 + 1 + 4 + 4) + align(12 + 3 * 4);
+            List<Node> children = node.getChildren();
+            if (!children.isEmpty()) {
+                bytes += align(16 + 4L * Math.max(10, children.size()));
+            }
+            if (node.getType() == NodeType.VARIABLE_OR_FUNCTION && counted.put(node.getValue(), Boolean.TRUE) == null) {
+                bytes += estimateStringBytes(node.getValue());
+            }
+            for (Node child : children) {
+                pending.push(child);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimates the heap memory used by a string of Latin-1 characters.
+     *
+     * @param text The string.
+     * @return The estimated size in bytes.
+     */
+    private static long estimateStringBytes(String text) {
+        return align(12 + 4 + 4 + 1 + 1) + align(16 + text.length());
+    }
+
+    /**
+     * Rounds a size up to the 8-byte alignment of objects.
+     *
+     * @param bytes The unaligned size.
+     * @return The aligned size.
+     */
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * This class is responsible for building a compact expression from the elements reported by a Parser.
+     * It appends one node per element and keeps a stack with the first node of every pending operand.
+     */
+    public static class Builder implements ParseListener {
+
+        /**
+         * The opcodes appended so far.
+         */
+        private byte[] opcodes = new byte[16];
+
+        /**
+         * The operands appended so far.
+         */
+        private int[] operands = new int[16];
+
+        /**
+         * The subtree starts appended so far.
+         */
+        private int[] subtreeStarts = new int[16];
+
+        /**
+         * The number of nodes appended so far.
+         */
+        private int size;
+
+        /**
+         * The constants added to the pool so far.
+         */
+        private double[] constants = new double[4];
+
+        /**
+         * The number of constants added to the pool so far.
+         */
+        private int constantCount;
+
+        /**
+         * The index of each name in the name pool.
+         */
+        private Map<String, Integer> names = new HashMap<>();
+
+        /**
+         * The first node of every operand not attached to a parent yet.
+         */
+        private int[] pending = new int[16];
+
+        /**
+         * The number of pending operands.
+         */
+        private int pendingCount;
+
+        /**
+         * Appends a number node.
+         *
+         * @param value The value of the number.
+         */
+        @Override
+        public void number(double value) {
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            }
+            constants[constantCount] = value;
+            append(NUMBER, constantCount++, size);
+        }
+
+        /**
+         * Appends a variable node.
+         *
+         * @param name The name of the variable.
+         */
+        @Override
+        public void variable(String name) {
+            append(VARIABLE, nameIndex(name), size);
+        }
+
+        /**
+         * Appends a function call node over the pending operands that are its arguments.
+         *
+         * @param name The name of the function.
+         * @param argumentCount The number of arguments of the call.
+         * @throws Exception If there are fewer pending operands than arguments.
+         */
+        @Override
+        public void function(String name, int argumentCount) throws Exception {
+            int start = argumentCount == 0 ? size : pop(argumentCount);
+            append(FUNCTION, nameIndex(name), start);
+        }
+
+        /**
+         * Appends an operator node over the two pending operands.
+         *
+         * @param operator The operator.
+         * @throws Exception If the operator is unknown or there are fewer than two pending operands.
+         */
+        @Override
+        public void operator(char operator) throws Exception {
+            int index = OPERATORS.indexOf(operator);
+            if (index < 0) {
+                throw new Exception("Unknown operator: " + operator);
+            }
+            append((byte) (ADD + index), 0, pop(2));
+        }
+
+        /**
+         * Returns the index of a name in the name pool, adding it if it is not there yet.
+         *
+         * @param name The name.
+         * @return The index of the name.
+         */
+        private int nameIndex(String name) {
+            Integer index = names.get(name);
+            if (index == null) {
+                index = names.size();
+                names.put(name, index);
+            }
+            return index;
+        }
+
+        /**
+         * Removes the given number of pending operands.
+         *
+         * @param count The number of operands to be removed.
+         * @return The first node of the earliest removed operand.
+         * @throws Exception If there are fewer pending operands.
+         */
+        private int pop(int count) throws Exception {
+            if (pendingCount < count) {
+                throw new Exception("Missing operand");
+            }
+            pendingCount -= count;
+            return pending[pendingCount];
+        }
+
+        /**
+         * Appends a node and makes it a pending operand.
+         *
+         * @param opcode The opcode of the node.
+         * @param operand The operand of the node.
+         * @param subtreeStart The first node of the subtree rooted at the node.
+         */
+        private void append(byte opcode, int operand, int subtreeStart) {
+            if (size == opcodes.length) {
+                opcodes = Arrays.copyOf(opcodes, size * 2);
+                operands = Arrays.copyOf(operands, size * 2);
+                subtreeStarts = Arrays.copyOf(subtreeStarts, size * 2);
+            }
+            opcodes[size] = opcode;
+            operands[size] = operand;
+            subtreeStarts[size] = subtreeStart;
+            size++;
+            if (pendingCount == pending.length) {
+                pending = Arrays.copyOf(pending, pendingCount * 2);
+            }
+            pending[pendingCount++] = subtreeStart;
+        }
+
+        /**
+         * Returns the compact expression built so far, with arrays trimmed to their used length.
+         *
+         * @return The compact expression.
+         * @throws Exception If the elements received do not form exactly one expression.
+         */
+        public CompactExpression build() throws Exception {
+            if (pendingCount != 1) {
+                throw new Exception("Incomplete expression");
+            }
+            String[] pool = new String[names.size()];
+            for (Map.Entry<String, Integer> entry : names.entrySet()) {
+                pool[entry.getValue()] = entry.getKey();
+            }
+            return new CompactExpression(Arrays.copyOf(opcodes, size), Arrays.copyOf(operands, size),
+                    Arrays.copyOf(subtreeStarts, size), Arrays.copyOf(constants, constantCount), pool);
+        }
+    }
+}
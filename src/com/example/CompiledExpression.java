@@ -0,0 +1,354 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * This class represents an expression tree compiled into a flat postfix program.
+ * The program is a sequence of opcodes with their operands, a pool of pre-parsed constants
+ * and a reusable operand stack, so evaluating it does not walk the tree, parse numbers or compare strings.
+ * Instances are created by the ExpressionCompiler. The program itself is immutable, but evaluate(double[])
+ * reuses one operand stack, so threads sharing an expression should pass their own stack from newStack().
+ */
+public class CompiledExpression implements DoubleExpression {
+
+    /**
+     * Pushes the constant at the operand index of the constant pool.
+     */
+    static final byte PUSH_CONSTANT = 0;
+
+    /**
+     * Pushes the value of the variable in the operand slot of the variable values.
+     */
+    static final byte LOAD_VARIABLE = 1;
+
+    /**
+     * Pops one argument and pushes the result of the function at the operand index of the function table.
+     */
+    static final byte CALL_FUNCTION = 2;
+
+    /**
+     * Pops two values and pushes their sum.
+     */
+    static final byte ADD = 3;
+
+    /**
+     * Pops two values and pushes their difference.
+     */
+    static final byte SUBTRACT = 4;
+
+    /**
+     * Pops two values and pushes their product.
+     */
+    static final byte MULTIPLY = 5;
+
+    /**
+     * Pops two values and pushes their quotient.
+     */
+    static final byte DIVIDE = 6;
+
+    /**
+     * Pops two values and pushes the first raised to the power of the second.
+     */
+    static final byte POWER = 7;
+
+    /**
+     * Copies the value on top of the stack into the temporary at the operand index, leaving it on the stack.
+     * Temporaries hold the values of subexpressions shared by several parents.
+     */
+    static final byte STORE_TEMP = 8;
+
+    /**
+     * Pushes the value of the temporary at the operand index.
+     */
+    static final byte LOAD_TEMP = 9;
+
+    /**
+     * Pops two arguments and pushes the result of the function at the operand index of the function table.
+     */
+    static final byte CALL_BINARY = 10;
+
+    /**
+     * Pops as many arguments as the function table entry at the operand index takes, and pushes the result of its function.
+     * The arguments are copied into a new array, so only these calls allocate during evaluation.
+     */
+    static final byte CALL_NARY = 11;
+
+    /**
+     * Pops a value into the result at the operand index. Only programs computing several expressions,
+     * as compiled for a FormulaSet, contain this instruction.
+     */
+    static final byte STORE_RESULT = 12;
+
+    /**
+     * The opcodes of the program in postfix order.
+     */
+    private final byte[] opcodes;
+
+    /**
+     * The operand of each opcode. This is an index into the constant pool, a variable slot
+     * or an index into the function table, depending on the opcode, and is unused for operators.
+     */
+    private final int[] operands;
+
+    /**
+     * The pool of constants referenced by PUSH_CONSTANT instructions.
+     */
+    private final double[] constants;
+
+    /**
+     * The slots of the variables referenced by LOAD_VARIABLE instructions.
+     */
+    private final VariableLayout layout;
+
+    /**
+     * The functions referenced by the call instructions.
+     */
+    private final ExpressionFunction[] functions;
+
+    /**
+     * The number of arguments passed to each entry of the function table.
+     */
+    private final int[] argumentCounts;
+
+    /**
+     * The maximum depth the operand stack can reach.
+     */
+    private final int maxStackDepth;
+
+    /**
+     * The number of temporaries used by STORE_TEMP and LOAD_TEMP instructions.
+     */
+    private final int tempCount;
+
+    /**
+     * The operand stack, reused across evaluations. The temporaries are stored after the deepest stack
+     * position, so a single array holds all the scratch state of an evaluation.
+     */
+    private final double[] stack;
+
+    /**
+     * The variable values bound from a map, reused across evaluations.
+     */
+    private final double[] boundValues;
+
+    /**
+     * Constructs a new compiled expression from the given program.
+     *
+     * @param opcodes The opcodes of the program in postfix order.
+     * @param operands The operand of each opcode.
+     * @param constants The pool of constants.
+     * @param layout The slots of the variables.
+     * @param functions The functions called by the program.
+     * @param argumentCounts The number of arguments passed to each function.
+     * @param maxStackDepth The maximum depth the operand stack can reach.
+     * @param tempCount The number of temporaries used by the program.
+     */
+    CompiledExpression(byte[] opcodes, int[] operands, double[] constants, VariableLayout layout,
+                       ExpressionFunction[] functions, int[] argumentCounts, int maxStackDepth, int tempCount) {
+        this.opcodes = opcodes;
+        this.operands = operands;
+        this.constants = constants;
+        this.layout = layout;
+        this.functions = functions;
+        this.argumentCounts = argumentCounts;
+        this.maxStackDepth = maxStackDepth;
+        this.tempCount = tempCount;
+        this.stack = new double[maxStackDepth + tempCount];
+        this.boundValues = layout.newValues();
+    }
+
+    /**
+     * Evaluates the compiled expression with variables given by name and returns the result.
+     * The values are copied into their slots before evaluation, so hot loops should prefer evaluate(double[]).
+     *
+     * @param variables A map of variables in the expression to their respective values.
+     * @return The result of the expression.
+     * @throws Exception If a variable is not defined.
+     */
+    public double evaluate(Map<String, Double> variables) throws Exception {
+        layout.bind(variables, boundValues);
+        return evaluate(boundValues);
+    }
+
+    /**
+     * Evaluates the compiled expression with variables given by slot and returns the result.
+     *
+     * @param variables The values of the variables, indexed by the slots of the layout.
+     * @return The result of the expression.
+     */
+    @Override
+    public double evaluate(double[] variables) {
+        return evaluate(variables, stack);
+    }
+
+    /**
+     * Evaluates the compiled expression with variables given by slot, using the given operand stack, and returns the result.
+     * This lets several threads evaluate the same expression at once, each with its own stack.
+     *
+     * @param variables The values of the variables, indexed by the slots of the layout.
+     * @param stack The operand stack, as returned by newStack().
+     * @return The result of the expression.
+     */
+    public double evaluate(double[] variables, double[] stack) {
+        return execute(variables, stack, null);
+    }
+
+    /**
+     * Runs the program with variables given by slot and the given operand stack.
+     *
+     * @param variables The values of the variables, indexed by the slots of the layout.
+     * @param stack The operand stack, as returned by newStack().
+     * @param results The array STORE_RESULT instructions write to, or null if the program has none.
+     * @return The value on the bottom of the stack when the program ends, which is the result of a single expression.
+     */
+    double execute(double[] variables, double[] stack, double[] results) {
+        int temps = maxStackDepth;
+        int top = -1;
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            switch (opcodes[pc]) {
+                case PUSH_CONSTANT:
+                    stack[++top] = constants[operands[pc]];
+                    break;
+                case LOAD_VARIABLE:
+                    stack[++top] = variables[operands[pc]];
+                    break;
+                case CALL_FUNCTION:
+                    stack[top] = functions[operands[pc]].apply(stack[top]);
+                    break;
+                case ADD:
+                    top--;
+                    stack[top] = stack[top] + stack[top + 1];
+                    break;
+                case SUBTRACT:
+                    top--;
+                    stack[top] = stack[top] - stack[top + 1];
+                    break;
+                case MULTIPLY:
+                    top--;
+                    stack[top] = stack[top] * stack[top + 1];
+                    break;
+                case DIVIDE:
+                    top--;
+                    stack[top] = stack[top] / stack[top + 1];
+                    break;
+                case POWER:
+                    top--;
+                    stack[top] = Math.pow(stack[top], stack[top + 1]);
+                    break;
+                case CALL_BINARY:
+                    top--;
+                    stack[top] = functions[operands[pc]].apply(stack[top], stack[top + 1]);
+                    break;
+                case CALL_NARY:
+                    int count = argumentCounts[operands[pc]];
+                    double[] arguments = Arrays.copyOfRange(stack, top - count + 1, top + 1);
+                    top -= count - 1;
+                    stack[top] = functions[operands[pc]].apply(arguments);
+                    break;
+                case STORE_TEMP:
+                    stack[temps + operands[pc]] = stack[top];
+                    break;
+                case LOAD_TEMP:
+                    stack[++top] = stack[temps + operands[pc]];
+                    break;
+                case STORE_RESULT:
+                    results[operands[pc]] = stack[top--];
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode: " + opcodes[pc]);
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Returns a new operand stack large enough for this expression.
+     *
+     * @return A new operand stack.
+     */
+    public double[] newStack() {
+        return new double[stack.length];
+    }
+
+    /**
+     * Returns the slots of the variables read by the expression.
+     *
+     * @return The variable layout of the expression.
+     */
+    public VariableLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Returns the opcodes of the program in postfix order.
+     *
+     * @return The opcodes of the program.
+     */
+    byte[] getOpcodes() {
+        return opcodes;
+    }
+
+    /**
+     * Returns the operand of each opcode.
+     *
+     * @return The operands of the program.
+     */
+    int[] getOperands() {
+        return operands;
+    }
+
+    /**
+     * Returns the pool of constants referenced by PUSH_CONSTANT instructions.
+     *
+     * @return The pool of constants.
+     */
+    double[] getConstants() {
+        return constants;
+    }
+
+    /**
+     * Returns the functions referenced by the call instructions.
+     *
+     * @return The function table.
+     */
+    ExpressionFunction[] getFunctions() {
+        return functions;
+    }
+
+    /**
+     * Returns the number of arguments passed to each entry of the function table.
+     *
+     * @return The argument counts of the function table.
+     */
+    int[] getArgumentCounts() {
+        return argumentCounts;
+    }
+
+    /**
+     * Returns the maximum depth the operand stack can reach.
+     *
+     * @return The maximum depth of the operand stack.
+     */
+    int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    /**
+     * Returns the number of temporaries used by the program.
+     *
+     * @return The number of temporaries.
+     */
+    int getTempCount() {
+        return tempCount;
+    }
+
+    /**
+     * Returns the number of instructions in the program.
+     *
+     * @return The number of instructions in the program.
+     */
+    public int size() {
+        return opcodes.length;
+    }
+}
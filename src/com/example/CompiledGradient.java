@@ -0,0 +1,301 @@
+package com.example;
+
+import java.util.Arrays;
+
+/**
+ * This class represents an expression tree compiled into a program that computes its value and all of its
+ * partial derivatives. The program is a tape of entries, one per distinct node, ordered so that every entry comes
+ * after its operands. A forward pass over the tape computes the value of every entry, and a backward pass
+ * propagates the derivative of the result to the operands of each entry in reverse order (reverse-mode automatic
+ * differentiation), so the whole gradient costs a small constant multiple of one evaluation, whatever the number
+ * of variables. Instances are created by the GradientCompiler. Evaluation reuses buffers held by the instance
+ * and does not allocate, so threads should each use their own copy from copy().
+ */
+public class CompiledGradient {
+
+    /**
+     * An entry holding a constant.
+     */
+    static final byte CONSTANT = 0;
+
+    /**
+     * An entry reading the variable in the slot given by its first operand.
+     */
+    static final byte VARIABLE = 1;
+
+    /**
+     * An entry calling a function with the value of its first operand.
+     */
+    static final byte CALL_UNARY = 2;
+
+    /**
+     * Entries combining the values of their first and second operands with +, -, *, / and ^.
+     */
+    static final byte ADD = 3, SUBTRACT = 4, MULTIPLY = 5, DIVIDE = 6, POWER = 7;
+
+    /**
+     * An entry calling a function with the values of its first and second operands.
+     */
+    static final byte CALL_BINARY = 8;
+
+    /**
+     * An entry calling a function with the values of the entries listed in the call site given by its first operand.
+     * Used for calls with more than two arguments, and for every call to a function whose derivatives are declared
+     * by a gradient, so that the gradient works on the buffers of the call site.
+     */
+    static final byte CALL_NARY = 9;
+
+    /**
+     * The kind of each entry of the tape.
+     */
+    private final byte[] kinds;
+
+    /**
+     * The first operand of each entry: an entry index, a variable slot or a call site, depending on the kind.
+     */
+    private final int[] first;
+
+    /**
+     * The second operand of each entry, an entry index for binary operators and calls.
+     */
+    private final int[] second;
+
+    /**
+     * The function called by each call entry, or null for other entries.
+     */
+    private final ExpressionFunction[] functions;
+
+    /**
+     * The argument entries of each CALL_NARY entry, indexed by call site.
+     */
+    private final int[][] callArguments;
+
+    /**
+     * Whether each entry depends on a variable. The derivative is only propagated into these entries.
+     */
+    private final boolean[] active;
+
+    /**
+     * The slots of the variables.
+     */
+    private final VariableLayout layout;
+
+    /**
+     * The value of each entry in the last evaluation. Constant entries keep the value they were compiled with.
+     */
+    private final double[] values;
+
+    /**
+     * The derivative of the result with respect to each entry in the last evaluation.
+     */
+    private final double[] adjoints;
+
+    /**
+     * The argument buffer of each call site.
+     */
+    private final double[][] argumentBuffers;
+
+    /**
+     * The partial derivative buffer of each call site.
+     */
+    private final double[][] partialBuffers;
+
+    /**
+     * Constructs a new compiled gradient from the given tape.
+     *
+     * @param kinds The kind of each entry.
+     * @param first The first operand of each entry.
+     * @param second The second operand of each entry.
+     * @param functions The function called by each call entry.
+     * @param callArguments The argument entries of each CALL_NARY entry.
+     * @param active Whether each entry depends on a variable.
+     * @param constants The value of each constant entry, and 0 for other entries.
+     * @param layout The slots of the variables.
+     */
+    CompiledGradient(byte[] kinds, int[] first, int[] second, ExpressionFunction[] functions, int[][] callArguments,
+                     boolean[] active, double[] constants, VariableLayout layout) {
+        this.kinds = kinds;
+        this.first = first;
+        this.second = second;
+        this.functions = functions;
+        this.callArguments = callArguments;
+        this.active = active;
+        this.layout = layout;
+        this.values = constants.clone();
+        this.adjoints = new double[kinds.length];
+        this.argumentBuffers = new double[callArguments.length][];
+        this.partialBuffers = new double[callArguments.length][];
+        for (int site = 0; site < callArguments.length; site++) {
+            argumentBuffers[site] = new double[callArguments[site].length];
+            partialBuffers[site] = new double[callArguments[site].length];
+        }
+    }
+
+    /**
+     * Returns a copy of this gradient program that shares the tape but has its own buffers,
+     * so that it can be evaluated on another thread.
+     *
+     * @return The copy.
+     */
+    public CompiledGradient copy() {
+        return new CompiledGradient(kinds, first, second, functions, callArguments, active, values, layout);
+    }
+
+    /**
+     * Evaluates the expression and its partial derivatives with respect to every variable.
+     *
+     * @param variables The values of the variables, indexed by the slots of the layout.
+     * @param gradient The array the partial derivatives are written to, indexed by the slots of the layout.
+     * @return The value of the expression.
+     */
+    public double evaluate(double[] variables, double[] gradient) {
+        int last = kinds.length - 1;
+        for (int i = 0; i <= last; i++) {
+            values[i] = forward(i, variables);
+        }
+        Arrays.fill(gradient, 0, layout.size(), 0.0);
+        Arrays.fill(adjoints, 0.0);
+        adjoints[last] = 1.0;
+        for (int i = last; i >= 0; i--) {
+            backward(i, gradient);
+        }
+        return values[last];
+    }
+
+    /**
+     * Computes the value of one entry from the values of its operands.
+     *
+     * @param i The entry.
+     * @param variables The values of the variables, indexed by slot.
+     * @return The value of the entry.
+     */
+    private double forward(int i, double[] variables) {
+        switch (kinds[i]) {
+            case VARIABLE: return variables[first[i]];
+            case ADD: return values[first[i]] + values[second[i]];
+            case SUBTRACT: return values[first[i]] - values[second[i]];
+            case MULTIPLY: return values[first[i]] * values[second[i]];
+            case DIVIDE: return values[first[i]] / values[second[i]];
+            case POWER: return Math.pow(values[first[i]], values[second[i]]);
+            case CALL_UNARY: return functions[i].apply(values[first[i]]);
+            case CALL_BINARY: return functions[i].apply(values[first[i]], values[second[i]]);
+            case CALL_NARY:
+                int[] arguments = callArguments[first[i]];
+                double[] buffer = argumentBuffers[first[i]];
+                for (int k = 0; k < arguments.length; k++) {
+                    buffer[k] = values[arguments[k]];
+                }
+                return functions[i].apply(buffer);
+            default: return values[i];
+        }
+    }
+
+    /**
+     * Propagates the derivative of the result with respect to one entry to the entries it reads.
+     *
+     * @param i The entry.
+     * @param gradient The partial derivatives of the variables, indexed by slot.
+     */
+    private void backward(int i, double[] gradient) {
+        double adjoint = adjoints[i];
+        int a = first[i];
+        int b = second[i];
+        switch (kinds[i]) {
+            case VARIABLE:
+                gradient[a] += adjoint;
+                break;
+            case ADD:
+                propagate(a, adjoint);
+                propagate(b, adjoint);
+                break;
+            case SUBTRACT:
+                propagate(a, adjoint);
+                propagate(b, -adjoint);
+                break;
+            case MULTIPLY:
+                propagate(a, adjoint * values[b]);
+                propagate(b, adjoint * values[a]);
+                break;
+            case DIVIDE:
+                propagate(a, adjoint / values[b]);
+                if (active[b]) {
+                    adjoints[b] -= adjoint * values[i] / values[b];
+                }
+                break;
+            case POWER:
+                if (active[a]) {
+                    adjoints[a] += adjoint * values[b] * Math.pow(values[a], values[b] - 1);
+                }
+                if (active[b] && values[a] != 0) {
+                    adjoints[b] += adjoint * values[i] * Math.log(values[a]);
+                }
+                break;
+            case CALL_UNARY:
+                if (active[a]) {
+                    adjoints[a] += adjoint * functions[i].derivative(values[a]);
+                }
+                break;
+            case CALL_BINARY:
+                if (active[a]) {
+                    adjoints[a] += adjoint * functions[i].partial(0, values[a], values[b]);
+                }
+                if (active[b]) {
+                    adjoints[b] += adjoint * functions[i].partial(1, values[a], values[b]);
+                }
+                break;
+            case CALL_NARY:
+                int[] arguments = callArguments[a];
+                double[] buffer = argumentBuffers[a];
+                double[] partials = partialBuffers[a];
+                for (int k = 0; k < arguments.length; k++) {
+                    buffer[k] = values[arguments[k]];
+                }
+                functions[i].gradient(buffer, partials);
+                for (int k = 0; k < arguments.length; k++) {
+                    propagate(arguments[k], adjoint * partials[k]);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Adds a contribution to the derivative of the result with respect to an entry, if it depends on a variable.
+     *
+     * @param entry The entry.
+     * @param contribution The contribution to be added.
+     */
+    private void propagate(int entry, double contribution) {
+        if (active[entry]) {
+            adjoints[entry] += contribution;
+        }
+    }
+
+    /**
+     * Returns a new array large enough to receive the partial derivatives of this expression.
+     *
+     * @return A new gradient array.
+     */
+    public double[] newGradient() {
+        return new double[layout.size()];
+    }
+
+    /**
+     * Returns the slots of the variables read by the expression.
+     *
+     * @return The variable layout of the expression.
+     */
+    public VariableLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Returns the number of entries in the tape.
+     *
+     * @return The number of entries in the tape.
+     */
+    public int size() {
+        return kinds.length;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example;
+
+/**
+ * This interface represents an expression that can be evaluated over variables bound by slot.
+ * It is implemented by compiled expressions and by the classes generated by the BytecodeCompiler.
+ */
+public interface DoubleExpression {
+
+    /**
+     * Evaluates the expression and returns the result.
+     *
+     * @param variables The values of the variables, indexed by the slots of the expression's variable layout.
+     * @return The result of the expression.
+     */
+    double evaluate(double[] variables);
+}
@@ -0,0 +1,17 @@
+package com.example;
+
+/**
+ * This interface represents an operation on any number of double arguments producing a double result.
+ * It is the n-ary counterpart of DoubleUnaryOperator and DoubleBinaryOperator.
+ */
+@FunctionalInterface
+public interface DoubleNaryOperator {
+
+    /**
+     * Applies this operator to the given arguments.
+     *
+     * @param arguments The arguments, in the order they appear in the expression.
+     * @return The result of the operator.
+     */
+    double applyAsDouble(double[] arguments);
+}
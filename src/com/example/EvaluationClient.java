@@ -0,0 +1,130 @@
+package com.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Map;
+
+/**
+ * This class is responsible for sending evaluation requests to an EvaluationServer over one connection.
+ * Requests are buffered by send() and responses are read by receive() in the order the requests were sent,
+ * so several requests can be pipelined before the first response is read. The number of requests in flight must
+ * be bounded, though: the server stops reading while it writes responses, so a client that only sends would fill
+ * both socket buffers and block forever. Keep a window of requests whose responses have not been received, a few
+ * hundred as the LoadGenerator uses, and call receive() whenever it is full. A single thread should use each client.
+ */
+public class EvaluationClient implements AutoCloseable {
+
+    /**
+     * The size of the read and write buffers.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The connection to the server.
+     */
+    private Socket socket;
+
+    /**
+     * The stream the requests are written to.
+     */
+    private DataOutputStream out;
+
+    /**
+     * The stream the responses are read from.
+     */
+    private DataInputStream in;
+
+    /**
+     * Whether requests have been written since the last flush.
+     */
+    private boolean unflushed;
+
+    /**
+     * The id given to the next request sent by evaluate().
+     */
+    private long nextId;
+
+    /**
+     * Constructs a new client connected to a server on the loopback interface.
+     *
+     * @param port The port the server listens on.
+     * @throws IOException If the connection cannot be opened.
+     */
+    public EvaluationClient(int port) throws IOException {
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        this.socket.setTcpNoDelay(true);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+    }
+
+    /**
+     * Buffers a request without waiting for its response. It is sent when the buffer fills, on flush(),
+     * or before the next receive(). Sending many requests without receiving their responses can block,
+     * as described for this class.
+     *
+     * @param id The id of the request, echoed in its response.
+     * @param formula The formula to be evaluated.
+     * @param variables The values of the variables, by name.
+     * @throws IOException If the request cannot be written.
+     */
+    public void send(long id, String formula, Map<String, Double> variables) throws IOException {
+        EvaluationProtocol.writeRequest(out, id, formula, variables);
+        unflushed = true;
+    }
+
+    /**
+     * Sends every buffered request.
+     *
+     * @throws IOException If the requests cannot be written.
+     */
+    public void flush() throws IOException {
+        out.flush();
+        unflushed = false;
+    }
+
+    /**
+     * Returns the response to the oldest request whose response has not been received yet, waiting for it
+     * if necessary. Buffered requests are sent first.
+     *
+     * @return The result of the request, indexed by its id.
+     * @throws IOException If the connection fails or the server sends a malformed response.
+     */
+    public BulkResult receive() throws IOException {
+        if (unflushed) {
+            flush();
+        }
+        return EvaluationProtocol.readResponse(in);
+    }
+
+    /**
+     * Evaluates one formula and waits for its value. Every pipelined response must have been received first.
+     *
+     * @param formula The formula to be evaluated.
+     * @param variables The values of the variables, by name.
+     * @return The value of the formula.
+     * @throws Exception If the server reports an error or the connection fails.
+     */
+    public double evaluate(String formula, Map<String, Double> variables) throws Exception {
+        send(nextId++, formula, variables);
+        BulkResult result = receive();
+        if (!result.isSuccess()) {
+            throw new Exception(result.getError());
+        }
+        return result.getValue();
+    }
+
+    /**
+     * Closes the connection.
+     *
+     * @throws IOException If the connection cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
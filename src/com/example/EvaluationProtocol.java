@@ -0,0 +1,238 @@
+package com.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class is responsible for encoding and decoding the messages exchanged by the EvaluationServer and its clients.
+ * Every message is a frame made of its length in bytes, as a four-byte integer, followed by that many bytes.
+ * All numbers are big-endian and all strings are UTF-8, preceded by their length in bytes as a four-byte integer.
+ * A request frame holds the request id (long), the formula (string), the number of variables (int) and each
+ * variable as a name (string) and a value (double).
+ * A response frame holds the id of the request it answers (long) and a status byte: OK followed by the value
+ * (double), or ERROR followed by the error message in UTF-8, filling the rest of the frame.
+ * Responses are sent in the order the requests were received, so clients may send several requests before reading,
+ * up to a bounded window as described by EvaluationClient.
+ */
+final class EvaluationProtocol {
+
+    /**
+     * The status of a response holding a value.
+     */
+    static final byte OK = 0;
+
+    /**
+     * The status of a response holding an error message.
+     */
+    static final byte ERROR = 1;
+
+    /**
+     * The largest frame accepted, so that a corrupt length cannot make the reader allocate without bound.
+     */
+    static final int MAX_FRAME_LENGTH = 1 << 20;
+
+    /**
+     * This class only has static members.
+     */
+    private EvaluationProtocol() {
+    }
+
+    /**
+     * This class represents a decoded request, and the outcome of evaluating it once it is known.
+     */
+    static final class Request {
+
+        /**
+         * The id chosen by the client, echoed in the response.
+         */
+        final long id;
+
+        /**
+         * The formula to be evaluated.
+         */
+        final String formula;
+
+        /**
+         * The values of the variables, by name.
+         */
+        final Map<String, Double> variables;
+
+        /**
+         * The value of the formula, once evaluated.
+         */
+        double value;
+
+        /**
+         * The message of the error that prevented evaluation, or null.
+         */
+        String error;
+
+        /**
+         * Constructs a new request.
+         *
+         * @param id The id chosen by the client.
+         * @param formula The formula to be evaluated.
+         * @param variables The values of the variables, by name.
+         */
+        Request(long id, String formula, Map<String, Double> variables) {
+            this.id = id;
+            this.formula = formula;
+            this.variables = variables;
+        }
+    }
+
+    /**
+     * Writes a request frame. The frame is only buffered; the caller decides when to flush.
+     *
+     * @param out The stream the frame is written to.
+     * @param id The id of the request.
+     * @param formula The formula to be evaluated.
+     * @param variables The values of the variables, by name.
+     * @throws IOException If the frame cannot be written or is too large.
+     */
+    static void writeRequest(DataOutputStream out, long id, String formula, Map<String, Double> variables) throws IOException {
+        byte[] formulaBytes = formula.getBytes(StandardCharsets.UTF_8);
+        byte[][] names = new byte[variables.size()][];
+        double[] values = new double[variables.size()];
+        int length = 8 + 4 + formulaBytes.length + 4;
+        int i = 0;
+        for (Map.Entry<String, Double> variable : variables.entrySet()) {
+            names[i] = variable.getKey().getBytes(StandardCharsets.UTF_8);
+            values[i] = variable.getValue();
+            length += 4 + names[i].length + 8;
+            i++;
+        }
+        if (length > MAX_FRAME_LENGTH) {
+            throw new IOException("Request too large: " + length + " bytes");
+        }
+        out.writeInt(length);
+        out.writeLong(id);
+        out.writeInt(formulaBytes.length);
+        out.write(formulaBytes);
+        out.writeInt(names.length);
+        for (i = 0; i < names.length; i++) {
+            out.writeInt(names[i].length);
+            out.write(names[i]);
+            out.writeDouble(values[i]);
+        }
+    }
+
+    /**
+     * Reads a request frame.
+     *
+     * @param in The stream the frame is read from.
+     * @return The request, or null if the stream ended before a new frame.
+     * @throws IOException If the stream ends inside a frame or the frame is malformed.
+     */
+    static Request readRequest(DataInputStream in) throws IOException {
+        DataInputStream frame = readFrame(in);
+        if (frame == null) {
+            return null;
+        }
+        long id = frame.readLong();
+        String formula = readString(frame);
+        int count = frame.readInt();
+        if (count < 0 || count > MAX_FRAME_LENGTH / 12) {
+            throw new IOException("Invalid variable count: " + count);
+        }
+        Map<String, Double> variables = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = readString(frame);
+            variables.put(name, frame.readDouble());
+        }
+        return new Request(id, formula, variables);
+    }
+
+    /**
+     * Writes a response frame. The frame is only buffered; the caller decides when to flush.
+     *
+     * @param out The stream the frame is written to.
+     * @param id The id of the request answered.
+     * @param value The value of the formula, ignored if there is an error.
+     * @param error The message of the error, or null if the formula was evaluated.
+     * @throws IOException If the frame cannot be written.
+     */
+    static void writeResponse(DataOutputStream out, long id, double value, String error) throws IOException {
+        if (error == null) {
+            out.writeInt(8 + 1 + 8);
+            out.writeLong(id);
+            out.writeByte(OK);
+            out.writeDouble(value);
+        } else {
+            byte[] message = String.valueOf(error).getBytes(StandardCharsets.UTF_8);
+            if (message.length > MAX_FRAME_LENGTH - 9) {
+                message = "Error message too long".getBytes(StandardCharsets.UTF_8);
+            }
+            out.writeInt(8 + 1 + message.length);
+            out.writeLong(id);
+            out.writeByte(ERROR);
+            out.write(message);
+        }
+    }
+
+    /**
+     * Reads a response frame.
+     *
+     * @param in The stream the frame is read from.
+     * @return The result held by the response, indexed by the id of the request it answers.
+     * @throws IOException If the stream ended or the frame is malformed.
+     */
+    static BulkResult readResponse(DataInputStream in) throws IOException {
+        DataInputStream frame = readFrame(in);
+        if (frame == null) {
+            throw new EOFException("Connection closed by the server");
+        }
+        long id = frame.readLong();
+        byte status = frame.readByte();
+        if (status == OK) {
+            return new BulkResult(id, frame.readDouble(), null);
+        } else if (status == ERROR) {
+            return new BulkResult(id, Double.NaN, new String(frame.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        throw new IOException("Invalid response status: " + status);
+    }
+
+    /**
+     * Reads the next frame whole and returns a stream over its contents.
+     *
+     * @param in The stream the frame is read from.
+     * @return A stream over the contents of the frame, or null if the stream ended before a new frame.
+     * @throws IOException If the stream ends inside the frame or its length is invalid.
+     */
+    private static DataInputStream readFrame(DataInputStream in) throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            return null;
+        }
+        int length = first << 24 | in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        byte[] contents = new byte[length];
+        in.readFully(contents);
+        return new DataInputStream(new ByteArrayInputStream(contents));
+    }
+
+    /**
+     * Reads a string preceded by its length in bytes.
+     *
+     * @param in The stream the string is read from.
+     * @return The string.
+     * @throws IOException If the stream ends inside the string or its length is invalid.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
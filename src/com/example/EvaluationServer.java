@@ -0,0 +1,356 @@
+package com.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is responsible for serving evaluation requests from other processes over a local TCP socket, so that
+ * they pay for JVM startup and for compiling each formula once rather than on every request.
+ * Messages use the length-prefixed binary format of EvaluationProtocol. Each connection is served by its own thread:
+ * it reads one request, then every further request that has already arrived (up to MAX_BATCH), evaluates them, and
+ * writes all of their responses with a single flush. Clients that pipeline many requests therefore get them
+ * handled in batches, and requests in a batch that share a formula are evaluated together by the BatchEvaluator
+ * instead of one at a time. Formulas are compiled through an ExpressionCache shared by all connections.
+ * A connection reads no requests while it writes responses, so clients must keep receiving as they send, with a
+ * bounded number of requests in flight, or both sides block once the socket buffers are full.
+ */
+public class EvaluationServer implements AutoCloseable {
+
+    /**
+     * The largest number of requests handled together on one connection.
+     */
+    static final int MAX_BATCH = 1024;
+
+    /**
+     * The default number of cached compiled expressions.
+     */
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+
+    /**
+     * The size of the read and write buffers of each connection.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The pause after the first failure to accept a connection, in milliseconds.
+     */
+    private static final long MIN_ACCEPT_BACKOFF = 10;
+
+    /**
+     * The longest pause between attempts to accept a connection after repeated failures, in milliseconds.
+     */
+    private static final long MAX_ACCEPT_BACKOFF = 1000;
+
+    /**
+     * The socket accepting connections.
+     */
+    private final ServerSocket serverSocket;
+
+    /**
+     * The functions that can be called from the formulas.
+     */
+    private final FunctionRegistry functions;
+
+    /**
+     * The cache the formulas are compiled through.
+     */
+    private final ExpressionCache cache;
+
+    /**
+     * The executor running the accepting loop and the connections.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The open connections, closed with the server.
+     */
+    private final Set<Socket> connections;
+
+    /**
+     * The number of requests answered.
+     */
+    private final LongAdder requests;
+
+    /**
+     * The number of requests evaluated in a batch together with other requests for the same formula.
+     */
+    private final LongAdder batchedRequests;
+
+    /**
+     * The number of failures to accept a connection while the server was open.
+     */
+    private final LongAdder acceptErrors;
+
+    /**
+     * Whether the server has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new server listening on the loopback interface and starts accepting connections.
+     *
+     * @param port The port to listen on, or 0 to pick a free one.
+     * @param functions The functions that can be called from the formulas.
+     * @throws IOException If the port cannot be bound.
+     */
+    public EvaluationServer(int port, FunctionRegistry functions) throws IOException {
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.functions = functions;
+        this.cache = new ExpressionCache(DEFAULT_CACHE_SIZE);
+        this.executor = newExecutor();
+        this.connections = ConcurrentHashMap.newKeySet();
+        this.requests = new LongAdder();
+        this.batchedRequests = new LongAdder();
+        this.acceptErrors = new LongAdder();
+        executor.execute(this::accept);
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per task if the runtime supports it,
+     * and a new platform thread per task otherwise, since every connection blocks its thread while it waits.
+     *
+     * @return The new executor.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Accepts connections until the server is closed, serving each on its own thread.
+     * A failure to accept, such as running out of file descriptors, is counted in getAcceptErrors(), and the loop
+     * pauses before trying again, doubling the pause on each further failure, so that a lasting failure does not
+     * keep a thread spinning.
+     */
+    private void accept() {
+        long backoff = MIN_ACCEPT_BACKOFF;
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                executor.execute(() -> serve(socket));
+                backoff = MIN_ACCEPT_BACKOFF;
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                acceptErrors.increment();
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_ACCEPT_BACKOFF);
+            }
+        }
+    }
+
+    /**
+     * Serves one connection until the client closes it or sends a malformed frame.
+     *
+     * @param socket The connection.
+     */
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE))) {
+            List<EvaluationProtocol.Request> batch = new ArrayList<>();
+            EvaluationProtocol.Request request;
+            while ((request = EvaluationProtocol.readRequest(in)) != null) {
+                batch.add(request);
+                while (batch.size() < MAX_BATCH && in.available() > 0
+                        && (request = EvaluationProtocol.readRequest(in)) != null) {
+                    batch.add(request);
+                }
+                evaluate(batch);
+                for (EvaluationProtocol.Request answered : batch) {
+                    EvaluationProtocol.writeResponse(out, answered.id, answered.value, answered.error);
+                }
+                out.flush();
+                requests.add(batch.size());
+                batch.clear();
+            }
+        } catch (IOException e) {
+            // The client went away or broke the protocol; its connection is simply dropped.
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * Evaluates a batch of requests, grouping those that share a formula.
+     *
+     * @param batch The requests, which receive their value or error.
+     */
+    private void evaluate(List<EvaluationProtocol.Request> batch) {
+        Map<String, List<EvaluationProtocol.Request>> groups = new LinkedHashMap<>();
+        for (EvaluationProtocol.Request request : batch) {
+            groups.computeIfAbsent(request.formula, formula -> new ArrayList<>()).add(request);
+        }
+        for (Map.Entry<String, List<EvaluationProtocol.Request>> group : groups.entrySet()) {
+            CompiledExpression compiled;
+            try {
+                compiled = cache.get(group.getKey(), functions);
+            } catch (Exception e) {
+                for (EvaluationProtocol.Request request : group.getValue()) {
+                    request.error = BulkResult.describe(e);
+                }
+                continue;
+            }
+            if (group.getValue().size() == 1) {
+                evaluate(compiled, group.getValue().get(0));
+            } else {
+                evaluate(compiled, group.getValue());
+            }
+        }
+    }
+
+    /**
+     * Evaluates a single request. The compiled expression is shared with other connections,
+     * so it is evaluated with an operand stack of its own. Anything the evaluation throws, errors included,
+     * becomes the error of the request, so that the connection and the other requests in flight are unaffected.
+     *
+     * @param compiled The compiled formula.
+     * @param request The request, which receives its value or error.
+     */
+    private static void evaluate(CompiledExpression compiled, EvaluationProtocol.Request request) {
+        VariableLayout layout = compiled.getLayout();
+        double[] values = layout.newValues();
+        try {
+            layout.bind(request.variables, values);
+            request.value = compiled.evaluate(values, compiled.newStack());
+        } catch (Throwable e) {
+            request.error = BulkResult.describe(e);
+        }
+    }
+
+    /**
+     * Evaluates several requests for the same formula with one batch evaluation.
+     * Requests missing a variable receive an error and are left out of the batch. If the batch evaluation fails,
+     * because a function throws for one of the rows, every request of the batch is evaluated again on its own,
+     * so that only the requests that fail receive an error.
+     *
+     * @param compiled The compiled formula.
+     * @param group The requests, which receive their value or error.
+     */
+    private void evaluate(CompiledExpression compiled, List<EvaluationProtocol.Request> group) {
+        VariableLayout layout = compiled.getLayout();
+        double[][] columns = new double[layout.size()][group.size()];
+        int[] rows = new int[group.size()];
+        int count = 0;
+        for (int i = 0; i < group.size(); i++) {
+            EvaluationProtocol.Request request = group.get(i);
+            for (int slot = 0; slot < columns.length && request.error == null; slot++) {
+                Double value = request.variables.get(layout.nameAt(slot));
+                if (value == null) {
+                    request.error = "Variable not defined: " + layout.nameAt(slot);
+                } else {
+                    columns[slot][count] = value;
+                }
+            }
+            if (request.error == null) {
+                rows[count++] = i;
+            }
+        }
+        double[] results = new double[count];
+        try {
+            BatchEvaluator.evaluate(compiled, columns, results, 0, count);
+        } catch (Throwable e) {
+            for (int row = 0; row < count; row++) {
+                evaluate(compiled, group.get(rows[row]));
+            }
+            return;
+        }
+        for (int row = 0; row < count; row++) {
+            group.get(rows[row]).value = results[row];
+        }
+        batchedRequests.add(count);
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return The local port.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the cache the formulas are compiled through.
+     *
+     * @return The expression cache.
+     */
+    public ExpressionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the number of requests answered so far.
+     *
+     * @return The number of requests answered.
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Returns the number of requests evaluated in a batch together with other requests for the same formula.
+     *
+     * @return The number of batched requests.
+     */
+    public long getBatchedRequests() {
+        return batchedRequests.sum();
+    }
+
+    /**
+     * Returns the number of failures to accept a connection while the server was open.
+     *
+     * @return The number of accept errors.
+     */
+    public long getAcceptErrors() {
+        return acceptErrors.sum();
+    }
+
+    /**
+     * Stops accepting connections, closes the open ones and waits briefly for their threads to finish.
+     *
+     * @throws IOException If the listening socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket socket : connections) {
+            socket.close();
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class represents a file holding many parsed expressions in a compact binary format, so that they can be
+ * loaded at startup without tokenizing and parsing them again.
+ * The file starts with a header: the magic number, the format version, the number of expressions and the offset of
+ * the index. The expressions follow, each in the form written by CompactExpression, and the index lists the offset
+ * of each one. Opening an archive maps the file into memory and reads only the header and the index;
+ * each expression is decoded the first time it is requested and kept for later requests.
+ */
+public class ExpressionArchive {
+
+    /**
+     * The first four bytes of every archive: "EXPA" in ASCII.
+     */
+    static final int MAGIC = 0x45585041;
+
+    /**
+     * The version of the format written by this class. Archives with another version are rejected.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The size of the header in bytes.
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+
+    /**
+     * The mapped contents of the archive file.
+     */
+    private final ByteBuffer data;
+
+    /**
+     * The offset of each expression in the file.
+     */
+    private final long[] offsets;
+
+    /**
+     * The expressions decoded so far, or null for those not requested yet.
+     */
+    private final AtomicReferenceArray<CompactExpression> decoded;
+
+    /**
+     * Constructs a new archive over the given mapped file.
+     *
+     * @param data The mapped contents of the archive file.
+     * @param offsets The offset of each expression in the file.
+     */
+    private ExpressionArchive(ByteBuffer data, long[] offsets) {
+        this.data = data;
+        this.offsets = offsets;
+        this.decoded = new AtomicReferenceArray<>(offsets.length);
+    }
+
+    /**
+     * This method writes the given expressions to an archive file, replacing it if it exists.
+     *
+     * @param path The file the archive is written to.
+     * @param expressions The expressions to be stored, in the order they are retrieved by index.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Path path, List<CompactExpression> expressions) throws IOException {
+        long[] offsets = new long[expressions.size()];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(expressions.size());
+            out.writeLong(0);
+            long position = HEADER_SIZE;
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = position;
+                int before = out.size();
+                expressions.get(i).write(out);
+                position += out.size() - before;
+            }
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+            out.flush();
+            channel.write(ByteBuffer.allocate(8).putLong(0, position), HEADER_SIZE - 8);
+        }
+    }
+
+    /**
+     * This method opens an archive file by mapping it into memory. Only the header and the index are read;
+     * the expressions are decoded when they are first requested.
+     *
+     * @param path The archive file.
+     * @return The archive.
+     * @throws Exception If the file cannot be read, is not an archive, or has an unsupported version.
+     */
+    public static ExpressionArchive open(Path path) throws Exception {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new Exception("Archive too large: " + path);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new Exception("Not an expression archive: " + path);
+        }
+        int version = data.getInt(4);
+        if (version != VERSION) {
+            throw new Exception("Unsupported archive version " + version + ": " + path);
+        }
+        int count = data.getInt(8);
+        long indexOffset = data.getLong(12);
+        if (count < 0 || indexOffset < HEADER_SIZE || indexOffset + 8L * count != data.limit()) {
+            throw new Exception("Corrupt archive index: " + path);
+        }
+        long[] offsets = new long[count];
+        data.position((int) indexOffset);
+        data.asLongBuffer().get(offsets);
+        for (long offset : offsets) {
+            if (offset < HEADER_SIZE || offset >= indexOffset) {
+                throw new Exception("Corrupt archive index: " + path);
+            }
+        }
+        return new ExpressionArchive(data, offsets);
+    }
+
+    /**
+     * Returns the number of expressions in the archive.
+     *
+     * @return The number of expressions.
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * Returns the expression at the given index, decoding it if it has not been requested before.
+     * Several threads may request expressions at once.
+     *
+     * @param index The index of the expression.
+     * @return The expression.
+     * @throws Exception If the stored expression is corrupt, naming the entry and carrying the original error as its cause.
+     */
+    public CompactExpression get(int index) throws Exception {
+        CompactExpression expression = decoded.get(index);
+        if (expression == null) {
+            ByteBuffer in = data.duplicate();
+            in.position((int) offsets[index]);
+            try {
+                expression = CompactExpression.read(in);
+            } catch (Exception e) {
+                throw new Exception("Corrupt archive entry " + index + ": " + e.getMessage(), e);
+            }
+            if (!decoded.compareAndSet(index, null, expression)) {
+                expression = decoded.get(index);
+            }
+        }
+        return expression;
+    }
+}
@@ -0,0 +1,322 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * This class is responsible for caching compiled expressions by their text.
+ * Entries are keyed by the expression with the whitespace between tokens removed and by the functions it was
+ * compiled against, and the least recently used entry is evicted once the cache is full.
+ * Concurrent misses for the same key wait for a single parse and compilation instead of repeating it.
+ * The cached expressions are shared: threads evaluating the same one at once should use their own
+ * operand stack, or the batch and parallel evaluators.
+ */
+public class ExpressionCache {
+
+    /**
+     * The maximum number of entries kept in the cache.
+     */
+    private final int maxEntries;
+
+    /**
+     * The cached entries in access order, guarded by the cache itself.
+     * An entry holds a future so that a compilation in progress can be waited on by other callers.
+     */
+    private final LinkedHashMap<Key, CompletableFuture<CompiledExpression>> entries;
+
+    /**
+     * The number of lookups answered from the cache.
+     */
+    private final LongAdder hits;
+
+    /**
+     * The number of lookups that had to parse and compile the expression.
+     */
+    private final LongAdder misses;
+
+    /**
+     * The number of entries evicted to make room for new ones.
+     */
+    private final LongAdder evictions;
+
+    /**
+     * Constructs a new cache holding at most the given number of entries.
+     *
+     * @param maxEntries The maximum number of entries kept in the cache.
+     */
+    public ExpressionCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache must hold at least one entry: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompletableFuture<CompiledExpression>> eldest) {
+                if (size() > ExpressionCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the compiled form of the given expression, parsing and compiling it on a miss.
+     * Entries are shared with earlier calls only if they passed the same function objects under the same names.
+     *
+     * @param expression The mathematical expression.
+     * @param functions A map of functions in the expression to their respective implementations.
+     * @return The compiled expression.
+     * @throws Exception If there is an error in the expression, during tokenization, parsing or compilation.
+     */
+    public CompiledExpression get(String expression, Map<String, Function<Double, Double>> functions) throws Exception {
+        String[] names = functions.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        Object[] implementations = new Object[names.length];
+        for (int i = 0; i < names.length; i++) {
+            implementations[i] = functions.get(names[i]);
+        }
+        return get(expression, new Key(normalize(expression), names, implementations), () -> FunctionRegistry.of(functions));
+    }
+
+    /**
+     * Returns the compiled form of the given expression with functions from a registry, parsing and compiling it on a miss.
+     * Entries are shared with earlier calls only if their registries held the same ExpressionFunction objects,
+     * so registries that give different implementations the same names, such as standard() and fastMath(),
+     * never share compiled expressions.
+     *
+     * @param expression The mathematical expression.
+     * @param functions The functions that can be called from the expression.
+     * @return The compiled expression.
+     * @throws Exception If there is an error in the expression, during tokenization, parsing or compilation.
+     */
+    public CompiledExpression get(String expression, FunctionRegistry functions) throws Exception {
+        String[] names = functions.names().toArray(new String[0]);
+        Arrays.sort(names);
+        Object[] implementations = new Object[names.length];
+        for (int i = 0; i < names.length; i++) {
+            implementations[i] = functions.get(names[i]);
+        }
+        return get(expression, new Key(normalize(expression), names, implementations), () -> functions);
+    }
+
+    /**
+     * Returns the compiled expression cached under a key, parsing and compiling the expression on a miss.
+     *
+     * @param expression The mathematical expression.
+     * @param key The key of the expression and its functions.
+     * @param functions Supplies the functions the expression is compiled against, only called on a miss.
+     * @return The compiled expression.
+     * @throws Exception If there is an error in the expression, during tokenization, parsing or compilation.
+     */
+    private CompiledExpression get(String expression, Key key, Supplier<FunctionRegistry> functions) throws Exception {
+        CompletableFuture<CompiledExpression> future;
+        boolean owner = false;
+        synchronized (entries) {
+            future = entries.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                entries.put(key, future);
+                owner = true;
+            }
+        }
+        if (!owner) {
+            hits.increment();
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw (Exception) e.getCause();
+            }
+        }
+        misses.increment();
+        try {
+            FunctionRegistry registry = functions.get();
+            Node root = ExpressionTreeBuilder.buildExpressionTree(expression, new HashMap<>(), registry);
+            CompiledExpression compiled = ExpressionCompiler.compile(root, registry);
+            future.complete(compiled);
+            return compiled;
+        } catch (Throwable e) {
+            synchronized (entries) {
+                entries.remove(key, future);
+            }
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the expression with the whitespace that does not separate tokens removed, so that differently spaced
+     * copies share an entry. A run of whitespace between two letters, digits or decimal points separates two tokens,
+     * and is kept as a single space so that, for example, "1 2" and "sin x" stay invalid instead of becoming "12"
+     * and "sinx". Every other character is a token of its own, so the whitespace around it can be dropped.
+     *
+     * @param expression The mathematical expression.
+     * @return The normalized expression.
+     */
+    static String normalize(String expression) {
+        StringBuilder builder = new StringBuilder(expression.length());
+        boolean whitespace = false;
+        for (int i = 0; i < expression.length(); i++) {
+            char ch = expression.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                whitespace = true;
+                continue;
+            }
+            if (whitespace && builder.length() > 0 && isWordCharacter(builder.charAt(builder.length() - 1)) && isWordCharacter(ch)) {
+                builder.append(' ');
+            }
+            whitespace = false;
+            builder.append(ch);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns whether a character can be part of a number or a name, so that whitespace next to it may separate tokens.
+     *
+     * @param ch The character.
+     * @return Whether the character is a letter, a digit or a decimal point.
+     */
+    private static boolean isWordCharacter(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '.';
+    }
+
+    /**
+     * Returns the number of entries in the cache.
+     *
+     * @return The number of entries in the cache.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Removes every entry from the cache. The counters are kept.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache, including those that waited for a compilation in progress.
+     *
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that parsed and compiled the expression.
+     *
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of entries evicted to make room for new ones.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * This class represents the key of a cache entry: a normalized expression and the functions it is compiled against.
+     * Functions are compared by identity, since two implementations registered under the same name may differ.
+     */
+    private static final class Key {
+
+        /**
+         * The normalized expression.
+         */
+        private final String expression;
+
+        /**
+         * The names of the functions, sorted.
+         */
+        private final String[] functionNames;
+
+        /**
+         * The implementation of each function, in the order of the names.
+         */
+        private final Object[] implementations;
+
+        /**
+         * The hash of the key, computed once.
+         */
+        private final int hash;
+
+        /**
+         * Constructs a new key.
+         *
+         * @param expression The normalized expression.
+         * @param functionNames The names of the functions, sorted.
+         * @param implementations The implementation of each function, in the order of the names.
+         */
+        Key(String expression, String[] functionNames, Object[] implementations) {
+            this.expression = expression;
+            this.functionNames = functionNames;
+            this.implementations = implementations;
+            int hash = 31 * expression.hashCode() + Arrays.hashCode(functionNames);
+            for (Object implementation : implementations) {
+                hash = 31 * hash + System.identityHashCode(implementation);
+            }
+            this.hash = hash;
+        }
+
+        /**
+         * Returns whether another key has the same expression, names and implementations.
+         *
+         * @param other The other object.
+         * @return Whether the keys are equal.
+         */
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            if (hash != key.hash || !expression.equals(key.expression) || !Arrays.equals(functionNames, key.functionNames)) {
+                return false;
+            }
+            for (int i = 0; i < implementations.length; i++) {
+                if (implementations[i] != key.implementations[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the hash of the key.
+         *
+         * @return The hash.
+         */
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.example;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * This class is responsible for compiling an expression tree into a CompiledExpression.
+ * It walks the tree once in postfix order, parsing number literals and resolving operators,
+ * variables and functions, so that none of this work is repeated when the expression is evaluated.
+ * The tree may be a DAG, as produced by the CommonSubexpressionEliminator: a subtree shared by several
+ * parents is computed once, stored in a temporary and reloaded for its other uses.
+ */
+public class ExpressionCompiler {
+
+    /**
+     * The functions that can be called from the expression.
+     */
+    private FunctionRegistry functions;
+
+    /**
+     * The opcodes emitted so far.
+     */
+    private byte[] opcodes;
+
+    /**
+     * The operands of the opcodes emitted so far.
+     */
+    private int[] operands;
+
+    /**
+     * The number of instructions emitted so far.
+     */
+    private int size;
+
+    /**
+     * The pool of constants, indexed by the operands of PUSH_CONSTANT instructions.
+     */
+    private List<Double> constants;
+
+    /**
+     * The slots of the variables read by LOAD_VARIABLE instructions.
+     */
+    private VariableLayout layout;
+
+    /**
+     * Whether variables missing from the layout are added to it, or rejected.
+     */
+    private boolean extendLayout;
+
+    /**
+     * The functions, indexed by the operands of the call instructions.
+     */
+    private List<ExpressionFunction> functionTable;
+
+    /**
+     * The number of arguments passed at the call sites of each function table entry.
+     */
+    private List<Integer> argumentCounts;
+
+    /**
+     * The index of each function and argument count in the function table.
+     */
+    private Map<String, Integer> functionIndexes;
+
+    /**
+     * The nodes with more than one parent, mapped to their temporary once they have been emitted.
+     * Nodes that have not been emitted yet are mapped to -1.
+     */
+    private Map<Node, Integer> sharedNodes;
+
+    /**
+     * The number of temporaries allocated so far.
+     */
+    private int tempCount;
+
+    /**
+     * The depth of the operand stack after the instructions emitted so far.
+     */
+    private int stackDepth;
+
+    /**
+     * The maximum depth of the operand stack reached so far.
+     */
+    private int maxStackDepth;
+
+    /**
+     * Constructs a new compiler with the given layout and functions.
+     *
+     * @param layout The slots of the variables.
+     * @param extendLayout Whether variables missing from the layout are added to it.
+     * @param functions The functions that can be called from the expression.
+     */
+    private ExpressionCompiler(VariableLayout layout, boolean extendLayout, FunctionRegistry functions) {
+        this.layout = layout;
+        this.extendLayout = extendLayout;
+        this.functions = functions;
+        this.opcodes = new byte[16];
+        this.operands = new int[16];
+        this.constants = new ArrayList<>();
+        this.functionTable = new ArrayList<>();
+        this.argumentCounts = new ArrayList<>();
+        this.functionIndexes = new HashMap<>();
+        this.sharedNodes = new IdentityHashMap<>();
+    }
+
+    /**
+     * This method compiles an expression tree and returns the compiled expression.
+     * Variables are assigned slots in the order they first appear in the tree.
+     *
+     * @param root The root node of the expression tree.
+     * @param functions A map of functions in the expression to their respective implementations.
+     * @return The compiled expression.
+     * @throws Exception If there is an unknown node type, an unknown operator, or an invalid number.
+     */
+    public static CompiledExpression compile(Node root, Map<String, Function<Double, Double>> functions) throws Exception {
+        return compile(root, FunctionRegistry.of(functions));
+    }
+
+    /**
+     * This method compiles an expression tree with functions from a registry and returns the compiled expression.
+     * Variables are assigned slots in the order they first appear in the tree.
+     *
+     * @param root The root node of the expression tree.
+     * @param functions The functions that can be called from the expression.
+     * @return The compiled expression.
+     * @throws Exception If there is an unknown node type, an unknown operator, or an invalid number.
+     */
+    public static CompiledExpression compile(Node root, FunctionRegistry functions) throws Exception {
+        return compile(new ExpressionCompiler(new VariableLayout(), true, functions), root);
+    }
+
+    /**
+     * This method compiles an expression tree against a fixed variable layout and returns the compiled expression.
+     * This lets several expressions, or an expression and an input file, share the same slot assignment.
+     *
+     * @param root The root node of the expression tree.
+     * @param layout The slots of the variables.
+     * @param functions A map of functions in the expression to their respective implementations.
+     * @return The compiled expression.
+     * @throws Exception If a variable is not part of the layout, or if there is an unknown node type, an unknown operator, or an invalid number.
+     */
+    public static CompiledExpression compile(Node root, VariableLayout layout, Map<String, Function<Double, Double>> functions) throws Exception {
+        return compile(root, layout, FunctionRegistry.of(functions));
+    }
+
+    /**
+     * This method compiles an expression tree with functions from a registry against a fixed variable layout
+     * and returns the compiled expression.
+     *
+     * @param root The root node of the expression tree.
+     * @param layout The slots of the variables.
+     * @param functions The functions that can be called from the expression.
+     * @return The compiled expression.
+     * @throws Exception If a variable is not part of the layout, or if there is an unknown node type, an unknown operator, or an invalid number.
+     */
+    public static CompiledExpression compile(Node root, VariableLayout layout, FunctionRegistry functions) throws Exception {
+        return compile(new ExpressionCompiler(layout, false, functions), root);
+    }
+
+    /**
+     * Runs the given compiler over an expression tree and returns the compiled expression.
+     *
+     * @param compiler The compiler to be used.
+     * @param root The root node of the expression tree.
+     * @return The compiled expression.
+     * @throws Exception If there is an error during compilation.
+     */
+    private static CompiledExpression compile(ExpressionCompiler compiler, Node root) throws Exception {
+        compiler.findSharedNodes(root, new IdentityHashMap<>());
+        compiler.emitNode(root);
+        return compiler.toCompiledExpression();
+    }
+
+    /**
+     * This method compiles several expression trees into one program that writes the value of each tree to the
+     * result with the same index, using STORE_RESULT instructions. Nodes shared between the trees, as produced by
+     * the CommonSubexpressionEliminator, are computed once for all of them.
+     *
+     * @param roots The root nodes of the expression trees.
+     * @param layout The slots of the variables.
+     * @param extendLayout Whether variables missing from the layout are added to it, or rejected.
+     * @param functions The functions that can be called from the expressions.
+     * @return The compiled program, to be run with CompiledExpression.execute.
+     * @throws Exception If a variable is not part of a fixed layout, or if there is an unknown node type or operator.
+     */
+    static CompiledExpression compileAll(List<Node> roots, VariableLayout layout, boolean extendLayout, FunctionRegistry functions) throws Exception {
+        ExpressionCompiler compiler = new ExpressionCompiler(layout, extendLayout, functions);
+        Map<Node, Boolean> visited = new IdentityHashMap<>();
+        for (Node root : roots) {
+            compiler.findSharedNodes(root, visited);
+        }
+        for (int i = 0; i < roots.size(); i++) {
+            compiler.emitNode(roots.get(i));
+            compiler.emit(CompiledExpression.STORE_RESULT, i, -1);
+        }
+        return compiler.toCompiledExpression();
+    }
+
+    /**
+     * Returns the compiled expression holding the program emitted so far.
+     *
+     * @return The compiled expression.
+     */
+    private CompiledExpression toCompiledExpression() {
+        double[] constantPool = new double[constants.size()];
+        for (int i = 0; i < constantPool.length; i++) {
+            constantPool[i] = constants.get(i);
+        }
+        return new CompiledExpression(
+                Arrays.copyOf(opcodes, size),
+                Arrays.copyOf(operands, size),
+                constantPool,
+                layout,
+                functionTable.toArray(new ExpressionFunction[0]),
+                argumentCounts.stream().mapToInt(Integer::intValue).toArray(),
+                maxStackDepth,
+                tempCount);
+    }
+
+    /**
+     * Records every inner node reachable through more than one parent. Leaves are not recorded,
+     * since reloading them is as cheap as storing them in a temporary. The tree is walked with an explicit stack,
+     * so that trees of any depth can be compiled.
+     *
+     * @param root The root node of the subtree to be scanned.
+     * @param visited The nodes scanned so far.
+     */
+    private void findSharedNodes(Node root, Map<Node, Boolean> visited) {
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            if (visited.put(node, Boolean.TRUE) != null) {
+                if (!node.getChildren().isEmpty()) {
+                    sharedNodes.put(node, -1);
+                }
+                continue;
+            }
+            for (Node child : node.getChildren()) {
+                pending.push(child);
+            }
+        }
+    }
+
+    /**
+     * Emits the instructions computing the value of the given node in postfix order. Shared nodes are computed
+     * the first time they are reached and stored in a temporary, then reloaded. The tree is walked with explicit
+     * stacks, so that trees of any depth can be compiled.
+     *
+     * @param root The node to be compiled.
+     * @throws Exception If there is an unknown node type, an unknown operator, or an invalid number.
+     */
+    private void emitNode(Node root) throws Exception {
+        Node[] path = new Node[64];
+        int[] nextChild = new int[64];
+        int depth = -1;
+        Node node = root;
+        while (true) {
+            if (node != null) {
+                Integer temp = sharedNodes.get(node);
+                if (temp != null && temp >= 0) {
+                    emit(CompiledExpression.LOAD_TEMP, temp, 1);
+                } else if (isOperation(node)) {
+                    if (++depth == path.length) {
+                        path = Arrays.copyOf(path, depth * 2);
+                        nextChild = Arrays.copyOf(nextChild, depth * 2);
+                    }
+                    path[depth] = node;
+                    nextChild[depth] = 0;
+                } else {
+                    emitLeaf(node);
+                }
+                node = null;
+            }
+            if (depth < 0) {
+                return;
+            }
+            List<Node> children = path[depth].getChildren();
+            if (nextChild[depth] < children.size()) {
+                node = children.get(nextChild[depth]++);
+            } else {
+                Node operation = path[depth--];
+                emitOperation(operation);
+                if (sharedNodes.containsKey(operation)) {
+                    sharedNodes.put(operation, tempCount);
+                    emit(CompiledExpression.STORE_TEMP, tempCount++, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given node is an operator or a function call, whose operands are computed first.
+     *
+     * @param node The node.
+     * @return Whether the node has operands.
+     */
+    private boolean isOperation(Node node) {
+        return node.getType() == NodeType.OPERATOR
+                || node.getType() == NodeType.VARIABLE_OR_FUNCTION && functions.get(node.getValue()) != null;
+    }
+
+    /**
+     * Emits the instruction pushing the value of a number or a variable.
+     *
+     * @param node The node to be compiled.
+     * @throws Exception If a variable is not part of a fixed layout, or if the node type is unknown.
+     */
+    private void emitLeaf(Node node) throws Exception {
+        if (node.getType() == NodeType.NUMBER) {
+            constants.add(node.getNumber());
+            emit(CompiledExpression.PUSH_CONSTANT, constants.size() - 1, 1);
+        } else if (node.getType() == NodeType.VARIABLE_OR_FUNCTION) {
+            String name = node.getValue();
+            int slot = extendLayout ? layout.addVariable(name) : layout.slotOf(name);
+            if (slot < 0) {
+                throw new Exception("Variable not in layout: " + name);
+            }
+            emit(CompiledExpression.LOAD_VARIABLE, slot, 1);
+        } else {
+            throw new Exception("Unknown node type: " + node.getType());
+        }
+    }
+
+    /**
+     * Emits the instruction applying an operator or calling a function to operands already on the stack.
+     *
+     * @param node The node to be compiled.
+     * @throws Exception If the operator is unknown.
+     */
+    private void emitOperation(Node node) throws Exception {
+        if (node.getType() == NodeType.OPERATOR) {
+            emit(operatorOpcode(node.getValue()), 0, -1);
+            return;
+        }
+        String name = node.getValue();
+        int count = node.getChildren().size();
+        String key = name + "/" + count;
+        Integer index = functionIndexes.get(key);
+        if (index == null) {
+            functionTable.add(functions.get(name));
+            argumentCounts.add(count);
+            index = functionTable.size() - 1;
+            functionIndexes.put(key, index);
+        }
+        if (count == 1) {
+            emit(CompiledExpression.CALL_FUNCTION, index, 0);
+        } else if (count == 2) {
+            emit(CompiledExpression.CALL_BINARY, index, -1);
+        } else {
+            emit(CompiledExpression.CALL_NARY, index, 1 - count);
+        }
+    }
+
+    /**
+     * Returns the opcode implementing the given operator.
+     *
+     * @param operator The operator.
+     * @return The opcode implementing the operator.
+     * @throws Exception If the operator is unknown.
+     */
+    private static byte operatorOpcode(String operator) throws Exception {
+        switch (operator) {
+            case "+":
+                return CompiledExpression.ADD;
+            case "-":
+                return CompiledExpression.SUBTRACT;
+            case "*":
+                return CompiledExpression.MULTIPLY;
+            case "/":
+                return CompiledExpression.DIVIDE;
+            case "^":
+                return CompiledExpression.POWER;
+            default:
+                throw new Exception("Unknown operator: " + operator);
+        }
+    }
+
+    /**
+     * Appends an instruction to the program and tracks the depth of the operand stack.
+     *
+     * @param opcode The opcode of the instruction.
+     * @param operand The operand of the instruction.
+     * @param stackEffect The change in the depth of the operand stack caused by the instruction.
+     */
+    private void emit(byte opcode, int operand, int stackEffect) {
+        if (size == opcodes.length) {
+            opcodes = Arrays.copyOf(opcodes, size * 2);
+            operands = Arrays.copyOf(operands, size * 2);
+        }
+        opcodes[size] = opcode;
+        operands[size] = operand;
+        size++;
+        stackDepth += stackEffect;
+        maxStackDepth = Math.max(maxStackDepth, stackDepth);
+    }
+}
@@ -0,0 +1,425 @@
+package com.example;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * This class represents a function that can be called from an expression.
+ * Each function has a name, a number of arguments and a primitive implementation specialised for that number,
+ * so calls never box their arguments or results. A function is pure if it always returns the same result for
+ * the same arguments and has no side effects, which allows optimisers to evaluate calls with constant arguments
+ * ahead of time. A function may also declare its derivatives, which lets expressions calling it be differentiated.
+ */
+public final class ExpressionFunction {
+
+    /**
+     * The arity of functions that accept any positive number of arguments.
+     */
+    public static final int VARIADIC = -1;
+
+    /**
+     * The name of the function.
+     */
+    private final String name;
+
+    /**
+     * The number of arguments of the function, or VARIADIC.
+     */
+    private final int arity;
+
+    /**
+     * Whether the function always returns the same result for the same arguments and has no side effects.
+     */
+    private final boolean pure;
+
+    /**
+     * The implementation of a function with one argument, or null.
+     */
+    private final DoubleUnaryOperator unary;
+
+    /**
+     * The implementation of a function with two arguments, or null.
+     */
+    private final DoubleBinaryOperator binary;
+
+    /**
+     * The implementation of a function with any other number of arguments, or null.
+     */
+    private final DoubleNaryOperator nary;
+
+    /**
+     * The derivative of a function with one argument, or null.
+     */
+    private final DoubleUnaryOperator derivative;
+
+    /**
+     * The partial derivatives of a function with two arguments with respect to each argument, or null.
+     */
+    private final DoubleBinaryOperator firstPartial, secondPartial;
+
+    /**
+     * The partial derivatives of a function with any number of arguments, or null.
+     */
+    private final FunctionGradient gradient;
+
+    /**
+     * The cache of results of a memoized function, or null.
+     */
+    private final MemoCache memoCache;
+
+    /**
+     * Constructs a new function. Exactly one of the implementations must be given, matching the arity.
+     *
+     * @param name The name of the function.
+     * @param arity The number of arguments of the function, or VARIADIC.
+     * @param pure Whether the function is pure.
+     * @param unary The implementation of a function with one argument.
+     * @param binary The implementation of a function with two arguments.
+     * @param nary The implementation of a function with any other number of arguments.
+     */
+    private ExpressionFunction(String name, int arity, boolean pure, DoubleUnaryOperator unary,
+                               DoubleBinaryOperator binary, DoubleNaryOperator nary) {
+        this.name = name;
+        this.arity = arity;
+        this.pure = pure;
+        this.unary = unary;
+        this.binary = binary;
+        this.nary = nary;
+        this.derivative = null;
+        this.firstPartial = null;
+        this.secondPartial = null;
+        this.gradient = null;
+        this.memoCache = null;
+    }
+
+    /**
+     * Constructs a copy of a function with the given derivatives. Exactly one kind of derivative must be given.
+     *
+     * @param function The function to be copied.
+     * @param derivative The derivative of a function with one argument.
+     * @param firstPartial The partial derivative of a function with two arguments with respect to the first one.
+     * @param secondPartial The partial derivative of a function with two arguments with respect to the second one.
+     * @param gradient The partial derivatives of a function with any number of arguments.
+     */
+    private ExpressionFunction(ExpressionFunction function, DoubleUnaryOperator derivative, DoubleBinaryOperator firstPartial,
+                               DoubleBinaryOperator secondPartial, FunctionGradient gradient) {
+        this.name = function.name;
+        this.arity = function.arity;
+        this.pure = function.pure;
+        this.unary = function.unary;
+        this.binary = function.binary;
+        this.nary = function.nary;
+        this.derivative = derivative;
+        this.firstPartial = firstPartial;
+        this.secondPartial = secondPartial;
+        this.gradient = gradient;
+        this.memoCache = function.memoCache;
+    }
+
+    /**
+     * Constructs a copy of a function with one argument that remembers its results in the given cache.
+     * The derivatives of the function are kept, however they were declared, and a function declared with nary()
+     * is called through its implementation for any number of arguments.
+     *
+     * @param function The function to be copied.
+     * @param memoCache The cache of results.
+     */
+    private ExpressionFunction(ExpressionFunction function, MemoCache memoCache) {
+        DoubleUnaryOperator implementation = function.unary != null ? function.unary : function::apply;
+        this.name = function.name;
+        this.arity = function.arity;
+        this.pure = function.pure;
+        this.unary = argument -> memoCache.get(argument, implementation);
+        this.binary = null;
+        this.nary = null;
+        this.derivative = function.derivative;
+        this.firstPartial = null;
+        this.secondPartial = null;
+        this.gradient = function.gradient;
+        this.memoCache = memoCache;
+    }
+
+    /**
+     * Returns a new function with one argument.
+     *
+     * @param name The name of the function.
+     * @param implementation The implementation of the function.
+     * @param pure Whether the function is pure.
+     * @return The function.
+     */
+    public static ExpressionFunction unary(String name, DoubleUnaryOperator implementation, boolean pure) {
+        return new ExpressionFunction(name, 1, pure, implementation, null, null);
+    }
+
+    /**
+     * Returns a new function with two arguments.
+     *
+     * @param name The name of the function.
+     * @param implementation The implementation of the function.
+     * @param pure Whether the function is pure.
+     * @return The function.
+     */
+    public static ExpressionFunction binary(String name, DoubleBinaryOperator implementation, boolean pure) {
+        return new ExpressionFunction(name, 2, pure, null, implementation, null);
+    }
+
+    /**
+     * Returns a new function with the given positive number of arguments, or with any positive number of arguments.
+     * Functions without arguments are rejected, since the parser cannot express a call with no arguments.
+     *
+     * @param name The name of the function.
+     * @param arity The number of arguments of the function, or VARIADIC.
+     * @param implementation The implementation of the function.
+     * @param pure Whether the function is pure.
+     * @return The function.
+     */
+    public static ExpressionFunction nary(String name, int arity, DoubleNaryOperator implementation, boolean pure) {
+        if (arity != VARIADIC && arity < 1) {
+            throw new IllegalArgumentException("Invalid arity for function " + name + ": " + arity);
+        }
+        return new ExpressionFunction(name, arity, pure, null, null, implementation);
+    }
+
+    /**
+     * Returns a copy of this function with one argument that declares its derivative.
+     *
+     * @param derivative The derivative of the function.
+     * @return The differentiable function.
+     */
+    public ExpressionFunction withDerivative(DoubleUnaryOperator derivative) {
+        if (arity != 1) {
+            throw new IllegalArgumentException("Function " + name + " does not take one argument");
+        }
+        return new ExpressionFunction(this, derivative, null, null, null);
+    }
+
+    /**
+     * Returns a copy of this function with two arguments that declares its partial derivatives.
+     *
+     * @param firstPartial The partial derivative with respect to the first argument.
+     * @param secondPartial The partial derivative with respect to the second argument.
+     * @return The differentiable function.
+     */
+    public ExpressionFunction withDerivatives(DoubleBinaryOperator firstPartial, DoubleBinaryOperator secondPartial) {
+        if (arity != 2) {
+            throw new IllegalArgumentException("Function " + name + " does not take two arguments");
+        }
+        return new ExpressionFunction(this, null, firstPartial, secondPartial, null);
+    }
+
+    /**
+     * Returns a copy of this function that declares its partial derivatives for any number of arguments.
+     *
+     * @param gradient The partial derivatives of the function.
+     * @return The differentiable function.
+     */
+    public ExpressionFunction withGradient(FunctionGradient gradient) {
+        return new ExpressionFunction(this, null, null, null, gradient);
+    }
+
+    /**
+     * Returns a copy of this pure function with one argument that remembers its results in a bounded cache,
+     * for functions expensive enough that a lookup is cheaper than a call. The cache is shared by every
+     * expression and thread calling the returned function, and reports its hit rate through getMemoCache().
+     *
+     * @param capacity The largest number of results remembered.
+     * @return The memoized function.
+     */
+    public ExpressionFunction memoized(int capacity) {
+        if (arity != 1) {
+            throw new IllegalArgumentException("Function " + name + " does not take one argument");
+        }
+        if (!pure) {
+            throw new IllegalArgumentException("Function " + name + " is not pure");
+        }
+        return new ExpressionFunction(this, new MemoCache(capacity));
+    }
+
+    /**
+     * Returns the cache of results of a memoized function.
+     *
+     * @return The cache, or null if the function is not memoized.
+     */
+    public MemoCache getMemoCache() {
+        return memoCache;
+    }
+
+    /**
+     * Returns the name of the function.
+     *
+     * @return The name of the function.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of arguments of the function.
+     *
+     * @return The number of arguments, or VARIADIC.
+     */
+    public int getArity() {
+        return arity;
+    }
+
+    /**
+     * Returns whether the function always returns the same result for the same arguments and has no side effects.
+     *
+     * @return Whether the function is pure.
+     */
+    public boolean isPure() {
+        return pure;
+    }
+
+    /**
+     * Returns whether the function declares its derivatives.
+     *
+     * @return Whether calls to the function can be differentiated.
+     */
+    public boolean isDifferentiable() {
+        return derivative != null || firstPartial != null || gradient != null;
+    }
+
+    /**
+     * Returns whether the function declares its derivatives through a FunctionGradient. Such a function computes
+     * its derivatives from arrays even when called with one or two arguments, so differentiating compilers should
+     * give it buffers of its own rather than call derivative() and partial(), which allocate them on every call.
+     *
+     * @return Whether the derivatives are declared by a gradient.
+     */
+    boolean hasGradient() {
+        return gradient != null;
+    }
+
+    /**
+     * Returns whether the function can be called with the given number of arguments.
+     *
+     * @param count The number of arguments.
+     * @return Whether the number of arguments is accepted.
+     */
+    public boolean accepts(int count) {
+        return arity == VARIADIC ? count > 0 : count == arity;
+    }
+
+    /**
+     * Returns the implementation of the function for its number of arguments:
+     * a DoubleUnaryOperator, a DoubleBinaryOperator or a DoubleNaryOperator.
+     * Compilers call it directly so that each call site can be inlined on its own.
+     *
+     * @return The implementation of the function.
+     */
+    Object getImplementation() {
+        return unary != null ? unary : binary != null ? binary : nary;
+    }
+
+    /**
+     * Calls the function with one argument.
+     *
+     * @param argument The argument.
+     * @return The result of the function.
+     */
+    public double apply(double argument) {
+        if (unary != null) {
+            return unary.applyAsDouble(argument);
+        }
+        return apply(new double[] {argument});
+    }
+
+    /**
+     * Calls the function with two arguments.
+     *
+     * @param first The first argument.
+     * @param second The second argument.
+     * @return The result of the function.
+     */
+    public double apply(double first, double second) {
+        if (binary != null) {
+            return binary.applyAsDouble(first, second);
+        }
+        return apply(new double[] {first, second});
+    }
+
+    /**
+     * Calls the function with any number of arguments.
+     *
+     * @param arguments The arguments.
+     * @return The result of the function.
+     */
+    public double apply(double[] arguments) {
+        if (nary != null) {
+            return nary.applyAsDouble(arguments);
+        } else if (unary != null && arguments.length == 1) {
+            return unary.applyAsDouble(arguments[0]);
+        } else if (binary != null && arguments.length == 2) {
+            return binary.applyAsDouble(arguments[0], arguments[1]);
+        }
+        throw new IllegalArgumentException("Function " + name + " expects " + arity + " arguments, got " + arguments.length);
+    }
+
+    /**
+     * Computes the derivative of a function with one argument. If the function declares its derivatives
+     * with a gradient, this allocates the arrays the gradient needs.
+     *
+     * @param argument The argument.
+     * @return The derivative at the argument.
+     */
+    public double derivative(double argument) {
+        if (derivative != null) {
+            return derivative.applyAsDouble(argument);
+        }
+        double[] partials = new double[1];
+        gradient(new double[] {argument}, partials);
+        return partials[0];
+    }
+
+    /**
+     * Computes a partial derivative of a function with two arguments. If the function declares its derivatives
+     * with a gradient, this allocates the arrays the gradient needs.
+     *
+     * @param index The argument the derivative is taken with respect to, 0 or 1.
+     * @param first The first argument.
+     * @param second The second argument.
+     * @return The partial derivative at the arguments.
+     */
+    public double partial(int index, double first, double second) {
+        if (firstPartial != null) {
+            return index == 0 ? firstPartial.applyAsDouble(first, second) : secondPartial.applyAsDouble(first, second);
+        }
+        double[] partials = new double[2];
+        gradient(new double[] {first, second}, partials);
+        return partials[index];
+    }
+
+    /**
+     * Computes the partial derivatives of the function with respect to each argument.
+     *
+     * @param arguments The arguments.
+     * @param partials The array the partial derivatives are written to, one per argument.
+     */
+    public void gradient(double[] arguments, double[] partials) {
+        if (gradient != null) {
+            gradient.gradient(arguments, partials);
+        } else if (derivative != null && arguments.length == 1) {
+            partials[0] = derivative.applyAsDouble(arguments[0]);
+        } else if (firstPartial != null && arguments.length == 2) {
+            partials[0] = firstPartial.applyAsDouble(arguments[0], arguments[1]);
+            partials[1] = secondPartial.applyAsDouble(arguments[0], arguments[1]);
+        } else {
+            throw new IllegalArgumentException("Function " + name + " has no derivative for " + arguments.length + " arguments");
+        }
+    }
+
+    /**
+     * Returns a string representation of the function.
+     *
+     * @return A string representation of the function.
+     */
+    @Override
+    public String toString() {
+        return "ExpressionFunction{" +
+                "name='" + name + '\'' +
+                ", arity=" + arity +
+                ", pure=" + pure +
+                '}';
+    }
+}
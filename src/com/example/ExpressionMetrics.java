@@ -0,0 +1,296 @@
+package com.example;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is responsible for the optional instrumentation of the library: how many expressions are tokenized,
+ * parsed and evaluated, how long each phase takes, and how many tokens and nodes each expression has.
+ * Instrumentation is off by default. While it is off, the instrumented methods of Tokenizer, ExpressionTreeBuilder
+ * and ExpressionTreeEvaluator only read one flag and do not read the clock.
+ * While it is on, every phase adds to striped counters and lock-free histograms, so threads do not contend,
+ * and every phase taking at least the slow threshold is also reported as a Flight Recorder event
+ * (com.example.SlowParse or com.example.SlowEvaluation), which costs nothing unless a recording enables it.
+ */
+public class ExpressionMetrics {
+
+    /**
+     * Whether instrumentation is on.
+     */
+    private static volatile boolean enabled;
+
+    /**
+     * The duration in nanoseconds from which a phase is reported as a Flight Recorder event.
+     */
+    private static volatile long slowThresholdNanos = Duration.ofMillis(10).toNanos();
+
+    /**
+     * The number of successful runs of each phase, indexed by ordinal.
+     */
+    private static final LongAdder[] COUNTS = new LongAdder[MetricsPhase.values().length];
+
+    /**
+     * The number of failed runs of each phase, indexed by ordinal.
+     */
+    private static final LongAdder[] FAILURES = new LongAdder[MetricsPhase.values().length];
+
+    /**
+     * The latency in nanoseconds of the successful runs of each phase, indexed by ordinal.
+     */
+    private static final Histogram[] LATENCIES = new Histogram[MetricsPhase.values().length];
+
+    /**
+     * The number of tokens of each expression parsed.
+     */
+    private static final Histogram TOKEN_COUNTS = new Histogram();
+
+    /**
+     * The number of nodes of each expression parsed.
+     */
+    private static final Histogram NODE_COUNTS = new Histogram();
+
+    static {
+        for (int i = 0; i < COUNTS.length; i++) {
+            COUNTS[i] = new LongAdder();
+            FAILURES[i] = new LongAdder();
+            LATENCIES[i] = new Histogram();
+        }
+    }
+
+    /**
+     * This class only has static members.
+     */
+    private ExpressionMetrics() {
+    }
+
+    /**
+     * Returns whether instrumentation is on.
+     *
+     * @return Whether instrumentation is on.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns instrumentation on or off. Recorded values are kept when it is turned off.
+     *
+     * @param on Whether instrumentation should be on.
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Returns the duration from which a phase is reported as a Flight Recorder event.
+     *
+     * @return The slow threshold.
+     */
+    public static Duration getSlowThreshold() {
+        return Duration.ofNanos(slowThresholdNanos);
+    }
+
+    /**
+     * Sets the duration from which a phase is reported as a Flight Recorder event. The default is 10 milliseconds.
+     *
+     * @param threshold The slow threshold. Duration.ZERO reports every phase.
+     */
+    public static void setSlowThreshold(Duration threshold) {
+        slowThresholdNanos = threshold.toNanos();
+    }
+
+    /**
+     * Records a successful tokenization.
+     *
+     * @param expression The expression that was tokenized.
+     * @param start The value of System.nanoTime() when tokenizing started.
+     * @param tokens The number of tokens, not counting the end of the expression.
+     */
+    static void recordTokenize(String expression, long start, int tokens) {
+        long elapsed = record(MetricsPhase.TOKENIZE, start);
+        if (elapsed >= slowThresholdNanos) {
+            emitSlowParse(MetricsPhase.TOKENIZE, expression, elapsed, tokens, 0);
+        }
+    }
+
+    /**
+     * Records a successful parse, with the size of the expression.
+     *
+     * @param expression The expression that was parsed.
+     * @param start The value of System.nanoTime() when parsing started.
+     * @param tokens The number of tokens, not counting the end of the expression.
+     * @param nodes The number of nodes of the expression tree.
+     */
+    static void recordParse(String expression, long start, int tokens, int nodes) {
+        long elapsed = record(MetricsPhase.PARSE, start);
+        TOKEN_COUNTS.record(tokens);
+        NODE_COUNTS.record(nodes);
+        if (elapsed >= slowThresholdNanos) {
+            emitSlowParse(MetricsPhase.PARSE, expression, elapsed, tokens, nodes);
+        }
+    }
+
+    /**
+     * Records a successful evaluation.
+     *
+     * @param root The root node of the expression tree that was evaluated.
+     * @param start The value of System.nanoTime() when evaluating started.
+     * @param result The value of the expression.
+     */
+    static void recordEvaluation(Node root, long start, double result) {
+        long elapsed = record(MetricsPhase.EVALUATE, start);
+        if (elapsed >= slowThresholdNanos) {
+            SlowEvaluationEvent event = new SlowEvaluationEvent();
+            if (event.shouldCommit()) {
+                event.nodes = countNodes(root);
+                event.elapsed = elapsed;
+                event.result = result;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Records a phase that ended with an exception.
+     *
+     * @param phase The phase that failed.
+     */
+    static void recordFailure(MetricsPhase phase) {
+        FAILURES[phase.ordinal()].increment();
+    }
+
+    /**
+     * Counts a successful run of a phase and records its latency.
+     *
+     * @param phase The phase.
+     * @param start The value of System.nanoTime() when the phase started.
+     * @return The time the phase took, in nanoseconds.
+     */
+    private static long record(MetricsPhase phase, long start) {
+        long elapsed = System.nanoTime() - start;
+        COUNTS[phase.ordinal()].increment();
+        LATENCIES[phase.ordinal()].record(elapsed);
+        return elapsed;
+    }
+
+    /**
+     * Emits a Flight Recorder event for a slow tokenization or parse, if a recording enables it.
+     *
+     * @param phase The phase that was slow.
+     * @param expression The expression.
+     * @param elapsed The time the phase took, in nanoseconds.
+     * @param tokens The number of tokens.
+     * @param nodes The number of nodes.
+     */
+    private static void emitSlowParse(MetricsPhase phase, String expression, long elapsed, int tokens, int nodes) {
+        SlowParseEvent event = new SlowParseEvent();
+        if (event.shouldCommit()) {
+            event.phase = phase.name();
+            event.expression = expression;
+            event.elapsed = elapsed;
+            event.tokens = tokens;
+            event.nodes = nodes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Counts the nodes of an expression tree without recursion, so that deep trees are handled.
+     *
+     * @param root The root node of the expression tree.
+     * @return The number of nodes, counting a shared node once per parent.
+     */
+    private static int countNodes(Node root) {
+        int count = 0;
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            count++;
+            for (Node child : node.getChildren()) {
+                pending.push(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of successful runs of a phase.
+     *
+     * @param phase The phase.
+     * @return The number of successful runs.
+     */
+    public static long getCount(MetricsPhase phase) {
+        return COUNTS[phase.ordinal()].sum();
+    }
+
+    /**
+     * Returns the number of runs of a phase that ended with an exception.
+     *
+     * @param phase The phase.
+     * @return The number of failed runs.
+     */
+    public static long getFailures(MetricsPhase phase) {
+        return FAILURES[phase.ordinal()].sum();
+    }
+
+    /**
+     * Returns the latency in nanoseconds of the successful runs of a phase.
+     *
+     * @param phase The phase.
+     * @return The latency histogram of the phase.
+     */
+    public static Histogram getLatency(MetricsPhase phase) {
+        return LATENCIES[phase.ordinal()];
+    }
+
+    /**
+     * Returns the number of tokens of each expression parsed.
+     *
+     * @return The token count histogram.
+     */
+    public static Histogram getTokenCounts() {
+        return TOKEN_COUNTS;
+    }
+
+    /**
+     * Returns the number of nodes of each expression parsed.
+     *
+     * @return The node count histogram.
+     */
+    public static Histogram getNodeCounts() {
+        return NODE_COUNTS;
+    }
+
+    /**
+     * Removes every recorded value. The enabled flag and the slow threshold are unchanged.
+     */
+    public static void reset() {
+        for (int i = 0; i < COUNTS.length; i++) {
+            COUNTS[i].reset();
+            FAILURES[i].reset();
+            LATENCIES[i].reset();
+        }
+        TOKEN_COUNTS.reset();
+        NODE_COUNTS.reset();
+    }
+
+    /**
+     * Returns a report of every recorded value, one line per phase followed by the token and node counts.
+     * Latencies are in nanoseconds.
+     *
+     * @return The report.
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        for (MetricsPhase phase : MetricsPhase.values()) {
+            report.append(phase).append(": failures=").append(getFailures(phase))
+                    .append(' ').append(getLatency(phase)).append('\n');
+        }
+        report.append("TOKENS: ").append(TOKEN_COUNTS).append('\n');
+        report.append("NODES: ").append(NODE_COUNTS).append('\n');
+        return report.toString();
+    }
+}
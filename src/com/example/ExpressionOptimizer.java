@@ -0,0 +1,303 @@
+package com.example;
+
+import java.util.List;
+
+/**
+ * This class is responsible for simplifying an expression tree before it is evaluated or compiled.
+ * It folds constant subtrees, including calls to pure functions with constant arguments, and applies algebraic
+ * identities and strength reductions that give the same result as the original tree under IEEE 754 arithmetic,
+ * down to the sign of zero.
+ * The given tree is not modified; unchanged subtrees are shared between the input and the result.
+ */
+public class ExpressionOptimizer {
+
+    /**
+     * The functions that can be called from the expression. Only calls to pure functions are folded.
+     */
+    private FunctionRegistry functions;
+
+    /**
+     * The number of nodes removed by the last call to optimize.
+     */
+    private int removedNodes;
+
+    /**
+     * Constructs a new optimizer with the given functions.
+     *
+     * @param functions The functions that can be called from the expression.
+     */
+    public ExpressionOptimizer(FunctionRegistry functions) {
+        this.functions = functions;
+    }
+
+    /**
+     * Simplifies an expression tree and returns the root of the simplified tree.
+     *
+     * @param root The root node of the expression tree.
+     * @return The root node of the simplified tree.
+     * @throws Exception If there is an unknown node type or an unknown operator.
+     */
+    public Node optimize(Node root) throws Exception {
+        Node result = simplify(root);
+        removedNodes = countNodes(root) - countNodes(result);
+        return result;
+    }
+
+    /**
+     * Returns the number of nodes removed by the last call to optimize.
+     *
+     * @return The number of nodes removed.
+     */
+    public int getRemovedNodes() {
+        return removedNodes;
+    }
+
+    /**
+     * Simplifies a subtree bottom-up and returns its replacement.
+     *
+     * @param node The root node of the subtree.
+     * @return The root node of the simplified subtree.
+     * @throws Exception If there is an unknown node type or an unknown operator.
+     */
+    private Node simplify(Node node) throws Exception {
+        if (node.getType() == NodeType.NUMBER) {
+            return node;
+        } else if (node.getType() == NodeType.VARIABLE_OR_FUNCTION) {
+            ExpressionFunction function = functions.get(node.getValue());
+            if (function == null || node.getChildren().isEmpty()) {
+                return node;
+            }
+            List<Node> children = node.getChildren();
+            Node[] arguments = new Node[children.size()];
+            boolean constant = true;
+            boolean unchanged = true;
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = simplify(children.get(i));
+                constant &= arguments[i].getType() == NodeType.NUMBER;
+                unchanged &= arguments[i] == children.get(i);
+            }
+            if (constant && function.isPure()) {
+                double[] values = new double[arguments.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = valueOf(arguments[i]);
+                }
+                return number(values.length == 1 ? function.apply(values[0]) : function.apply(values));
+            }
+            if (unchanged) {
+                return node;
+            }
+            Node call = new Node(node.getValue(), NodeType.VARIABLE_OR_FUNCTION);
+            for (Node argument : arguments) {
+                call.addChild(argument);
+            }
+            return call;
+        } else if (node.getType() == NodeType.OPERATOR) {
+            Node left = simplify(node.getChildren().get(0));
+            Node right = simplify(node.getChildren().get(1));
+            String operator = node.getValue();
+            if (left.getType() == NodeType.NUMBER && right.getType() == NodeType.NUMBER) {
+                return number(apply(operator, valueOf(left), valueOf(right)));
+            }
+            Node simplified = applyIdentities(operator, left, right);
+            if (simplified != null) {
+                return simplified;
+            }
+            if (left == node.getChildren().get(0) && right == node.getChildren().get(1)) {
+                return node;
+            }
+            return operator(operator, left, right);
+        } else {
+            throw new Exception("Unknown node type: " + node.getType());
+        }
+    }
+
+    /**
+     * Applies algebraic identities and strength reductions to an operator whose operands are already simplified.
+     * <ul>
+     *     <li>x * 1, 1 * x, x / 1, x - 0, x ^ 1 become x, where the 0 is +0.0.</li>
+     *     <li>x + 0 and 0 + x become x only when the 0 is -0.0. Adding +0.0 is kept, since -0.0 + 0.0 is +0.0,
+     *     and so is subtracting -0.0, since -0.0 - -0.0 is +0.0.</li>
+     *     <li>x ^ 0 becomes 1, which Math.pow returns for every x, including NaN.</li>
+     *     <li>x ^ 2 becomes x * x and x * 2 becomes x + x when x is a leaf, so the duplicated operand costs nothing to evaluate.</li>
+     *     <li>x / c becomes x * (1 / c) when c is a power of two, since the reciprocal is then exact.</li>
+     * </ul>
+     *
+     * @param operator The operator.
+     * @param left The simplified left operand.
+     * @param right The simplified right operand.
+     * @return The simplified node, or null if no identity applies.
+     */
+    private static Node applyIdentities(String operator, Node left, Node right) {
+        switch (operator) {
+            case "+":
+                if (isZero(right, true)) {
+                    return left;
+                }
+                if (isZero(left, true)) {
+                    return right;
+                }
+                return null;
+            case "-":
+                return isZero(right, false) ? left : null;
+            case "*":
+                if (isConstant(right, 1.0)) {
+                    return left;
+                }
+                if (isConstant(left, 1.0)) {
+                    return right;
+                }
+                if (isConstant(right, 2.0) && isLeaf(left)) {
+                    return operator("+", left, left);
+                }
+                if (isConstant(left, 2.0) && isLeaf(right)) {
+                    return operator("+", right, right);
+                }
+                return null;
+            case "/":
+                if (isConstant(right, 1.0)) {
+                    return left;
+                }
+                if (right.getType() == NodeType.NUMBER && isPowerOfTwo(valueOf(right))) {
+                    return operator("*", left, number(1.0 / valueOf(right)));
+                }
+                return null;
+            case "^":
+                if (isConstant(right, 1.0)) {
+                    return left;
+                }
+                if (isConstant(right, 0.0)) {
+                    return number(1.0);
+                }
+                if (isConstant(right, 2.0) && isLeaf(left)) {
+                    return operator("*", left, left);
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Applies an operator to two constants, exactly as the ExpressionTreeEvaluator does.
+     *
+     * @param operator The operator.
+     * @param left The left operand.
+     * @param right The right operand.
+     * @return The result of the operator.
+     * @throws Exception If the operator is unknown.
+     */
+    private static double apply(String operator, double left, double right) throws Exception {
+        switch (operator) {
+            case "+":
+                return left + right;
+            case "-":
+                return left - right;
+            case "*":
+                return left * right;
+            case "/":
+                return left / right;
+            case "^":
+                return Math.pow(left, right);
+            default:
+                throw new Exception("Unknown operator: " + operator);
+        }
+    }
+
+    /**
+     * Returns whether the given node is a number equal to the given constant. Both signed zeros match 0.0.
+     *
+     * @param node The node.
+     * @param constant The constant.
+     * @return Whether the node is the constant.
+     */
+    private static boolean isConstant(Node node, double constant) {
+        return node.getType() == NodeType.NUMBER && valueOf(node) == constant;
+    }
+
+    /**
+     * Returns whether the given node is a zero of the given sign.
+     *
+     * @param node The node.
+     * @param negative Whether the zero must be -0.0 rather than +0.0.
+     * @return Whether the node is the signed zero.
+     */
+    private static boolean isZero(Node node, boolean negative) {
+        return node.getType() == NodeType.NUMBER
+                && Double.doubleToRawLongBits(valueOf(node)) == Double.doubleToRawLongBits(negative ? -0.0 : 0.0);
+    }
+
+    /**
+     * Returns whether the given node has no children, so that evaluating it twice is as cheap as evaluating it once.
+     *
+     * @param node The node.
+     * @return Whether the node is a leaf.
+     */
+    private static boolean isLeaf(Node node) {
+        return node.getChildren().isEmpty();
+    }
+
+    /**
+     * Returns whether the given value is a finite power of two whose reciprocal is also a normal double.
+     *
+     * @param value The value.
+     * @return Whether dividing by the value is the same as multiplying by its reciprocal.
+     */
+    private static boolean isPowerOfTwo(double value) {
+        if (value == 0.0 || Double.isNaN(value) || Double.isInfinite(value)) {
+            return false;
+        }
+        double magnitude = Math.abs(value);
+        return magnitude == Math.scalb(1.0, Math.getExponent(magnitude))
+                && Math.getExponent(magnitude) > Double.MIN_EXPONENT
+                && Math.getExponent(magnitude) < Double.MAX_EXPONENT;
+    }
+
+    /**
+     * Returns the value of a number node.
+     *
+     * @param node The number node.
+     * @return The value of the node.
+     */
+    private static double valueOf(Node node) {
+        return node.getNumber();
+    }
+
+    /**
+     * Returns a new number node holding the given value.
+     *
+     * @param value The value.
+     * @return The number node.
+     */
+    private static Node number(double value) {
+        return new Node(value);
+    }
+
+    /**
+     * Returns a new operator node with the given operands.
+     *
+     * @param operator The operator.
+     * @param left The left operand.
+     * @param right The right operand.
+     * @return The operator node.
+     */
+    private static Node operator(String operator, Node left, Node right) {
+        Node node = new Node(operator, NodeType.OPERATOR);
+        node.addChild(left);
+        node.addChild(right);
+        return node;
+    }
+
+    /**
+     * Returns the number of nodes in a tree.
+     *
+     * @param node The root node of the tree.
+     * @return The number of nodes.
+     */
+    static int countNodes(Node node) {
+        int count = 1;
+        for (Node child : node.getChildren()) {
+            count += countNodes(child);
+        }
+        return count;
+    }
+}
@@ -1,12 +1,13 @@
 package com.example;
 
-import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
 /**
  * This class is responsible for building an expression tree from a given mathematical expression.
- * It uses a Tokenizer to break down the expression into tokens and a Parser to construct the tree.
+ * It uses a Lexer to break down the expression into tokens and a Parser to construct the tree.
+ * It can also validate an expression, listing all of its errors without building a tree or throwing exceptions.
+ * Building is measured by ExpressionMetrics as the PARSE phase when instrumentation is on.
  */
 public class ExpressionTreeBuilder {
 
@@ -20,9 +21,61 @@ public class ExpressionTreeBuilder {
      * @throws Exception If there is an error in the expression, during tokenization, or during parsing.
      */
     public static Node buildExpressionTree(String expression, Map<String, Double> variables, Map<String, Function<Double, Double>> functions) throws Exception {
-        Tokenizer tokenizer = new Tokenizer(expression);
-        List<Token> tokens = tokenizer.tokenize();
-        Parser parser = new Parser(tokens, variables, functions);
-        return parser.parse();
+        return buildExpressionTree(expression, variables, FunctionRegistry.of(functions));
+    }
+
+    /**
+     * This method builds and returns an expression tree from a given mathematical expression.
+     *
+     * @param expression The mathematical expression to be converted into an expression tree.
+     * @param variables A map of variables in the expression to their respective values.
+     * @param functions The functions that can be called from the expression.
+     * @return The root node of the expression tree.
+     * @throws Exception If there is an error in the expression, during tokenization, or during parsing.
+     */
+    public static Node buildExpressionTree(String expression, Map<String, Double> variables, FunctionRegistry functions) throws Exception {
+        if (!ExpressionMetrics.isEnabled()) {
+            return new Parser(new Lexer(expression), variables, functions).parse();
+        }
+        long start = System.nanoTime();
+        Lexer lexer = new Lexer(expression);
+        NodeBuilder builder = new NodeBuilder();
+        Node root;
+        try {
+            new Parser(lexer, variables, functions).parse(builder);
+            root = builder.getRoot();
+        } catch (Exception e) {
+            ExpressionMetrics.recordFailure(MetricsPhase.PARSE);
+            throw e;
+        }
+        ExpressionMetrics.recordParse(expression, start, lexer.getTokenCount(), builder.getNodeCount());
+        return root;
+    }
+
+    /**
+     * This method checks a mathematical expression without building its tree and without throwing on errors.
+     * Every error is added to the given result, which is reset first so that it can be reused for many expressions.
+     *
+     * @param expression The mathematical expression to be checked.
+     * @param functions The functions that can be called from the expression.
+     * @param result The result the errors are recorded in.
+     * @return Whether the expression is valid.
+     */
+    public static boolean validate(String expression, FunctionRegistry functions, ValidationResult result) {
+        result.reset();
+        return new Parser(new Lexer(expression), null, functions).validate(result);
+    }
+
+    /**
+     * This method checks a mathematical expression without building its tree and without throwing on errors.
+     *
+     * @param expression The mathematical expression to be checked.
+     * @param functions The functions that can be called from the expression.
+     * @return A new result listing every error in the expression.
+     */
+    public static ValidationResult validate(String expression, FunctionRegistry functions) {
+        ValidationResult result = new ValidationResult();
+        validate(expression, functions, result);
+        return result;
     }
 }
@@ -1,18 +1,30 @@
 package com.example;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Scanner;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 
 /**
  * This class is responsible for evaluating an expression tree.
  * It traverses the tree and computes the result of the expression it represents.
+ * Trees of any depth can be evaluated: the traversal is recursive near the root and continues with explicit
+ * stacks below MAX_RECURSION_DEPTH.
+ * Evaluation is measured by ExpressionMetrics as the EVALUATE phase when instrumentation is on.
  */
 public class ExpressionTreeEvaluator {
 
+    /**
+     * The depth below which subtrees are evaluated recursively. Deeper subtrees are evaluated with explicit stacks.
+     */
+    private static final int MAX_RECURSION_DEPTH = 1000;
+
     /**
      * This method evaluates an expression tree and returns the result.
+     * The tree and the given maps are never modified, so they can be shared between threads.
      *
      * @param node The root node of the expression tree.
      * @param variables A map of variables in the expression to their respective values.
@@ -21,44 +33,227 @@ public class ExpressionTreeEvaluator {
      * @throws Exception If there is an unknown node type, an unknown operator, or if a variable is not defined.
      */
     public static double evaluateExpressionTree(Node node, Map<String, Double> variables, Map<String, Function<Double, Double>> functions) throws Exception {
+        return evaluateExpressionTree(node, variables, FunctionRegistry.of(functions));
+    }
+
+    /**
+     * This method evaluates an expression tree with functions from a registry and returns the result.
+     *
+     * @param node The root node of the expression tree.
+     * @param variables A map of variables in the expression to their respective values.
+     * @param functions The functions that can be called from the expression.
+     * @return The result of the expression represented by the tree.
+     * @throws Exception If there is an unknown node type, an unknown operator, or if a variable is not defined.
+     */
+    public static double evaluateExpressionTree(Node node, Map<String, Double> variables, FunctionRegistry functions) throws Exception {
+        return evaluateExpressionTree(node, variables, functions, VariableResolver.failFast());
+    }
+
+    /**
+     * This method evaluates an expression tree, asking a resolver for the variables that are not bound, and returns the result.
+     * All unbound variables are resolved in one call before evaluation starts; their values are used for this call only.
+     * With the fail-fast resolver, the tree is evaluated directly and the first unbound variable reached is reported.
+     *
+     * @param node The root node of the expression tree.
+     * @param variables A map of variables in the expression to their respective values.
+     * @param functions The functions that can be called from the expression.
+     * @param resolver The resolver providing the values of unbound variables.
+     * @return The result of the expression represented by the tree.
+     * @throws Exception If there is an unknown node type, an unknown operator, or if a variable cannot be resolved.
+     */
+    public static double evaluateExpressionTree(Node node, Map<String, Double> variables, FunctionRegistry functions,
+                                                VariableResolver resolver) throws Exception {
+        if (!ExpressionMetrics.isEnabled()) {
+            return resolveAndEvaluate(node, variables, functions, resolver);
+        }
+        long start = System.nanoTime();
+        double result;
+        try {
+            result = resolveAndEvaluate(node, variables, functions, resolver);
+        } catch (Exception e) {
+            ExpressionMetrics.recordFailure(MetricsPhase.EVALUATE);
+            throw e;
+        }
+        ExpressionMetrics.recordEvaluation(node, start, result);
+        return result;
+    }
+
+    /**
+     * Resolves the unbound variables of an expression tree and evaluates it. The search for free variables walks the
+     * whole tree and allocates, so it is skipped for the fail-fast resolver, which every unbound variable fails anyway.
+     *
+     * @param node The root node of the expression tree.
+     * @param variables A map of variables in the expression to their respective values.
+     * @param functions The functions that can be called from the expression.
+     * @param resolver The resolver providing the values of unbound variables.
+     * @return The result of the expression represented by the tree.
+     * @throws Exception If there is an unknown node type, an unknown operator, or if a variable cannot be resolved.
+     */
+    private static double resolveAndEvaluate(Node node, Map<String, Double> variables, FunctionRegistry functions,
+                                             VariableResolver resolver) throws Exception {
+        if (resolver == VariableResolver.FAIL_FAST) {
+            return evaluate(node, variables, functions, 0);
+        }
+        Set<String> unbound = new LinkedHashSet<>(FreeVariables.of(node, functions));
+        unbound.removeAll(variables.keySet());
+        if (!unbound.isEmpty()) {
+            Map<String, Double> resolved = resolver.resolve(unbound);
+            Map<String, Double> bound = new HashMap<>(variables);
+            for (String name : unbound) {
+                Double value = resolved.get(name);
+                if (value == null) {
+                    throw new Exception("Variable not defined: " + name);
+                }
+                bound.put(name, value);
+            }
+            variables = bound;
+        }
+        return evaluate(node, variables, functions, 0);
+    }
+
+    /**
+     * Evaluates a subtree of an expression tree and returns the result. Subtrees nested deeper than
+     * MAX_RECURSION_DEPTH are handed to evaluateIteratively, so that no tree can overflow the call stack.
+     *
+     * @param node The root node of the subtree.
+     * @param variables A map of variables in the expression to their respective values.
+     * @param functions The functions that can be called from the expression.
+     * @param depth The depth of the subtree in the tree.
+     * @return The result of the subtree.
+     * @throws Exception If there is an unknown node type, an unknown operator, or if a variable is not defined.
+     */
+    private static double evaluate(Node node, Map<String, Double> variables, FunctionRegistry functions, int depth) throws Exception {
+        if (depth > MAX_RECURSION_DEPTH) {
+            return evaluateIteratively(node, variables, functions);
+        }
         if (node.getType() == NodeType.NUMBER) {
-            return Double.parseDouble(node.getValue());
+            return node.getNumber();
         } else if (node.getType() == NodeType.VARIABLE_OR_FUNCTION) {
             String name = node.getValue();
-            if (functions.containsKey(name)) {
-                Node argument = node.getChildren().get(0);
-                double value = evaluateExpressionTree(argument, variables, functions);
-                return functions.get(name).apply(value);
-            } else {
-                if (!variables.containsKey(name)) {
-                    Scanner scanner = new Scanner(System.in);
-                    System.out.println("Enter value for variable " + name + ":");
-                    double value = scanner.nextDouble();
-                    variables.put(name, value);
+            ExpressionFunction function = functions.get(name);
+            if (function != null) {
+                List<Node> arguments = node.getChildren();
+                if (arguments.size() == 1) {
+                    return function.apply(evaluate(arguments.get(0), variables, functions, depth + 1));
+                } else if (arguments.size() == 2) {
+                    double first = evaluate(arguments.get(0), variables, functions, depth + 1);
+                    return function.apply(first, evaluate(arguments.get(1), variables, functions, depth + 1));
+                }
+                double[] values = new double[arguments.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = evaluate(arguments.get(i), variables, functions, depth + 1);
                 }
-                return variables.get(name);
+                return function.apply(values);
+            } else {
+                return valueOf(name, variables);
             }
         } else if (node.getType() == NodeType.OPERATOR) {
-            String operator = node.getValue();
-            Node left = node.getChildren().get(0);
-            Node right = node.getChildren().get(1);
-            double leftValue = evaluateExpressionTree(left, variables, functions);
-            double rightValue = evaluateExpressionTree(right, variables, functions);
-            if (operator.equals("+")) {
-                return leftValue + rightValue;
-            } else if (operator.equals("-")) {
-                return leftValue - rightValue;
-            } else if (operator.equals("*")) {
-                return leftValue * rightValue;
-            } else if (operator.equals("/")) {
-                return leftValue / rightValue;
-            } else if (operator.equals("^")) {
-                return Math.pow(leftValue, rightValue);
+            double leftValue = evaluate(node.getChildren().get(0), variables, functions, depth + 1);
+            double rightValue = evaluate(node.getChildren().get(1), variables, functions, depth + 1);
+            return applyOperator(node.getValue(), leftValue, rightValue);
+        } else {
+            throw new Exception("Unknown node type: " + node.getType());
+        }
+    }
+
+    /**
+     * Evaluates a subtree of an expression tree in postfix order with explicit stacks instead of recursion.
+     * Nodes are visited, and functions called, in the same order as by the recursive evaluation.
+     *
+     * @param root The root node of the subtree.
+     * @param variables A map of variables in the expression to their respective values.
+     * @param functions The functions that can be called from the expression.
+     * @return The result of the subtree.
+     * @throws Exception If there is an unknown node type, an unknown operator, or if a variable is not defined.
+     */
+    private static double evaluateIteratively(Node root, Map<String, Double> variables, FunctionRegistry functions) throws Exception {
+        Node[] path = new Node[64];
+        int[] nextChild = new int[64];
+        double[] values = new double[64];
+        int count = 0;
+        int depth = 0;
+        path[0] = root;
+        while (depth >= 0) {
+            Node node = path[depth];
+            List<Node> children = node.getChildren();
+            if (nextChild[depth] < children.size()) {
+                Node child = children.get(nextChild[depth]++);
+                if (++depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                    nextChild = Arrays.copyOf(nextChild, depth * 2);
+                }
+                path[depth] = child;
+                nextChild[depth] = 0;
+                continue;
+            }
+            int operands = children.size();
+            double result;
+            if (node.getType() == NodeType.NUMBER) {
+                result = node.getNumber();
+            } else if (node.getType() == NodeType.VARIABLE_OR_FUNCTION) {
+                ExpressionFunction function = functions.get(node.getValue());
+                if (function == null) {
+                    result = valueOf(node.getValue(), variables);
+                } else if (operands == 1) {
+                    result = function.apply(values[count - 1]);
+                } else if (operands == 2) {
+                    result = function.apply(values[count - 2], values[count - 1]);
+                } else {
+                    result = function.apply(Arrays.copyOfRange(values, count - operands, count));
+                }
+            } else if (node.getType() == NodeType.OPERATOR) {
+                result = applyOperator(node.getValue(), values[count - 2], values[count - 1]);
             } else {
-                throw new Exception("Unknown operator: " + operator);
+                throw new Exception("Unknown node type: " + node.getType());
             }
+            count -= operands;
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = result;
+            depth--;
+        }
+        return values[0];
+    }
+
+    /**
+     * Returns the value of a variable.
+     *
+     * @param name The name of the variable.
+     * @param variables A map of variables in the expression to their respective values.
+     * @return The value of the variable.
+     * @throws Exception If the variable is not defined.
+     */
+    private static double valueOf(String name, Map<String, Double> variables) throws Exception {
+        Double value = variables.get(name);
+        if (value == null) {
+            throw new Exception("Variable not defined: " + name);
+        }
+        return value;
+    }
+
+    /**
+     * Applies an operator to the values of its operands.
+     *
+     * @param operator The operator.
+     * @param leftValue The value of the left operand.
+     * @param rightValue The value of the right operand.
+     * @return The result of the operator.
+     * @throws Exception If the operator is unknown.
+     */
+    private static double applyOperator(String operator, double leftValue, double rightValue) throws Exception {
+        if (operator.equals("+")) {
+            return leftValue + rightValue;
+        } else if (operator.equals("-")) {
+            return leftValue - rightValue;
+        } else if (operator.equals("*")) {
+            return leftValue * rightValue;
+        } else if (operator.equals("/")) {
+            return leftValue / rightValue;
+        } else if (operator.equals("^")) {
+            return Math.pow(leftValue, rightValue);
         } else {
-            throw new Exception("Unknown node type: " + node.getType());
+            throw new Exception("Unknown operator: " + operator);
         }
     }
 }
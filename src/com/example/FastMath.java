@@ -0,0 +1,167 @@
+package com.example;
+
+/**
+ * This class provides fast approximations of sin, cos, tan and the natural logarithm, accurate to a relative error of
+ * RELATIVE_ERROR, for workloads where these calls dominate evaluation and the last digits do not matter.
+ * The trigonometric functions reduce their argument to [-pi/4, pi/4] around the nearest multiple of pi/2, with pi/2
+ * split in three parts so that the reduction stays accurate even next to a multiple of pi/2, and evaluate short
+ * Taylor polynomials there. The logarithm splits its argument into a power of two and a mantissa near 1, and sums the series of
+ * 2 atanh((m - 1) / (m + 1)). Arguments outside the range where this holds, such as very large angles, subnormal
+ * numbers, infinities and NaN, are passed on to Math, so every result is either within the declared accuracy or exact.
+ * FunctionRegistry.fastMath() registers these functions in place of the standard ones.
+ */
+public final class FastMath {
+
+    /**
+     * The largest relative error of the approximations against StrictMath, over their whole domain.
+     */
+    public static final double RELATIVE_ERROR = 1e-7;
+
+    /**
+     * The first 33 bits of pi/2, so that multiplying it by a quadrant number below 2^20 is exact.
+     */
+    private static final double PI_OVER_2_HIGH = 1.57079632673412561417e+00;
+
+    /**
+     * The next 33 bits of pi/2 after PI_OVER_2_HIGH.
+     */
+    private static final double PI_OVER_2_MIDDLE = 6.07710050630396597660e-11;
+
+    /**
+     * The rest of pi/2 after PI_OVER_2_MIDDLE.
+     */
+    private static final double PI_OVER_2_LOW = 2.02226624879595063154e-21;
+
+    /**
+     * The reciprocal of pi/2.
+     */
+    private static final double TWO_OVER_PI = 6.36619772367581382433e-01;
+
+    /**
+     * The largest angle whose quadrant number stays below 2^20, so that range reduction is accurate.
+     */
+    private static final double MAX_REDUCED_ANGLE = (1 << 20) * Math.PI / 2;
+
+    /**
+     * The natural logarithm of 2.
+     */
+    private static final double LN_2 = 6.93147180559945286227e-01;
+
+    /**
+     * The square root of 2, the upper bound of the mantissa range used by log.
+     */
+    private static final double SQRT_2 = 1.41421356237309514547e+00;
+
+    /**
+     * The mask of the exponent bits of a double.
+     */
+    private static final long EXPONENT_MASK = 0x7ff0000000000000L;
+
+    /**
+     * The bits of the exponent of 1.0.
+     */
+    private static final long EXPONENT_OF_ONE = 0x3ff0000000000000L;
+
+    /**
+     * This class only has static members.
+     */
+    private FastMath() {
+    }
+
+    /**
+     * Returns an approximation of the sine of an angle.
+     *
+     * @param x The angle in radians.
+     * @return The sine of the angle.
+     */
+    public static double sin(double x) {
+        if (!(Math.abs(x) <= MAX_REDUCED_ANGLE)) {
+            return Math.sin(x);
+        }
+        double k = Math.rint(x * TWO_OVER_PI);
+        double r = x - k * PI_OVER_2_HIGH - k * PI_OVER_2_MIDDLE - k * PI_OVER_2_LOW;
+        int quadrant = (int) k;
+        double value = (quadrant & 1) == 0 ? sinPolynomial(r) : cosPolynomial(r);
+        return (quadrant & 2) == 0 ? value : -value;
+    }
+
+    /**
+     * Returns an approximation of the cosine of an angle.
+     *
+     * @param x The angle in radians.
+     * @return The cosine of the angle.
+     */
+    public static double cos(double x) {
+        if (!(Math.abs(x) <= MAX_REDUCED_ANGLE)) {
+            return Math.cos(x);
+        }
+        double k = Math.rint(x * TWO_OVER_PI);
+        double r = x - k * PI_OVER_2_HIGH - k * PI_OVER_2_MIDDLE - k * PI_OVER_2_LOW;
+        int quadrant = (int) k + 1;
+        double value = (quadrant & 1) == 0 ? sinPolynomial(r) : cosPolynomial(r);
+        return (quadrant & 2) == 0 ? value : -value;
+    }
+
+    /**
+     * Returns an approximation of the tangent of an angle.
+     *
+     * @param x The angle in radians.
+     * @return The tangent of the angle.
+     */
+    public static double tan(double x) {
+        if (!(Math.abs(x) <= MAX_REDUCED_ANGLE)) {
+            return Math.tan(x);
+        }
+        double k = Math.rint(x * TWO_OVER_PI);
+        double r = x - k * PI_OVER_2_HIGH - k * PI_OVER_2_MIDDLE - k * PI_OVER_2_LOW;
+        double s = sinPolynomial(r);
+        double c = cosPolynomial(r);
+        return ((int) k & 1) == 0 ? s / c : -c / s;
+    }
+
+    /**
+     * Returns an approximation of the natural logarithm of a number.
+     *
+     * @param x The number.
+     * @return The natural logarithm of the number.
+     */
+    public static double log(double x) {
+        long bits = Double.doubleToRawLongBits(x);
+        if (x <= 0 || (bits & EXPONENT_MASK) == 0 || (bits & EXPONENT_MASK) == EXPONENT_MASK) {
+            return Math.log(x);
+        }
+        int exponent = (int) ((bits & EXPONENT_MASK) >>> 52) - 1023;
+        double m = Double.longBitsToDouble((bits & ~EXPONENT_MASK) | EXPONENT_OF_ONE);
+        if (m > SQRT_2) {
+            m *= 0.5;
+            exponent++;
+        }
+        double f = m - 1;
+        double s = f / (2 + f);
+        double z = s * s;
+        double series = 1 + z * (1.0 / 3 + z * (1.0 / 5 + z * (1.0 / 7 + z * (1.0 / 9 + z * (1.0 / 11)))));
+        return exponent * LN_2 + 2 * s * series;
+    }
+
+    /**
+     * Evaluates the Taylor polynomial of the sine up to the ninth power, accurate to 3e-9 on [-pi/4, pi/4].
+     *
+     * @param r The reduced angle.
+     * @return The sine of the reduced angle.
+     */
+    private static double sinPolynomial(double r) {
+        double z = r * r;
+        return r + r * z * (-1.0 / 6 + z * (1.0 / 120 + z * (-1.0 / 5040 + z * (1.0 / 362880))));
+    }
+
+    /**
+     * Evaluates the Taylor polynomial of the cosine up to the tenth power, accurate to 2e-10 on [-pi/4, pi/4].
+     *
+     * @param r The reduced angle.
+     * @return The cosine of the reduced angle.
+     */
+    private static double cosPolynomial(double r) {
+        double z = r * r;
+        return 1 + z * (-0.5 + z * (1.0 / 24 + z * (-1.0 / 720 + z * (1.0 / 40320 + z * (-1.0 / 3628800)))));
+    }
+}
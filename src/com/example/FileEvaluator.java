@@ -0,0 +1,380 @@
+package com.example;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * This class is responsible for evaluating one expression for every row of a CSV file.
+ * The input file is memory-mapped in large windows and its fields are parsed directly from the mapped bytes,
+ * so no String is created per line or per value. The first line holds the column names, and each variable of the
+ * expression is bound to the column with the same name. Rows are collected into columns of a fixed number of rows
+ * and evaluated with a BatchEvaluator, and the results are written one per line through a buffered writer.
+ */
+public class FileEvaluator {
+
+    /**
+     * The default number of bytes of the input file mapped at once.
+     */
+    private static final int DEFAULT_WINDOW_SIZE = 1 << 26;
+
+    /**
+     * The number of rows collected before they are evaluated and written.
+     */
+    private static final int ROWS_PER_BATCH = BatchEvaluator.CHUNK_SIZE * 4;
+
+    /**
+     * The size of the buffer of the output writer, in characters.
+     */
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The compiled expression, with its layout still open so that its variables can be bound to columns.
+     */
+    private CompiledExpression expression;
+
+    /**
+     * The number of bytes of the input file mapped at once. A single line must fit into one window.
+     */
+    private int windowSize;
+
+    /**
+     * The input file being read.
+     */
+    private FileChannel channel;
+
+    /**
+     * The currently mapped window of the input file.
+     */
+    private MappedByteBuffer window;
+
+    /**
+     * The offset in the input file of the first byte of the current window.
+     */
+    private long windowStart;
+
+    /**
+     * The position in the current window of the next byte to be read.
+     */
+    private int position;
+
+    /**
+     * The position in the current window just after the last content byte of the current line.
+     */
+    private int lineEnd;
+
+    /**
+     * The number of the current line in the input file, starting at 1 for the header.
+     */
+    private long line;
+
+    /**
+     * Constructs a new file evaluator for the given expression.
+     *
+     * @param expression The expression to be evaluated for every row.
+     * @param functions The functions available to the expression.
+     * @throws Exception If the expression cannot be parsed or compiled.
+     */
+    public FileEvaluator(String expression, FunctionRegistry functions) throws Exception {
+        this(expression, functions, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Constructs a new file evaluator for the given expression that maps the input file in windows of the given size.
+     *
+     * @param expression The expression to be evaluated for every row.
+     * @param functions The functions available to the expression.
+     * @param windowSize The number of bytes of the input file mapped at once.
+     * @throws Exception If the expression cannot be parsed or compiled.
+     */
+    FileEvaluator(String expression, FunctionRegistry functions, int windowSize) throws Exception {
+        Node root = ExpressionTreeBuilder.buildExpressionTree(expression, new HashMap<>(), functions);
+        this.expression = ExpressionCompiler.compile(root, functions);
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * This method evaluates the expression for every row of the input file and writes the results to the output file,
+     * one per line after a "result" header.
+     *
+     * @param input The CSV file whose first line names the columns.
+     * @param output The file the results are written to. It is created or replaced.
+     * @return The number of rows evaluated.
+     * @throws Exception If a file cannot be read or written, a variable has no column, or a field is not a number.
+     */
+    public long evaluate(Path input, Path output) throws Exception {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(output), StandardCharsets.US_ASCII), OUTPUT_BUFFER_SIZE)) {
+            channel = in;
+            windowStart = 0;
+            position = 0;
+            line = 0;
+            mapWindow(0);
+            if (!nextLine()) {
+                throw new Exception("Missing header in " + input);
+            }
+            int[] fieldSlots = bindColumns(readHeader());
+            int requiredFields = 0;
+            for (int field = 0; field < fieldSlots.length; field++) {
+                if (fieldSlots[field] >= 0) {
+                    requiredFields = field + 1;
+                }
+            }
+
+            double[][] columns = new double[expression.getLayout().size()][ROWS_PER_BATCH];
+            double[] results = new double[ROWS_PER_BATCH];
+            writer.write("result\n");
+            long rows = 0;
+            int filled = 0;
+            while (nextLine()) {
+                if (position == lineEnd) {
+                    continue;
+                }
+                readRow(fieldSlots, requiredFields, columns, filled);
+                filled++;
+                rows++;
+                if (filled == ROWS_PER_BATCH) {
+                    writeResults(writer, columns, results, filled);
+                    filled = 0;
+                }
+            }
+            writeResults(writer, columns, results, filled);
+            return rows;
+        } finally {
+            channel = null;
+            window = null;
+        }
+    }
+
+    /**
+     * Maps the window of the input file that starts at the given offset.
+     *
+     * @param start The offset in the input file of the first byte to be mapped.
+     * @throws IOException If the file cannot be mapped.
+     */
+    private void mapWindow(long start) throws IOException {
+        long length = Math.min(windowSize, channel.size() - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        windowStart = start;
+        position = 0;
+    }
+
+    /**
+     * Advances to the next line of the input file, mapping a new window if the line does not fit into the current one.
+     * A trailing carriage return is not part of the line.
+     *
+     * @return Whether there was another line.
+     * @throws Exception If the file cannot be mapped or a line is longer than a window.
+     */
+    private boolean nextLine() throws Exception {
+        if (line > 0) {
+            position = lineEnd;
+            if (position < window.limit() && window.get(position) == '\r') {
+                position++;
+            }
+            if (position < window.limit() && window.get(position) == '\n') {
+                position++;
+            }
+        }
+        while (true) {
+            int limit = window.limit();
+            int end = position;
+            while (end < limit && window.get(end) != '\n') {
+                end++;
+            }
+            boolean lastWindow = windowStart + limit == channel.size();
+            if (end < limit || lastWindow) {
+                if (position == limit) {
+                    return false;
+                }
+                lineEnd = end > position && window.get(end - 1) == '\r' ? end - 1 : end;
+                line++;
+                return true;
+            }
+            if (position == 0) {
+                throw new Exception("Line " + (line + 1) + " is longer than " + windowSize + " bytes");
+            }
+            mapWindow(windowStart + position);
+        }
+    }
+
+    /**
+     * Reads the column names from the current line.
+     *
+     * @return The names of the columns, in order.
+     */
+    private String[] readHeader() {
+        byte[] bytes = new byte[lineEnd - position];
+        window.get(position, bytes);
+        String[] names = new String(bytes, StandardCharsets.UTF_8).split(",", -1);
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].trim();
+        }
+        return names;
+    }
+
+    /**
+     * Binds every variable of the expression to the column with the same name.
+     *
+     * @param header The names of the columns.
+     * @return The slot of the variable bound to each column, or -1 for columns that are not used.
+     * @throws Exception If a variable has no column.
+     */
+    private int[] bindColumns(String[] header) throws Exception {
+        VariableLayout layout = expression.getLayout();
+        int[] fieldSlots = new int[header.length];
+        boolean[] bound = new boolean[layout.size()];
+        for (int field = 0; field < header.length; field++) {
+            int slot = layout.slotOf(header[field]);
+            if (slot >= 0 && !bound[slot]) {
+                bound[slot] = true;
+                fieldSlots[field] = slot;
+            } else {
+                fieldSlots[field] = -1;
+            }
+        }
+        for (int slot = 0; slot < bound.length; slot++) {
+            if (!bound[slot]) {
+                throw new Exception("Column not found: " + layout.nameAt(slot));
+            }
+        }
+        return fieldSlots;
+    }
+
+    /**
+     * Reads the fields of the current line into the given row of the columns, skipping the fields that are not used.
+     *
+     * @param fieldSlots The slot of the variable bound to each column, or -1 for columns that are not used.
+     * @param requiredFields The number of leading fields that must be present.
+     * @param columns The values of the variables, indexed by slot and then by row.
+     * @param row The row the values are written to.
+     * @throws Exception If a field is missing or is not a number.
+     */
+    private void readRow(int[] fieldSlots, int requiredFields, double[][] columns, int row) throws Exception {
+        int field = 0;
+        int p = position;
+        while (field < requiredFields) {
+            int start = p;
+            while (p < lineEnd && window.get(p) != ',') {
+                p++;
+            }
+            int slot = fieldSlots[field];
+            if (slot >= 0) {
+                columns[slot][row] = parseNumber(start, p);
+            }
+            field++;
+            if (p == lineEnd) {
+                break;
+            }
+            p++;
+        }
+        if (field < requiredFields) {
+            throw new Exception("Line " + line + " has " + field + " fields, expected at least " + requiredFields);
+        }
+    }
+
+    /**
+     * Parses a field of the current window as a number, ignoring surrounding spaces.
+     * Numbers with at most 15 significant digits and a small decimal exponent are converted exactly with
+     * primitive arithmetic; other numbers fall back to Double.parseDouble.
+     *
+     * @param start The position of the first byte of the field.
+     * @param end The position just after the last byte of the field.
+     * @return The value of the field.
+     * @throws Exception If the field is not a number.
+     */
+    private double parseNumber(int start, int end) throws Exception {
+        while (start < end && window.get(start) == ' ') {
+            start++;
+        }
+        while (end > start && window.get(end - 1) == ' ') {
+            end--;
+        }
+        int p = start;
+        boolean negative = false;
+        if (p < end && (window.get(p) == '-' || window.get(p) == '+')) {
+            negative = window.get(p) == '-';
+            p++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        int digitCount = 0;
+        boolean fraction = false;
+        while (p < end) {
+            byte b = window.get(p);
+            if (b >= '0' && b <= '9') {
+                digitCount++;
+                if (mantissa != 0 || b != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (fraction) {
+                    scale--;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+            p++;
+        }
+        if (digitCount > 0 && p < end && (window.get(p) == 'e' || window.get(p) == 'E')) {
+            int q = p + 1;
+            boolean negativeExponent = false;
+            if (q < end && (window.get(q) == '-' || window.get(q) == '+')) {
+                negativeExponent = window.get(q) == '-';
+                q++;
+            }
+            int exponent = 0;
+            int exponentDigits = 0;
+            while (q < end && window.get(q) >= '0' && window.get(q) <= '9' && exponentDigits < 9) {
+                exponent = exponent * 10 + (window.get(q) - '0');
+                exponentDigits++;
+                q++;
+            }
+            if (exponentDigits > 0) {
+                scale += negativeExponent ? -exponent : exponent;
+                p = q;
+            }
+        }
+        if (digitCount > 0 && p == end && digits <= Lexer.MAX_EXACT_DIGITS
+                && scale > -Lexer.POWERS_OF_TEN.length && scale < Lexer.POWERS_OF_TEN.length) {
+            double value = scale < 0 ? mantissa / Lexer.POWERS_OF_TEN[-scale] : mantissa * Lexer.POWERS_OF_TEN[scale];
+            return negative ? -value : value;
+        }
+        byte[] bytes = new byte[end - start];
+        window.get(start, bytes);
+        String text = new String(bytes, StandardCharsets.US_ASCII);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid number on line " + line + ": " + text);
+        }
+    }
+
+    /**
+     * Evaluates the collected rows and writes their results, one per line.
+     *
+     * @param writer The writer the results are written to.
+     * @param columns The values of the variables, indexed by slot and then by row.
+     * @param results The buffer the results are evaluated into.
+     * @param rows The number of collected rows.
+     * @throws IOException If the results cannot be written.
+     */
+    private void writeResults(Writer writer, double[][] columns, double[] results, int rows) throws IOException {
+        BatchEvaluator.evaluate(expression, columns, 0, results, 0, rows);
+        for (int i = 0; i < rows; i++) {
+            writer.write(Double.toString(results[i]));
+            writer.write('\n');
+        }
+    }
+}
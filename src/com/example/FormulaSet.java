@@ -0,0 +1,230 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents a named group of expressions compiled into one fused program over the same variables.
+ * Each expression is simplified by the ExpressionOptimizer, and identical subexpressions are then merged across the
+ * whole group by the CommonSubexpressionEliminator, so the program computes every distinct subexpression once per
+ * evaluation and reads each variable from one binding vector. Calls to impure functions are never merged, so each
+ * expression gives the same result as evaluating it on its own. The cost of evaluating the group therefore grows with
+ * the number of distinct operations rather than with the number of expressions.
+ * Evaluation writes the value of each expression into one results array, in the order the expressions were given.
+ * Like a CompiledExpression, an instance holds an operand stack, so threads should each pass their own from newStack().
+ */
+public class FormulaSet {
+
+    /**
+     * The names of the expressions, in the order of their results.
+     */
+    private final String[] names;
+
+    /**
+     * The index of each expression's result, by name.
+     */
+    private final Map<String, Integer> indexes;
+
+    /**
+     * The fused program computing every expression.
+     */
+    private final CompiledExpression program;
+
+    /**
+     * The number of nodes merged across the group by common subexpression elimination.
+     */
+    private final int mergedNodes;
+
+    /**
+     * The operand stack used when no stack is given.
+     */
+    private final double[] stack;
+
+    /**
+     * Constructs a new formula set around a compiled program.
+     *
+     * @param names The names of the expressions, in the order of their results.
+     * @param program The fused program computing every expression.
+     * @param mergedNodes The number of nodes merged across the group.
+     */
+    private FormulaSet(String[] names, CompiledExpression program, int mergedNodes) {
+        this.names = names;
+        this.indexes = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            indexes.put(names[i], i);
+        }
+        this.program = program;
+        this.mergedNodes = mergedNodes;
+        this.stack = program.newStack();
+    }
+
+    /**
+     * This method compiles a group of named expressions into one fused program.
+     * Variables are assigned slots in the order they first appear in the expressions.
+     *
+     * @param formulas The expressions by name, in the order their results should have, such as a LinkedHashMap.
+     * @param functions The functions that can be called from the expressions.
+     * @return The compiled formula set.
+     * @throws Exception If an expression has an error, naming the expression it was found in.
+     */
+    public static FormulaSet compile(Map<String, String> formulas, FunctionRegistry functions) throws Exception {
+        return compile(formulas, new VariableLayout(), true, functions);
+    }
+
+    /**
+     * This method compiles a group of named expressions into one fused program against a fixed variable layout.
+     *
+     * @param formulas The expressions by name, in the order their results should have, such as a LinkedHashMap.
+     * @param layout The slots of the variables.
+     * @param functions The functions that can be called from the expressions.
+     * @return The compiled formula set.
+     * @throws Exception If an expression has an error or reads a variable that is not part of the layout.
+     */
+    public static FormulaSet compile(Map<String, String> formulas, VariableLayout layout, FunctionRegistry functions) throws Exception {
+        return compile(formulas, layout, false, functions);
+    }
+
+    /**
+     * Parses, simplifies and merges the expressions, and compiles them into one program.
+     *
+     * @param formulas The expressions by name.
+     * @param layout The slots of the variables.
+     * @param extendLayout Whether variables missing from the layout are added to it.
+     * @param functions The functions that can be called from the expressions.
+     * @return The compiled formula set.
+     * @throws Exception If there is an error in an expression.
+     */
+    private static FormulaSet compile(Map<String, String> formulas, VariableLayout layout, boolean extendLayout,
+                                      FunctionRegistry functions) throws Exception {
+        ExpressionOptimizer optimizer = new ExpressionOptimizer(functions);
+        String[] names = new String[formulas.size()];
+        List<Node> roots = new ArrayList<>(formulas.size());
+        for (Map.Entry<String, String> formula : formulas.entrySet()) {
+            names[roots.size()] = formula.getKey();
+            try {
+                Node root = ExpressionTreeBuilder.buildExpressionTree(formula.getValue(), new HashMap<>(), functions);
+                roots.add(optimizer.optimize(root));
+            } catch (Exception e) {
+                throw new Exception(formula.getKey() + ": " + e.getMessage());
+            }
+        }
+        CommonSubexpressionEliminator eliminator = new CommonSubexpressionEliminator(functions);
+        roots = eliminator.eliminate(roots);
+        CompiledExpression program = ExpressionCompiler.compileAll(roots, layout, extendLayout, functions);
+        return new FormulaSet(names, program, eliminator.getMergedNodes());
+    }
+
+    /**
+     * Evaluates every expression with variables given by slot.
+     *
+     * @param variables The values of the variables, indexed by the slots of the layout.
+     * @param results The array the value of each expression is written to, indexed like getNames().
+     */
+    public void evaluate(double[] variables, double[] results) {
+        program.execute(variables, stack, results);
+    }
+
+    /**
+     * Evaluates every expression with variables given by slot, using the given operand stack.
+     * This lets several threads evaluate the same formula set at once, each with its own stack.
+     *
+     * @param variables The values of the variables, indexed by the slots of the layout.
+     * @param results The array the value of each expression is written to, indexed like getNames().
+     * @param stack The operand stack, as returned by newStack().
+     */
+    public void evaluate(double[] variables, double[] results, double[] stack) {
+        program.execute(variables, stack, results);
+    }
+
+    /**
+     * Evaluates every expression with variables given by name and returns their values.
+     * The values are copied into their slots first, so hot loops should prefer evaluate(double[], double[]).
+     *
+     * @param variables A map of variables in the expressions to their respective values.
+     * @return The value of each expression, indexed like getNames().
+     * @throws Exception If a variable is not defined.
+     */
+    public double[] evaluate(Map<String, Double> variables) throws Exception {
+        double[] values = program.getLayout().newValues();
+        program.getLayout().bind(variables, values);
+        double[] results = newResults();
+        evaluate(values, results);
+        return results;
+    }
+
+    /**
+     * Returns the names of the expressions, in the order of their results.
+     *
+     * @return The names of the expressions.
+     */
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    /**
+     * Returns the index of the result of an expression.
+     *
+     * @param name The name of the expression.
+     * @return The index of its result, or -1 if there is no expression with that name.
+     */
+    public int indexOf(String name) {
+        Integer index = indexes.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the number of expressions in the set.
+     *
+     * @return The number of expressions.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Returns a new array large enough to receive the results of every expression.
+     *
+     * @return A new results array.
+     */
+    public double[] newResults() {
+        return new double[names.length];
+    }
+
+    /**
+     * Returns a new operand stack large enough for the fused program.
+     *
+     * @return A new operand stack.
+     */
+    public double[] newStack() {
+        return program.newStack();
+    }
+
+    /**
+     * Returns the slots of the variables read by the expressions.
+     *
+     * @return The variable layout of the formula set.
+     */
+    public VariableLayout getLayout() {
+        return program.getLayout();
+    }
+
+    /**
+     * Returns the number of instructions in the fused program.
+     *
+     * @return The number of instructions.
+     */
+    public int getProgramSize() {
+        return program.size();
+    }
+
+    /**
+     * Returns the number of nodes merged across the group by common subexpression elimination.
+     *
+     * @return The number of merged nodes.
+     */
+    public int getMergedNodes() {
+        return mergedNodes;
+    }
+}
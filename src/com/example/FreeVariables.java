@@ -0,0 +1,46 @@
+package com.example;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class is responsible for finding the variables an expression tree reads.
+ * A name counts as a variable when it is not a registered function, exactly as the evaluator decides.
+ * The tree is walked in preorder with an explicit stack, so that trees of any depth can be scanned, and shared
+ * nodes of a DAG are only visited once.
+ */
+public class FreeVariables {
+
+    /**
+     * This method returns the names of the variables read by an expression tree.
+     *
+     * @param root The root node of the expression tree.
+     * @param functions The functions that can be called from the expression.
+     * @return The names of the variables, in the order they first appear in the tree.
+     */
+    public static Set<String> of(Node root, FunctionRegistry functions) {
+        Set<String> names = new LinkedHashSet<>();
+        Map<Node, Boolean> visited = new IdentityHashMap<>();
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            if (visited.put(node, Boolean.TRUE) != null) {
+                continue;
+            }
+            if (node.getType() == NodeType.VARIABLE_OR_FUNCTION && !functions.contains(node.getValue())) {
+                names.add(node.getValue());
+            }
+            List<Node> children = node.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                pending.push(children.get(i));
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example;
+
+/**
+ * This interface represents the partial derivatives of a function of any number of double arguments.
+ * It is used to differentiate calls to functions created with ExpressionFunction.nary.
+ */
+@FunctionalInterface
+public interface FunctionGradient {
+
+    /**
+     * Computes the partial derivative of the function with respect to each argument at the given point.
+     *
+     * @param arguments The arguments, in the order they appear in the expression.
+     * @param partials The array the partial derivatives are written to, one per argument.
+     */
+    void gradient(double[] arguments, double[] partials);
+}
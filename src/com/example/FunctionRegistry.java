@@ -0,0 +1,170 @@
+package com.example;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+
+/**
+ * This class represents the set of functions that can be called from an expression, keyed by name.
+ */
+public class FunctionRegistry {
+
+    /**
+     * The registered functions, keyed by name, in registration order.
+     */
+    private Map<String, ExpressionFunction> functions;
+
+    /**
+     * Constructs a new, empty registry.
+     */
+    public FunctionRegistry() {
+        this.functions = new LinkedHashMap<>();
+    }
+
+    /**
+     * Returns a new registry with the standard functions: sin, cos, tan and ln with one argument,
+     * atan2 with two, and min and max with any number of arguments. All of them are pure and declare their derivatives.
+     *
+     * @return A new registry with the standard functions.
+     */
+    public static FunctionRegistry standard() {
+        FunctionRegistry registry = new FunctionRegistry();
+        registry.register(ExpressionFunction.unary("sin", Math::sin, true).withDerivative(Math::cos));
+        registry.register(ExpressionFunction.unary("cos", Math::cos, true).withDerivative(x -> -Math.sin(x)));
+        registry.register(ExpressionFunction.unary("tan", Math::tan, true).withDerivative(x -> 1 / (Math.cos(x) * Math.cos(x))));
+        registry.register(ExpressionFunction.unary("ln", Math::log, true).withDerivative(x -> 1 / x));
+        registry.register(ExpressionFunction.binary("atan2", Math::atan2, true).withDerivatives(
+                (y, x) -> x / (x * x + y * y), (y, x) -> -y / (x * x + y * y)));
+        registry.register(ExpressionFunction.nary("min", ExpressionFunction.VARIADIC, arguments -> {
+            double result = arguments[0];
+            for (int i = 1; i < arguments.length; i++) {
+                result = Math.min(result, arguments[i]);
+            }
+            return result;
+        }, true).withGradient((arguments, partials) -> selectExtremum(arguments, partials, -1)));
+        registry.register(ExpressionFunction.nary("max", ExpressionFunction.VARIADIC, arguments -> {
+            double result = arguments[0];
+            for (int i = 1; i < arguments.length; i++) {
+                result = Math.max(result, arguments[i]);
+            }
+            return result;
+        }, true).withGradient((arguments, partials) -> selectExtremum(arguments, partials, 1)));
+        return registry;
+    }
+
+    /**
+     * Returns a new registry with the standard functions, where sin, cos, tan and ln are replaced by the fast
+     * approximations of FastMath, accurate to a relative error of FastMath.RELATIVE_ERROR. Expressions built, compiled
+     * or evaluated with this registry use the approximations, while those using standard() keep the exact functions.
+     *
+     * @return A new registry with the fast standard functions.
+     */
+    public static FunctionRegistry fastMath() {
+        FunctionRegistry registry = standard();
+        registry.register(ExpressionFunction.unary("sin", FastMath::sin, true).withDerivative(FastMath::cos));
+        registry.register(ExpressionFunction.unary("cos", FastMath::cos, true).withDerivative(x -> -FastMath.sin(x)));
+        registry.register(ExpressionFunction.unary("tan", FastMath::tan, true).withDerivative(x -> 1 / (FastMath.cos(x) * FastMath.cos(x))));
+        registry.register(ExpressionFunction.unary("ln", FastMath::log, true).withDerivative(x -> 1 / x));
+        return registry;
+    }
+
+    /**
+     * Computes the partial derivatives of min or max: 1 for the first argument holding the result and 0 for the others.
+     *
+     * @param arguments The arguments of the call.
+     * @param partials The array the partial derivatives are written to.
+     * @param sign 1 for max, -1 for min.
+     */
+    private static void selectExtremum(double[] arguments, double[] partials, int sign) {
+        int selected = 0;
+        for (int i = 0; i < arguments.length; i++) {
+            partials[i] = 0;
+            if (sign * arguments[i] > sign * arguments[selected]) {
+                selected = i;
+            }
+        }
+        partials[selected] = 1;
+    }
+
+    /**
+     * Returns a new registry holding the functions of the given map, each taking one argument.
+     * Nothing is known about these functions, so they are registered as impure.
+     *
+     * @param functions A map of functions to their respective implementations.
+     * @return A new registry with the functions of the map.
+     */
+    public static FunctionRegistry of(Map<String, Function<Double, Double>> functions) {
+        FunctionRegistry registry = new FunctionRegistry();
+        for (Map.Entry<String, Function<Double, Double>> entry : functions.entrySet()) {
+            Function<Double, Double> function = entry.getValue();
+            registry.register(ExpressionFunction.unary(entry.getKey(), argument -> function.apply(argument), false));
+        }
+        return registry;
+    }
+
+    /**
+     * Registers a function, replacing any function with the same name.
+     *
+     * @param function The function to be registered.
+     * @return This registry.
+     */
+    public FunctionRegistry register(ExpressionFunction function) {
+        functions.put(function.getName(), function);
+        return this;
+    }
+
+    /**
+     * Registers a pure function with one argument.
+     *
+     * @param name The name of the function.
+     * @param implementation The implementation of the function.
+     * @return This registry.
+     */
+    public FunctionRegistry register(String name, DoubleUnaryOperator implementation) {
+        return register(ExpressionFunction.unary(name, implementation, true));
+    }
+
+    /**
+     * Registers a pure function with two arguments.
+     *
+     * @param name The name of the function.
+     * @param implementation The implementation of the function.
+     * @return This registry.
+     */
+    public FunctionRegistry register(String name, DoubleBinaryOperator implementation) {
+        return register(ExpressionFunction.binary(name, implementation, true));
+    }
+
+    /**
+     * Returns the function with the given name.
+     *
+     * @param name The name of the function.
+     * @return The function, or null if no function has that name.
+     */
+    public ExpressionFunction get(String name) {
+        return functions.get(name);
+    }
+
+    /**
+     * Returns whether a function with the given name is registered.
+     *
+     * @param name The name of the function.
+     * @return Whether the function is registered.
+     */
+    public boolean contains(String name) {
+        return functions.containsKey(name);
+    }
+
+    /**
+     * Returns the names of the registered functions.
+     *
+     * @return An unmodifiable view of the names of the functions.
+     */
+    public Set<String> names() {
+        return Collections.unmodifiableSet(functions.keySet());
+    }
+}
@@ -0,0 +1,267 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is responsible for compiling an expression tree into a CompiledGradient.
+ * It walks the tree once in postfix order and appends one tape entry per distinct node: nodes shared by several
+ * parents, as produced by the CommonSubexpressionEliminator, and repeated reads of the same variable are given a
+ * single entry, so their derivatives are accumulated in one place.
+ */
+public class GradientCompiler {
+
+    /**
+     * The functions that can be called from the expression.
+     */
+    private FunctionRegistry functions;
+
+    /**
+     * The slots of the variables.
+     */
+    private VariableLayout layout;
+
+    /**
+     * Whether variables missing from the layout are added to it, or rejected.
+     */
+    private boolean extendLayout;
+
+    /**
+     * The kind of each entry appended so far.
+     */
+    private List<Byte> kinds;
+
+    /**
+     * The first operand of each entry appended so far.
+     */
+    private List<Integer> first;
+
+    /**
+     * The second operand of each entry appended so far.
+     */
+    private List<Integer> second;
+
+    /**
+     * The function called by each entry appended so far, or null.
+     */
+    private List<ExpressionFunction> callFunctions;
+
+    /**
+     * The value of each entry appended so far if it is a constant, and 0 otherwise.
+     */
+    private List<Double> constants;
+
+    /**
+     * Whether each entry appended so far depends on a variable.
+     */
+    private List<Boolean> active;
+
+    /**
+     * The argument entries of each CALL_NARY entry.
+     */
+    private List<int[]> callArguments;
+
+    /**
+     * The entry of each node appended so far.
+     */
+    private Map<Node, Integer> entries;
+
+    /**
+     * The entry reading each variable slot.
+     */
+    private Map<Integer, Integer> variableEntries;
+
+    /**
+     * Constructs a new compiler with the given layout and functions.
+     *
+     * @param layout The slots of the variables.
+     * @param extendLayout Whether variables missing from the layout are added to it.
+     * @param functions The functions that can be called from the expression.
+     */
+    private GradientCompiler(VariableLayout layout, boolean extendLayout, FunctionRegistry functions) {
+        this.layout = layout;
+        this.extendLayout = extendLayout;
+        this.functions = functions;
+        this.kinds = new ArrayList<>();
+        this.first = new ArrayList<>();
+        this.second = new ArrayList<>();
+        this.callFunctions = new ArrayList<>();
+        this.constants = new ArrayList<>();
+        this.active = new ArrayList<>();
+        this.callArguments = new ArrayList<>();
+        this.entries = new IdentityHashMap<>();
+        this.variableEntries = new HashMap<>();
+    }
+
+    /**
+     * This method compiles the gradient of an expression tree with functions from a registry.
+     * Variables are assigned slots in the order they first appear in the tree.
+     *
+     * @param root The root node of the expression tree.
+     * @param functions The functions that can be called from the expression.
+     * @return The compiled gradient.
+     * @throws Exception If a function does not declare its derivatives, or if there is an unknown node type or operator.
+     */
+    public static CompiledGradient compile(Node root, FunctionRegistry functions) throws Exception {
+        return compile(new GradientCompiler(new VariableLayout(), true, functions), root);
+    }
+
+    /**
+     * This method compiles the gradient of an expression tree with functions from a registry against a fixed variable layout.
+     *
+     * @param root The root node of the expression tree.
+     * @param layout The slots of the variables.
+     * @param functions The functions that can be called from the expression.
+     * @return The compiled gradient.
+     * @throws Exception If a variable is not part of the layout, a function does not declare its derivatives,
+     *                   or if there is an unknown node type or operator.
+     */
+    public static CompiledGradient compile(Node root, VariableLayout layout, FunctionRegistry functions) throws Exception {
+        return compile(new GradientCompiler(layout, false, functions), root);
+    }
+
+    /**
+     * Runs the given compiler over an expression tree and returns the compiled gradient.
+     *
+     * @param compiler The compiler to be used.
+     * @param root The root node of the expression tree.
+     * @return The compiled gradient.
+     * @throws Exception If there is an error during compilation.
+     */
+    private static CompiledGradient compile(GradientCompiler compiler, Node root) throws Exception {
+        compiler.appendNode(root);
+        int size = compiler.kinds.size();
+        byte[] kinds = new byte[size];
+        int[] first = new int[size];
+        int[] second = new int[size];
+        double[] constants = new double[size];
+        boolean[] active = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            kinds[i] = compiler.kinds.get(i);
+            first[i] = compiler.first.get(i);
+            second[i] = compiler.second.get(i);
+            constants[i] = compiler.constants.get(i);
+            active[i] = compiler.active.get(i);
+        }
+        return new CompiledGradient(kinds, first, second, compiler.callFunctions.toArray(new ExpressionFunction[0]),
+                compiler.callArguments.toArray(new int[0][]), active, constants, compiler.layout);
+    }
+
+    /**
+     * Appends the entries computing the given node, unless it already has one.
+     *
+     * @param node The node to be compiled.
+     * @return The entry holding the value of the node.
+     * @throws Exception If a function does not declare its derivatives, or if there is an unknown node type or operator.
+     */
+    private int appendNode(Node node) throws Exception {
+        Integer entry = entries.get(node);
+        if (entry == null) {
+            entry = appendValue(node);
+            entries.put(node, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Appends the entries computing the given node.
+     *
+     * @param node The node to be compiled.
+     * @return The entry holding the value of the node.
+     * @throws Exception If a function does not declare its derivatives, or if there is an unknown node type or operator.
+     */
+    private int appendValue(Node node) throws Exception {
+        if (node.getType() == NodeType.NUMBER) {
+            return append(CompiledGradient.CONSTANT, 0, 0, null, node.getNumber(), false);
+        } else if (node.getType() == NodeType.VARIABLE_OR_FUNCTION) {
+            String name = node.getValue();
+            ExpressionFunction function = functions.get(name);
+            if (function != null) {
+                if (!function.isDifferentiable()) {
+                    throw new Exception("Function has no derivative: " + name);
+                }
+                List<Node> children = node.getChildren();
+                int[] arguments = new int[children.size()];
+                boolean dependent = false;
+                for (int i = 0; i < arguments.length; i++) {
+                    arguments[i] = appendNode(children.get(i));
+                    dependent |= active.get(arguments[i]);
+                }
+                if (function.hasGradient()) {
+                    callArguments.add(arguments);
+                    return append(CompiledGradient.CALL_NARY, callArguments.size() - 1, 0, function, 0, dependent);
+                } else if (arguments.length == 1) {
+                    return append(CompiledGradient.CALL_UNARY, arguments[0], 0, function, 0, dependent);
+                } else if (arguments.length == 2) {
+                    return append(CompiledGradient.CALL_BINARY, arguments[0], arguments[1], function, 0, dependent);
+                }
+                callArguments.add(arguments);
+                return append(CompiledGradient.CALL_NARY, callArguments.size() - 1, 0, function, 0, dependent);
+            }
+            int slot = extendLayout ? layout.addVariable(name) : layout.slotOf(name);
+            if (slot < 0) {
+                throw new Exception("Variable not in layout: " + name);
+            }
+            Integer entry = variableEntries.get(slot);
+            if (entry == null) {
+                entry = append(CompiledGradient.VARIABLE, slot, 0, null, 0, true);
+                variableEntries.put(slot, entry);
+            }
+            return entry;
+        } else if (node.getType() == NodeType.OPERATOR) {
+            int left = appendNode(node.getChildren().get(0));
+            int right = appendNode(node.getChildren().get(1));
+            return append(operatorKind(node.getValue()), left, right, null, 0, active.get(left) || active.get(right));
+        } else {
+            throw new Exception("Unknown node type: " + node.getType());
+        }
+    }
+
+    /**
+     * Returns the entry kind implementing the given operator.
+     *
+     * @param operator The operator.
+     * @return The entry kind implementing the operator.
+     * @throws Exception If the operator is unknown.
+     */
+    private static byte operatorKind(String operator) throws Exception {
+        switch (operator) {
+            case "+":
+                return CompiledGradient.ADD;
+            case "-":
+                return CompiledGradient.SUBTRACT;
+            case "*":
+                return CompiledGradient.MULTIPLY;
+            case "/":
+                return CompiledGradient.DIVIDE;
+            case "^":
+                return CompiledGradient.POWER;
+            default:
+                throw new Exception("Unknown operator: " + operator);
+        }
+    }
+
+    /**
+     * Appends an entry to the tape.
+     *
+     * @param kind The kind of the entry.
+     * @param firstOperand The first operand of the entry.
+     * @param secondOperand The second operand of the entry.
+     * @param function The function called by the entry, or null.
+     * @param constant The value of a constant entry.
+     * @param dependent Whether the entry depends on a variable.
+     * @return The index of the entry.
+     */
+    private int append(byte kind, int firstOperand, int secondOperand, ExpressionFunction function, double constant, boolean dependent) {
+        kinds.add(kind);
+        first.add(firstOperand);
+        second.add(secondOperand);
+        callFunctions.add(function);
+        constants.add(constant);
+        active.add(dependent);
+        return kinds.size() - 1;
+    }
+}
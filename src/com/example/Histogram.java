@@ -0,0 +1,185 @@
+package com.example;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class represents a histogram of non-negative long values, such as latencies in nanoseconds or token counts,
+ * that many threads can record into at once without locking.
+ * Like an HDR histogram, it keeps a fixed set of buckets whose width grows with the magnitude of the values:
+ * values below 32 have a bucket each, and every larger power of two is split into 16 buckets of equal width.
+ * Recording is a handful of arithmetic operations and one atomic increment, and percentiles are reported with a
+ * relative error of at most 1/16 over the whole range of long values.
+ */
+public class Histogram {
+
+    /**
+     * The number of values below which every value has its own bucket.
+     */
+    private static final int LINEAR_BUCKETS = 32;
+
+    /**
+     * The number of buckets each power of two above LINEAR_BUCKETS is split into.
+     */
+    private static final int SUB_BUCKETS = 16;
+
+    /**
+     * The total number of buckets, enough to cover Long.MAX_VALUE.
+     */
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + 58 * SUB_BUCKETS;
+
+    /**
+     * The number of values recorded in each bucket.
+     */
+    private final AtomicLongArray buckets;
+
+    /**
+     * The number of values recorded.
+     */
+    private final LongAdder count;
+
+    /**
+     * The sum of the values recorded.
+     */
+    private final LongAdder sum;
+
+    /**
+     * The largest value recorded.
+     */
+    private final LongAccumulator max;
+
+    /**
+     * Constructs a new, empty histogram.
+     */
+    public Histogram() {
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator(Long::max, 0);
+    }
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value The value to be recorded.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Returns the bucket a value is counted in.
+     *
+     * @param value The value, which must not be negative.
+     * @return The index of the bucket.
+     */
+    static int bucketOf(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 4;
+        int top = (int) (value >>> shift);
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+    }
+
+    /**
+     * Returns the largest value counted in a bucket.
+     *
+     * @param bucket The index of the bucket.
+     * @return The upper bound of the bucket.
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long top = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return The number of values recorded.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the largest value recorded, or 0 if there is none.
+     *
+     * @return The largest value recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the values recorded, or 0 if there is none.
+     *
+     * @return The mean of the values recorded.
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Returns an upper bound of the value below which the given percentage of the recorded values fall.
+     * The bound is within 1/16 of the exact percentile, and never above the largest value recorded.
+     *
+     * @param percentile The percentage, between 0 and 100.
+     * @return The value at the percentile, or 0 if no value has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Removes every recorded value. Values recorded by other threads while resetting may be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * Returns a summary of the histogram: the count, mean, median, 99th percentile and maximum.
+     *
+     * @return A summary of the histogram.
+     */
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1f p50=%d p99=%d max=%d",
+                getCount(), getMean(), getValueAtPercentile(50), getValueAtPercentile(99), getMax());
+    }
+}
@@ -0,0 +1,376 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is responsible for keeping the value of an expression up to date while its variables change one at a time.
+ * Every node of the expression tree remembers its last value, its parents, and which leaves read each variable.
+ * Setting a variable recomputes only the nodes on the paths from its leaves to the root, in order from the leaves up,
+ * and stops early along a path as soon as a node's value is unchanged. An update therefore costs time proportional to
+ * the part of the expression that depends on the variable rather than to the whole expression.
+ * Calls to impure functions are re-evaluated on every update, because their value may change without their arguments.
+ */
+public class IncrementalEvaluator {
+
+    /**
+     * The kind of a node holding a constant.
+     */
+    private static final int CONSTANT = 0;
+
+    /**
+     * The kind of a node reading a variable.
+     */
+    private static final int VARIABLE = 1;
+
+    /**
+     * The kind of a node calling a function.
+     */
+    private static final int CALL = 2;
+
+    /**
+     * The kinds of the nodes for the operators +, -, *, / and ^.
+     */
+    private static final int ADD = 3, SUBTRACT = 4, MULTIPLY = 5, DIVIDE = 6, POWER = 7;
+
+    /**
+     * The kind of each node. Nodes are numbered so that every node comes after its children.
+     */
+    private int[] kinds;
+
+    /**
+     * The children of each node.
+     */
+    private int[][] children;
+
+    /**
+     * The parents of each node. A node shared by several subexpressions has more than one.
+     */
+    private int[][] parents;
+
+    /**
+     * The function called by each call node, or null for other nodes.
+     */
+    private ExpressionFunction[] functions;
+
+    /**
+     * The argument buffer of each call node with more than two arguments, or null for other nodes.
+     */
+    private double[][] arguments;
+
+    /**
+     * The last computed value of each node.
+     */
+    private double[] values;
+
+    /**
+     * The leaves reading each variable.
+     */
+    private Map<String, int[]> variableLeaves;
+
+    /**
+     * The call nodes of impure functions, which are re-evaluated on every update.
+     */
+    private int[] impureCalls;
+
+    /**
+     * Whether each node is currently waiting in the queue of nodes to be recomputed.
+     */
+    private boolean[] queued;
+
+    /**
+     * The queue of nodes to be recomputed, as a binary min-heap of node numbers so that children come out first.
+     */
+    private int[] queue;
+
+    /**
+     * The number of nodes in the queue.
+     */
+    private int queueSize;
+
+    /**
+     * The number of nodes recomputed by the last update.
+     */
+    private int recomputed;
+
+    /**
+     * Constructs a new session for the given expression tree and computes the value of every node.
+     *
+     * @param root The root node of the expression tree. Shared subtrees are recomputed once per update.
+     * @param variables A map of variables in the expression to their initial values.
+     * @param functions The functions that can be called from the expression.
+     * @throws Exception If a variable is not defined or the expression contains an unknown operator.
+     */
+    public IncrementalEvaluator(Node root, Map<String, Double> variables, FunctionRegistry functions) throws Exception {
+        List<Node> nodes = new ArrayList<>();
+        Map<Node, Integer> ids = new IdentityHashMap<>();
+        number(root, nodes, ids);
+
+        int count = nodes.size();
+        kinds = new int[count];
+        children = new int[count][];
+        this.functions = new ExpressionFunction[count];
+        arguments = new double[count][];
+        values = new double[count];
+        queued = new boolean[count];
+        queue = new int[count];
+
+        int[] parentCounts = new int[count];
+        Map<String, List<Integer>> leaves = new HashMap<>();
+        List<Integer> impure = new ArrayList<>();
+        for (int id = 0; id < count; id++) {
+            Node node = nodes.get(id);
+            List<Node> nodeChildren = node.getChildren();
+            children[id] = new int[nodeChildren.size()];
+            for (int i = 0; i < children[id].length; i++) {
+                children[id][i] = ids.get(nodeChildren.get(i));
+                parentCounts[children[id][i]]++;
+            }
+            if (node.getType() == NodeType.NUMBER) {
+                kinds[id] = CONSTANT;
+                values[id] = node.getNumber();
+            } else if (node.getType() == NodeType.VARIABLE_OR_FUNCTION) {
+                ExpressionFunction function = functions.get(node.getValue());
+                if (function != null) {
+                    kinds[id] = CALL;
+                    this.functions[id] = function;
+                    if (children[id].length > 2) {
+                        arguments[id] = new double[children[id].length];
+                    }
+                    if (!function.isPure()) {
+                        impure.add(id);
+                    }
+                } else {
+                    Double value = variables.get(node.getValue());
+                    if (value == null) {
+                        throw new Exception("Variable not defined: " + node.getValue());
+                    }
+                    kinds[id] = VARIABLE;
+                    values[id] = value;
+                    leaves.computeIfAbsent(node.getValue(), name -> new ArrayList<>()).add(id);
+                }
+            } else if (node.getType() == NodeType.OPERATOR) {
+                kinds[id] = operatorKind(node.getValue());
+            } else {
+                throw new Exception("Unknown node type: " + node.getType());
+            }
+            if (kinds[id] != CONSTANT && kinds[id] != VARIABLE) {
+                values[id] = compute(id);
+            }
+        }
+
+        parents = new int[count][];
+        for (int id = 0; id < count; id++) {
+            parents[id] = new int[parentCounts[id]];
+            parentCounts[id] = 0;
+        }
+        for (int id = 0; id < count; id++) {
+            for (int child : children[id]) {
+                parents[child][parentCounts[child]++] = id;
+            }
+        }
+        variableLeaves = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : leaves.entrySet()) {
+            variableLeaves.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        impureCalls = toArray(impure);
+    }
+
+    /**
+     * Numbers the nodes of a subtree so that every node comes after its children, visiting shared nodes once.
+     *
+     * @param node The root of the subtree.
+     * @param nodes The nodes in numbering order.
+     * @param ids The number of each node already visited.
+     */
+    private static void number(Node node, List<Node> nodes, Map<Node, Integer> ids) {
+        if (ids.containsKey(node)) {
+            return;
+        }
+        for (Node child : node.getChildren()) {
+            number(child, nodes, ids);
+        }
+        ids.put(node, nodes.size());
+        nodes.add(node);
+    }
+
+    /**
+     * Returns the node kind of a binary operator.
+     *
+     * @param operator The operator.
+     * @return The kind of the node.
+     * @throws Exception If the operator is unknown.
+     */
+    private static int operatorKind(String operator) throws Exception {
+        switch (operator) {
+            case "+": return ADD;
+            case "-": return SUBTRACT;
+            case "*": return MULTIPLY;
+            case "/": return DIVIDE;
+            case "^": return POWER;
+            default: throw new Exception("Unknown operator: " + operator);
+        }
+    }
+
+    /**
+     * Converts a list of node numbers to an array.
+     *
+     * @param list The node numbers.
+     * @return The node numbers as an array.
+     */
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Returns the current value of the expression.
+     *
+     * @return The value of the root node.
+     */
+    public double getValue() {
+        return values[values.length - 1];
+    }
+
+    /**
+     * Sets a variable and recomputes the nodes that depend on it, returning the new value of the expression.
+     *
+     * @param name The name of the variable.
+     * @param value The new value of the variable.
+     * @return The new value of the expression.
+     * @throws Exception If the expression does not read the variable.
+     */
+    public double set(String name, double value) throws Exception {
+        int[] leaves = variableLeaves.get(name);
+        if (leaves == null) {
+            throw new Exception("Variable not in expression: " + name);
+        }
+        recomputed = 0;
+        if (Double.compare(values[leaves[0]], value) != 0) {
+            for (int leaf : leaves) {
+                values[leaf] = value;
+                enqueueParents(leaf);
+            }
+        }
+        for (int call : impureCalls) {
+            enqueue(call);
+        }
+        while (queueSize > 0) {
+            int id = dequeue();
+            recomputed++;
+            double updated = compute(id);
+            if (Double.compare(values[id], updated) != 0) {
+                values[id] = updated;
+                enqueueParents(id);
+            }
+        }
+        return getValue();
+    }
+
+    /**
+     * Returns the number of nodes recomputed by the last call to set.
+     *
+     * @return The number of recomputed nodes.
+     */
+    public int getRecomputedNodes() {
+        return recomputed;
+    }
+
+    /**
+     * Returns the number of nodes in the expression, counting shared nodes once.
+     *
+     * @return The number of nodes.
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Computes the value of a call or operator node from the current values of its children.
+     *
+     * @param id The node to be computed.
+     * @return The value of the node.
+     */
+    private double compute(int id) {
+        int[] nodeChildren = children[id];
+        switch (kinds[id]) {
+            case ADD: return values[nodeChildren[0]] + values[nodeChildren[1]];
+            case SUBTRACT: return values[nodeChildren[0]] - values[nodeChildren[1]];
+            case MULTIPLY: return values[nodeChildren[0]] * values[nodeChildren[1]];
+            case DIVIDE: return values[nodeChildren[0]] / values[nodeChildren[1]];
+            case POWER: return Math.pow(values[nodeChildren[0]], values[nodeChildren[1]]);
+            case CALL:
+                if (nodeChildren.length == 1) {
+                    return functions[id].apply(values[nodeChildren[0]]);
+                } else if (nodeChildren.length == 2) {
+                    return functions[id].apply(values[nodeChildren[0]], values[nodeChildren[1]]);
+                }
+                double[] buffer = arguments[id];
+                for (int i = 0; i < nodeChildren.length; i++) {
+                    buffer[i] = values[nodeChildren[i]];
+                }
+                return functions[id].apply(buffer);
+            default: return values[id];
+        }
+    }
+
+    /**
+     * Adds the parents of a node to the queue of nodes to be recomputed.
+     *
+     * @param id The node whose value changed.
+     */
+    private void enqueueParents(int id) {
+        for (int parent : parents[id]) {
+            enqueue(parent);
+        }
+    }
+
+    /**
+     * Adds a node to the queue of nodes to be recomputed unless it is already waiting there.
+     *
+     * @param id The node to be recomputed.
+     */
+    private void enqueue(int id) {
+        if (queued[id]) {
+            return;
+        }
+        queued[id] = true;
+        int i = queueSize++;
+        while (i > 0 && queue[(i - 1) / 2] > id) {
+            queue[i] = queue[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        queue[i] = id;
+    }
+
+    /**
+     * Removes the lowest numbered node from the queue of nodes to be recomputed.
+     *
+     * @return The removed node.
+     */
+    private int dequeue() {
+        int first = queue[0];
+        int last = queue[--queueSize];
+        int i = 0;
+        while (2 * i + 1 < queueSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < queueSize && queue[child + 1] < queue[child]) {
+                child++;
+            }
+            if (queue[child] >= last) {
+                break;
+            }
+            queue[i] = queue[child];
+            i = child;
+        }
+        queue[i] = last;
+        queued[first] = false;
+        return first;
+    }
+}
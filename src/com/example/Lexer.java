@@ -0,0 +1,259 @@
+package com.example;
+
+/**
+ * This class is responsible for reading the tokens of an expression one at a time, without creating token objects.
+ * It works over any CharSequence, such as a String, a StringBuilder or a CharBuffer, and exposes the current
+ * token through its type, its start and end offsets and, for numbers, its value as a primitive double.
+ */
+public class Lexer {
+
+    /**
+     * The powers of ten that are exactly representable as doubles, used to convert short decimal numbers exactly.
+     */
+    static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * The largest number of significant digits whose value is always exactly representable as a double.
+     */
+    static final int MAX_EXACT_DIGITS = 15;
+
+    /**
+     * The expression to be tokenized.
+     */
+    private CharSequence input;
+
+    /**
+     * The position of the first character after the current token.
+     */
+    private int position;
+
+    /**
+     * The type of the current token, or null before the first call to next.
+     */
+    private TokenType type;
+
+    /**
+     * The position of the first character of the current token.
+     */
+    private int start;
+
+    /**
+     * The value of the current token if it is a number.
+     */
+    private double number;
+
+    /**
+     * The description of the current token if it is INVALID, or null.
+     */
+    private String error;
+
+    /**
+     * The number of tokens read so far, not counting the end of the expression.
+     */
+    private int tokenCount;
+
+    /**
+     * Constructs a new lexer over the given expression, positioned before its first token.
+     *
+     * @param input The expression to be tokenized.
+     */
+    public Lexer(CharSequence input) {
+        this.input = input;
+        this.position = 0;
+    }
+
+    /**
+     * Advances to the next token and returns its type. Once the end of the expression is reached,
+     * every further call returns EOF.
+     *
+     * @return The type of the new current token.
+     * @throws Exception If the expression contains an invalid number or an unexpected character.
+     */
+    public TokenType next() throws Exception {
+        if (scan() == TokenType.INVALID) {
+            throw new Exception(error);
+        }
+        return type;
+    }
+
+    /**
+     * Advances to the next token and returns its type without throwing on errors. An unexpected character
+     * or an invalid number becomes an INVALID token, described by getError, and scanning can continue after it.
+     *
+     * @return The type of the new current token.
+     */
+    public TokenType scan() {
+        int length = input.length();
+        while (position < length && Character.isWhitespace(input.charAt(position))) {
+            position++;
+        }
+        start = position;
+        error = null;
+        if (position >= length) {
+            type = TokenType.EOF;
+            return type;
+        }
+        char ch = input.charAt(position);
+        if (Character.isDigit(ch)) {
+            type = readNumber() ? TokenType.NUMBER : TokenType.INVALID;
+        } else if (ch == '+' || ch == '-' || ch == '*' || ch == '/' || ch == '^') {
+            position++;
+            type = TokenType.OPERATOR;
+        } else if (ch == '(') {
+            position++;
+            type = TokenType.LEFT_PAREN;
+        } else if (ch == ')') {
+            position++;
+            type = TokenType.RIGHT_PAREN;
+        } else if (ch == ',') {
+            position++;
+            type = TokenType.COMMA;
+        } else if (Character.isLetter(ch)) {
+            while (position < length && Character.isLetterOrDigit(input.charAt(position))) {
+                position++;
+            }
+            type = TokenType.VARIABLE_OR_FUNCTION;
+        } else {
+            position++;
+            error = "Unexpected character: " + ch;
+            type = TokenType.INVALID;
+        }
+        tokenCount++;
+        return type;
+    }
+
+    /**
+     * Reads a number made of digits optionally followed by a decimal point and more digits.
+     * Numbers with at most 15 significant ASCII digits are converted exactly with primitive arithmetic;
+     * longer ones fall back to Double.parseDouble.
+     *
+     * @return Whether the number could be parsed.
+     */
+    private boolean readNumber() {
+        int length = input.length();
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean ascii = true;
+        boolean fraction = false;
+        while (position < length) {
+            char ch = input.charAt(position);
+            if (Character.isDigit(ch)) {
+                ascii &= ch >= '0' && ch <= '9';
+                if (mantissa != 0 || ch != '0') {
+                    digits++;
+                }
+                if (digits <= MAX_EXACT_DIGITS) {
+                    mantissa = mantissa * 10 + (ch - '0');
+                    if (fraction) {
+                        fractionDigits++;
+                    }
+                }
+            } else if (ch == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+            position++;
+        }
+        if (ascii && digits <= MAX_EXACT_DIGITS && fractionDigits < POWERS_OF_TEN.length) {
+            number = mantissa / POWERS_OF_TEN[fractionDigits];
+            return true;
+        }
+        String text = input.subSequence(start, position).toString();
+        try {
+            number = Double.parseDouble(text);
+            return true;
+        } catch (NumberFormatException e) {
+            error = "Invalid number: " + text;
+            return false;
+        }
+    }
+
+    /**
+     * Returns the type of the current token.
+     *
+     * @return The type of the current token, or null before the first call to next.
+     */
+    public TokenType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the description of the current token if it is INVALID.
+     *
+     * @return The description of the error, or null if the current token is valid.
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Returns the number of tokens read so far, not counting the end of the expression.
+     *
+     * @return The number of tokens read.
+     */
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Returns the offset of the first character of the current token.
+     *
+     * @return The start offset of the current token.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the offset just after the last character of the current token.
+     *
+     * @return The end offset of the current token.
+     */
+    public int getEnd() {
+        return position;
+    }
+
+    /**
+     * Returns the value of the current token, which must be a number.
+     *
+     * @return The value of the current number token.
+     */
+    public double getNumber() {
+        return number;
+    }
+
+    /**
+     * Returns the first character of the current token. For operators, parentheses and commas this is the whole token.
+     *
+     * @return The first character of the current token, or 0 at the end of the expression.
+     */
+    public char getChar() {
+        return type == TokenType.EOF ? 0 : input.charAt(start);
+    }
+
+    /**
+     * Returns the text of the current token. This allocates a new string, so it is meant for names and error messages.
+     *
+     * @return The text of the current token.
+     */
+    public String getText() {
+        return input.subSequence(start, position).toString();
+    }
+
+    /**
+     * Returns the current token as a Token object, with the same value the Tokenizer would give it.
+     *
+     * @return The current token.
+     */
+    public Token toToken() {
+        if (type == TokenType.NUMBER) {
+            return new Token(number + "", type);
+        }
+        return new Token(getText(), type);
+    }
+}
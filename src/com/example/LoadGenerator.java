@@ -0,0 +1,184 @@
+package com.example;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This class is responsible for generating load against an EvaluationServer and measuring its throughput.
+ * The items are spread over several connections, each driven by its own thread, and every connection pipelines
+ * its requests, keeping up to a fixed number of them in flight before it waits for the oldest response.
+ */
+public class LoadGenerator {
+
+    /**
+     * The formulas used by the generated workload. Each appears many times, so the server can batch them.
+     */
+    private static final String[] FORMULAS = {
+            "x * y + 2",
+            "sin(x) * cos(y) + tan(x / 4)",
+            "max(x, y, 3) - min(x, y) ^ 2",
+            "ln(1 + x * x) / (2 + y)",
+    };
+
+    /**
+     * The port the server listens on.
+     */
+    private int port;
+
+    /**
+     * The number of connections the items are spread over.
+     */
+    private int connections;
+
+    /**
+     * The largest number of requests in flight on each connection.
+     */
+    private int window;
+
+    /**
+     * The time taken by the last run, in nanoseconds.
+     */
+    private long elapsedNanos;
+
+    /**
+     * The number of requests sent by the last run.
+     */
+    private int requestCount;
+
+    /**
+     * Constructs a new load generator for a server on the loopback interface.
+     *
+     * @param port The port the server listens on.
+     * @param connections The number of connections the items are spread over.
+     * @param window The largest number of requests in flight on each connection.
+     */
+    public LoadGenerator(int port, int connections, int window) {
+        if (connections < 1 || window < 1) {
+            throw new IllegalArgumentException("At least one connection and one request in flight are needed");
+        }
+        this.port = port;
+        this.connections = connections;
+        this.window = window;
+    }
+
+    /**
+     * This method generates a workload of items drawn from a few formulas over the variables x and y.
+     *
+     * @param count The number of items.
+     * @param seed The seed of the random values.
+     * @return The items.
+     */
+    public static List<BulkItem> workload(int count, long seed) {
+        Random random = new Random(seed);
+        List<BulkItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, Double> variables = new HashMap<>();
+            variables.put("x", random.nextDouble() * 10);
+            variables.put("y", random.nextDouble() * 10);
+            items.add(new BulkItem(FORMULAS[random.nextInt(FORMULAS.length)], variables));
+        }
+        return items;
+    }
+
+    /**
+     * Sends every item to the server and waits for all of the responses.
+     *
+     * @param items The items to be evaluated.
+     * @return The result of each item, in the order of the items.
+     * @throws Exception If a connection fails.
+     */
+    public BulkResult[] run(List<BulkItem> items) throws Exception {
+        BulkResult[] results = new BulkResult[items.size()];
+        Exception[] failures = new Exception[connections];
+        Thread[] threads = new Thread[connections];
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            int connection = c;
+            threads[c] = new Thread(() -> {
+                try {
+                    drive(items, connection, results);
+                } catch (Exception e) {
+                    failures[connection] = e;
+                }
+            }, "load-generator-" + c);
+            threads[c].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        elapsedNanos = System.nanoTime() - start;
+        requestCount = items.size();
+        for (Exception failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Sends the items assigned to one connection, keeping up to the window of requests in flight.
+     * Each request uses the index of its item as id.
+     *
+     * @param items All of the items.
+     * @param connection The connection, which handles every item whose index modulo the number of connections equals it.
+     * @param results The array the results are stored in.
+     * @throws IOException If the connection fails or a response does not answer the oldest request.
+     */
+    private void drive(List<BulkItem> items, int connection, BulkResult[] results) throws IOException {
+        try (EvaluationClient client = new EvaluationClient(port)) {
+            int received = connection;
+            int inFlight = 0;
+            for (int i = connection; i < items.size(); i += connections) {
+                if (inFlight == window) {
+                    received = store(client.receive(), received, results);
+                    inFlight--;
+                }
+                client.send(i, items.get(i).getExpression(), items.get(i).getVariables());
+                inFlight++;
+            }
+            for (; inFlight > 0; inFlight--) {
+                received = store(client.receive(), received, results);
+            }
+        }
+    }
+
+    /**
+     * Stores a result, checking that it answers the oldest request in flight.
+     *
+     * @param result The result received.
+     * @param expected The index of the oldest request in flight.
+     * @param results The array the results are stored in.
+     * @return The index of the next request expected.
+     * @throws IOException If the result answers another request.
+     */
+    private int store(BulkResult result, int expected, BulkResult[] results) throws IOException {
+        if (result.getIndex() != expected) {
+            throw new IOException("Expected response " + expected + ", got " + result.getIndex());
+        }
+        results[expected] = result;
+        return expected + connections;
+    }
+
+    /**
+     * Returns the time taken by the last run.
+     *
+     * @return The elapsed time in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the throughput of the last run.
+     *
+     * @return The number of requests answered per second.
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : requestCount * 1e9 / elapsedNanos;
+    }
+}
@@ -1,26 +1,74 @@
 package com.example;
 
+import java.io.BufferedReader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.function.Function;
 import java.util.HashMap;
 
 public class Main {
     public static void main(String[] args) {
+        if (args.length == 4 && args[0].equals("--batch")) {
+            try {
+                long rows = new FileEvaluator(args[1], FunctionRegistry.standard()).evaluate(Paths.get(args[2]), Paths.get(args[3]));
+                System.out.println("Evaluated " + rows + " rows");
+            } catch (Exception e) {
+                System.out.println("Error: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--bulk")) {
+            try (BulkEvaluator evaluator = new BulkEvaluator(FunctionRegistry.standard(), 4096);
+                 BufferedReader input = Files.newBufferedReader(Paths.get(args[1]));
+                 Writer output = Files.newBufferedWriter(Paths.get(args[2]))) {
+                long records = evaluator.evaluate(input, output);
+                System.out.println("Evaluated " + records + " records");
+            } catch (Exception e) {
+                System.out.println("Error: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length == 2 && args[0].equals("--serve")) {
+            try {
+                EvaluationServer server = new EvaluationServer(Integer.parseInt(args[1]), FunctionRegistry.standard());
+                System.out.println("Listening on port " + server.getPort());
+                Thread.currentThread().join();
+            } catch (Exception e) {
+                System.out.println("Error: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length == 4 && args[0].equals("--load")) {
+            try {
+                LoadGenerator generator = new LoadGenerator(Integer.parseInt(args[1]), Integer.parseInt(args[3]), 256);
+                BulkResult[] results = generator.run(LoadGenerator.workload(Integer.parseInt(args[2]), 1));
+                System.out.printf("Evaluated %d requests in %.1f ms (%.0f requests/s)%n",
+                        results.length, generator.getElapsedNanos() / 1e6, generator.getThroughput());
+            } catch (Exception e) {
+                System.out.println("Error: " + e.getMessage());
+            }
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
         System.out.println("Enter expression:");
         String expression = scanner.nextLine();
 
         Map<String, Double> variables = new HashMap<>();
-        Map<String, Function<Double, Double>> functions = new HashMap<>();
-        functions.put("sin", Math::sin);
-        functions.put("cos", Math::cos);
-        functions.put("tan", Math::tan);
-        functions.put("ln", Math::log);
+        FunctionRegistry functions = FunctionRegistry.standard();
 
         try {
             Node root = ExpressionTreeBuilder.buildExpressionTree(expression, variables, functions);
-            double result = ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions);
+            double result = ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions, names -> {
+                Map<String, Double> values = new HashMap<>();
+                for (String name : names) {
+                    System.out.println("Enter value for variable " + name + ":");
+                    values.put(name, scanner.nextDouble());
+                }
+                return values;
+            });
             System.out.println("Result: " + result);
         } catch (Exception e) {
             System.out.println("Error: " + e.getMessage());
@@ -0,0 +1,298 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * This class represents a bounded cache of the results of a pure function of one argument, for functions that are
+ * expensive enough to be worth remembering. Arguments and results are kept in primitive arrays, so lookups never box.
+ * The cache is split into stripes, each an open-addressing table guarded by its own lock, so that threads evaluating
+ * in parallel rarely meet. An argument can only be stored in one small group of neighbouring slots of its stripe;
+ * when the group is full, one of its entries is evicted in rotation, so the cache never grows beyond its capacity
+ * and never needs to be rehashed. Lookups read the table optimistically, without taking the lock, and only
+ * retry under the lock if a store happened at the same time. Hits, misses and evictions are counted.
+ */
+public class MemoCache {
+
+    /**
+     * The number of neighbouring slots an argument may be stored in.
+     */
+    private static final int WAYS = 4;
+
+    /**
+     * The key of an empty slot: a NaN bit pattern that Double.doubleToLongBits never returns.
+     */
+    private static final long EMPTY = 0x7ff8000000000001L;
+
+    /**
+     * The stripes of the cache.
+     */
+    private final Stripe[] stripes;
+
+    /**
+     * The mask selecting a stripe from a hash.
+     */
+    private final int stripeMask;
+
+    /**
+     * The number of lookups answered from the cache.
+     */
+    private final LongAdder hits;
+
+    /**
+     * The number of lookups that had to call the function.
+     */
+    private final LongAdder misses;
+
+    /**
+     * The number of entries replaced to make room for a new one.
+     */
+    private final LongAdder evictions;
+
+    /**
+     * This class represents one stripe of the cache: a table of arguments and results guarded by a lock.
+     */
+    private static final class Stripe {
+
+        /**
+         * The lock guarding stores into the table and validating optimistic reads.
+         */
+        private final StampedLock lock = new StampedLock();
+
+        /**
+         * The bits of the argument stored in each slot, or EMPTY.
+         */
+        private final long[] keys;
+
+        /**
+         * The result stored in each slot.
+         */
+        private final double[] values;
+
+        /**
+         * The next way of each group to be evicted.
+         */
+        private final byte[] victims;
+
+        /**
+         * Constructs a new, empty stripe.
+         *
+         * @param groups The number of groups of slots, a power of two.
+         */
+        private Stripe(int groups) {
+            this.keys = new long[groups * WAYS];
+            this.values = new double[groups * WAYS];
+            this.victims = new byte[groups];
+            Arrays.fill(keys, EMPTY);
+        }
+    }
+
+    /**
+     * Constructs a new, empty cache.
+     *
+     * @param capacity The largest number of results kept, rounded up so that every stripe holds a power of two.
+     */
+    public MemoCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache must hold at least one entry: " + capacity);
+        }
+        int stripeCount = ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors() * 2);
+        int groups = ceilingPowerOfTwo((capacity + stripeCount * WAYS - 1) / (stripeCount * WAYS));
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(groups);
+        }
+        this.stripeMask = stripeCount - 1;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Returns the smallest power of two not below a number.
+     *
+     * @param n The number.
+     * @return The power of two, at least 1.
+     */
+    private static int ceilingPowerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * Returns the result of the function for an argument, from the cache if it is there,
+     * and otherwise by calling the function and storing its result.
+     * Two threads missing the same argument at once may both call the function.
+     *
+     * @param argument The argument.
+     * @param function The pure function the cache holds results of.
+     * @return The result of the function.
+     */
+    public double get(double argument, DoubleUnaryOperator function) {
+        long key = Double.doubleToLongBits(argument);
+        long hash = mix(key);
+        Stripe stripe = stripes[(int) hash & stripeMask];
+        int group = (int) (hash >>> 32) & (stripe.victims.length - 1);
+        int first = group * WAYS;
+
+        long stamp = stripe.lock.tryOptimisticRead();
+        int slot = find(stripe, first, key);
+        double value = slot < 0 ? 0 : stripe.values[slot];
+        if (!stripe.lock.validate(stamp)) {
+            stamp = stripe.lock.readLock();
+            try {
+                slot = find(stripe, first, key);
+                value = slot < 0 ? 0 : stripe.values[slot];
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        if (slot >= 0) {
+            hits.increment();
+            return value;
+        }
+
+        misses.increment();
+        value = function.applyAsDouble(argument);
+        stamp = stripe.lock.writeLock();
+        try {
+            if (find(stripe, first, key) < 0) {
+                store(stripe, group, key, value);
+            }
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the slot holding an argument in its group.
+     *
+     * @param stripe The stripe of the argument.
+     * @param first The first slot of the group.
+     * @param key The bits of the argument.
+     * @return The slot, or -1 if the argument is not stored.
+     */
+    private static int find(Stripe stripe, int first, long key) {
+        long[] keys = stripe.keys;
+        for (int slot = first; slot < first + WAYS; slot++) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Stores a result in the first empty slot of its group, or in place of the next entry to be evicted.
+     * The caller holds the write lock of the stripe.
+     *
+     * @param stripe The stripe of the argument.
+     * @param group The group of the argument.
+     * @param key The bits of the argument.
+     * @param value The result.
+     */
+    private void store(Stripe stripe, int group, long key, double value) {
+        int first = group * WAYS;
+        int slot = first;
+        while (slot < first + WAYS && stripe.keys[slot] != EMPTY) {
+            slot++;
+        }
+        if (slot == first + WAYS) {
+            slot = first + stripe.victims[group];
+            stripe.victims[group] = (byte) ((stripe.victims[group] + 1) % WAYS);
+            evictions.increment();
+        }
+        stripe.keys[slot] = key;
+        stripe.values[slot] = value;
+    }
+
+    /**
+     * Spreads the bits of an argument over the whole hash, so that arguments differing only in a few mantissa bits,
+     * such as small integers, land in different stripes and groups.
+     *
+     * @param key The bits of the argument.
+     * @return The hash.
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Removes every stored result. The counters are kept.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.writeLock();
+            try {
+                Arrays.fill(stripe.keys, EMPTY);
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Returns the largest number of results the cache keeps.
+     *
+     * @return The capacity of the cache.
+     */
+    public int capacity() {
+        return stripes.length * stripes[0].keys.length;
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that had to call the function.
+     *
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of entries replaced to make room for a new one.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the share of lookups answered from the cache.
+     *
+     * @return The hit rate between 0 and 1, or 0 if there has been no lookup.
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Returns a summary of the cache: its capacity, hits, misses, evictions and hit rate.
+     *
+     * @return A summary of the cache.
+     */
+    @Override
+    public String toString() {
+        return String.format("MemoCache{capacity=%d, hits=%d, misses=%d, evictions=%d, hitRate=%.3f}",
+                capacity(), getHits(), getMisses(), getEvictions(), getHitRate());
+    }
+}
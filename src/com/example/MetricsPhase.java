@@ -0,0 +1,11 @@
+package com.example;
+
+/**
+ * This enum lists the phases of handling an expression that ExpressionMetrics measures.
+ * PARSE covers reading the tokens as well, because the Parser pulls them from the Lexer as it goes.
+ */
+public enum MetricsPhase {
+    TOKENIZE,
+    PARSE,
+    EVALUATE
+}
@@ -11,9 +11,20 @@ public class Node {
 
     /**
      * The value of the node. This could be a number, a variable, an operator, or a function name.
+     * For number nodes created from a double it is only formatted when first requested.
      */
     private String value;
 
+    /**
+     * The value of a number node as a double, parsed once when the node is created.
+     */
+    private final double number;
+
+    /**
+     * Whether the number field holds the value of the node.
+     */
+    private final boolean parsed;
+
     /**
      * The type of the node. This could be a NUMBER, a VARIABLE_OR_FUNCTION, or an OPERATOR.
      */
@@ -35,6 +46,31 @@ public class Node {
         this.value = value;
         this.type = type;
         this.children = new ArrayList<>();
+        double number = 0;
+        boolean parsed = false;
+        if (type == NodeType.NUMBER) {
+            try {
+                number = Double.parseDouble(value);
+                parsed = true;
+            } catch (NumberFormatException e) {
+                parsed = false;
+            }
+        }
+        this.number = number;
+        this.parsed = parsed;
+    }
+
+    /**
+     * Constructs a new number node with the given value.
+     * The list of children is initially empty.
+     *
+     * @param number The value of the node.
+     */
+    public Node(double number) {
+        this.type = NodeType.NUMBER;
+        this.children = new ArrayList<>(0);
+        this.number = number;
+        this.parsed = true;
     }
 
     /**
@@ -43,9 +79,22 @@ public class Node {
      * @return The value of the node.
      */
     public String getValue() {
+        if (value == null) {
+            value = Double.toString(number);
+        }
         return value;
     }
 
+    /**
+     * Returns the value of a number node as a double, without parsing it again.
+     *
+     * @return The value of the number node.
+     * @throws NumberFormatException If the node was created with a value that is not a valid number.
+     */
+    public double getNumber() {
+        return parsed ? number : Double.parseDouble(value);
+    }
+
     /**
      * Returns the type of the node.
      *
@@ -81,7 +130,7 @@ public class Node {
     @Override
     public String toString() {
         return "Node{" +
-                "value='" + value + '\'' +
+                "value='" + getValue() + '\'' +
                 ", type=" + type +
                 ", children=" + children +
                 '}';
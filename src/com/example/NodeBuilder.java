@@ -0,0 +1,141 @@
+package com.example;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * This class is responsible for building an expression tree of Node objects from the elements reported by a Parser.
+ * Completed subtrees are kept on a stack until the operator or function call they belong to is received.
+ */
+public class NodeBuilder implements ParseListener {
+
+    /**
+     * The completed subtrees that have not been attached to a parent yet.
+     */
+    private Deque<Node> stack;
+
+    /**
+     * The number of nodes created so far.
+     */
+    private int nodeCount;
+
+    /**
+     * Constructs a new, empty node builder.
+     */
+    public NodeBuilder() {
+        this.stack = new ArrayDeque<>();
+    }
+
+    /**
+     * Pushes a number node.
+     *
+     * @param value The value of the number.
+     */
+    @Override
+    public void number(double value) {
+        stack.push(new Node(value));
+        nodeCount++;
+    }
+
+    /**
+     * Pushes a variable node.
+     *
+     * @param name The name of the variable.
+     */
+    @Override
+    public void variable(String name) {
+        stack.push(new Node(name, NodeType.VARIABLE_OR_FUNCTION));
+        nodeCount++;
+    }
+
+    /**
+     * Replaces the arguments on top of the stack with a function node holding them.
+     *
+     * @param name The name of the function.
+     * @param argumentCount The number of arguments of the call.
+     * @throws Exception If fewer subtrees than arguments have been built.
+     */
+    @Override
+    public void function(String name, int argumentCount) throws Exception {
+        Node function = new Node(name, NodeType.VARIABLE_OR_FUNCTION);
+        Node[] arguments = pop(argumentCount);
+        for (Node argument : arguments) {
+            function.addChild(argument);
+        }
+        stack.push(function);
+        nodeCount++;
+    }
+
+    /**
+     * Replaces the two operands on top of the stack with an operator node holding them.
+     *
+     * @param operator The operator.
+     * @throws Exception If fewer than two subtrees have been built.
+     */
+    @Override
+    public void operator(char operator) throws Exception {
+        Node parent = new Node(operatorText(operator), NodeType.OPERATOR);
+        Node[] operands = pop(2);
+        parent.addChild(operands[0]);
+        parent.addChild(operands[1]);
+        stack.push(parent);
+        nodeCount++;
+    }
+
+    /**
+     * Returns the text of an operator as a shared constant, so that operator nodes do not each hold their own string.
+     *
+     * @param operator The operator.
+     * @return The text of the operator.
+     */
+    private static String operatorText(char operator) {
+        switch (operator) {
+            case '+': return "+";
+            case '-': return "-";
+            case '*': return "*";
+            case '/': return "/";
+            case '^': return "^";
+            default: return String.valueOf(operator);
+        }
+    }
+
+    /**
+     * Removes the given number of subtrees from the top of the stack.
+     *
+     * @param count The number of subtrees to be removed.
+     * @return The removed subtrees, in the order they were built.
+     * @throws Exception If fewer subtrees have been built.
+     */
+    private Node[] pop(int count) throws Exception {
+        if (stack.size() < count) {
+            throw new Exception("Missing operand");
+        }
+        Node[] nodes = new Node[count];
+        for (int i = count - 1; i >= 0; i--) {
+            nodes[i] = stack.pop();
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the number of nodes created so far.
+     *
+     * @return The number of nodes created.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the root of the expression tree built so far.
+     *
+     * @return The root node of the expression tree.
+     * @throws Exception If the elements received do not form exactly one expression.
+     */
+    public Node getRoot() throws Exception {
+        if (stack.size() != 1) {
+            throw new Exception("Incomplete expression");
+        }
+        return stack.peek();
+    }
+}
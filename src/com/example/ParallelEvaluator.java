@@ -0,0 +1,305 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class is responsible for evaluating a compiled expression over large row sets and grids on several threads.
+ * The rows are split into chunks that are evaluated with the BatchEvaluator and written into disjoint ranges
+ * of one shared output array. A compiled expression is only read during batch evaluation, and every chunk
+ * uses its own operand buffers, so one expression can be shared by all threads.
+ */
+public class ParallelEvaluator {
+
+    /**
+     * The smallest number of rows worth handing to a separate task.
+     */
+    private static final int MIN_TASK_ROWS = BatchEvaluator.CHUNK_SIZE * 8;
+
+    /**
+     * This method evaluates a compiled expression for every row on the common fork/join pool.
+     *
+     * @param expression The compiled expression.
+     * @param columns The values of the variables, indexed by slot and then by row.
+     * @param out The array the result of each row is written to. Its length is the number of rows.
+     */
+    public static void evaluate(CompiledExpression expression, double[][] columns, double[] out) {
+        evaluate(expression, columns, out, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * This method evaluates a compiled expression for every row on the given fork/join pool.
+     *
+     * @param expression The compiled expression.
+     * @param columns The values of the variables, indexed by slot and then by row.
+     * @param out The array the result of each row is written to. Its length is the number of rows.
+     * @param pool The pool the rows are evaluated on.
+     */
+    public static void evaluate(CompiledExpression expression, double[][] columns, double[] out, ForkJoinPool pool) {
+        int threshold = taskRows(out.length, pool.getParallelism());
+        pool.invoke(new RowTask(expression, columns, out, 0, out.length, threshold));
+    }
+
+    /**
+     * This method evaluates a compiled expression for every row on the given executor.
+     * The rows are split into a fixed number of chunks up front and the call blocks until all of them are done.
+     *
+     * @param expression The compiled expression.
+     * @param columns The values of the variables, indexed by slot and then by row.
+     * @param out The array the result of each row is written to. Its length is the number of rows.
+     * @param executor The executor the chunks are evaluated on.
+     * @param parallelism The number of threads the executor can run chunks on.
+     */
+    public static void evaluate(CompiledExpression expression, double[][] columns, double[] out, Executor executor, int parallelism) {
+        int taskRows = taskRows(out.length, parallelism);
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < out.length; from += taskRows) {
+            int start = from;
+            int end = Math.min(out.length, from + taskRows);
+            tasks.add(CompletableFuture.runAsync(() -> BatchEvaluator.evaluate(expression, columns, out, start, end), executor));
+        }
+        try {
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * This method evaluates a compiled expression at every point of a 2-D grid on the common fork/join pool.
+     * The result for the point (xs[i], ys[j]) is written to out[j * xs.length + i].
+     *
+     * @param expression The compiled expression.
+     * @param xSlot The slot of the variable taking the x coordinates.
+     * @param ySlot The slot of the variable taking the y coordinates.
+     * @param xs The x coordinates of the grid.
+     * @param ys The y coordinates of the grid.
+     * @param variables The values of the other variables, indexed by slot. The x and y slots are ignored.
+     * @param out The array the results are written to, of length xs.length * ys.length.
+     */
+    public static void evaluateGrid(CompiledExpression expression, int xSlot, int ySlot, double[] xs, double[] ys,
+                                    double[] variables, double[] out) {
+        if (out.length < xs.length * ys.length) {
+            throw new IllegalArgumentException("Output too small for a " + xs.length + "x" + ys.length + " grid");
+        }
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int rowsPerTask = Math.max(1, taskRows(xs.length * ys.length, pool.getParallelism()) / Math.max(1, xs.length));
+        pool.invoke(new GridTask(expression, xSlot, ySlot, xs, ys, variables, out, 0, ys.length, rowsPerTask));
+    }
+
+    /**
+     * Returns the number of rows each task should evaluate, aiming for a few tasks per thread.
+     *
+     * @param rows The total number of rows.
+     * @param parallelism The number of threads available.
+     * @return The number of rows per task.
+     */
+    private static int taskRows(int rows, int parallelism) {
+        return Math.max(MIN_TASK_ROWS, rows / (Math.max(1, parallelism) * 4) + 1);
+    }
+
+    /**
+     * This class represents the evaluation of a range of rows, split in half until it is small enough.
+     */
+    private static class RowTask extends RecursiveAction {
+
+        /**
+         * The version of the serialized form, which RecursiveAction inherits from Serializable.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The compiled expression.
+         */
+        private final CompiledExpression expression;
+
+        /**
+         * The values of the variables, indexed by slot and then by row.
+         */
+        private final double[][] columns;
+
+        /**
+         * The array the result of each row is written to.
+         */
+        private final double[] out;
+
+        /**
+         * The first row of the range.
+         */
+        private final int from;
+
+        /**
+         * The row after the last one of the range.
+         */
+        private final int to;
+
+        /**
+         * The largest number of rows evaluated without splitting the range.
+         */
+        private final int threshold;
+
+        /**
+         * Constructs a new task for a range of rows.
+         *
+         * @param expression The compiled expression.
+         * @param columns The values of the variables, indexed by slot and then by row.
+         * @param out The array the result of each row is written to.
+         * @param from The first row of the range.
+         * @param to The row after the last one of the range.
+         * @param threshold The largest number of rows evaluated without splitting the range.
+         */
+        RowTask(CompiledExpression expression, double[][] columns, double[] out, int from, int to, int threshold) {
+            this.expression = expression;
+            this.columns = columns;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        /**
+         * Evaluates the range, or splits it in half and evaluates both halves in parallel if it is too large.
+         */
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                BatchEvaluator.evaluate(expression, columns, out, from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RowTask(expression, columns, out, from, middle, threshold),
+                        new RowTask(expression, columns, out, middle, to, threshold));
+            }
+        }
+    }
+
+    /**
+     * This class represents the evaluation of a range of grid rows, split in half until it is small enough.
+     * Each leaf builds its own columns: the x coordinates are shared, and the y coordinate and the other
+     * variables are filled in per grid row.
+     */
+    private static class GridTask extends RecursiveAction {
+
+        /**
+         * The version of the serialized form, which RecursiveAction inherits from Serializable.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The compiled expression.
+         */
+        private final CompiledExpression expression;
+
+        /**
+         * The slot of the variable taking the x coordinates.
+         */
+        private final int xSlot;
+
+        /**
+         * The slot of the variable taking the y coordinates.
+         */
+        private final int ySlot;
+
+        /**
+         * The x coordinates of the grid.
+         */
+        private final double[] xs;
+
+        /**
+         * The y coordinates of the grid.
+         */
+        private final double[] ys;
+
+        /**
+         * The values of the other variables, indexed by slot.
+         */
+        private final double[] variables;
+
+        /**
+         * The array the results are written to.
+         */
+        private final double[] out;
+
+        /**
+         * The first grid row of the range.
+         */
+        private final int fromRow;
+
+        /**
+         * The grid row after the last one of the range.
+         */
+        private final int toRow;
+
+        /**
+         * The largest number of grid rows evaluated without splitting the range.
+         */
+        private final int rowsPerTask;
+
+        /**
+         * Constructs a new task for a range of grid rows.
+         *
+         * @param expression The compiled expression.
+         * @param xSlot The slot of the variable taking the x coordinates.
+         * @param ySlot The slot of the variable taking the y coordinates.
+         * @param xs The x coordinates of the grid.
+         * @param ys The y coordinates of the grid.
+         * @param variables The values of the other variables, indexed by slot.
+         * @param out The array the results are written to.
+         * @param fromRow The first grid row of the range.
+         * @param toRow The grid row after the last one of the range.
+         * @param rowsPerTask The largest number of grid rows evaluated without splitting the range.
+         */
+        GridTask(CompiledExpression expression, int xSlot, int ySlot, double[] xs, double[] ys, double[] variables,
+                 double[] out, int fromRow, int toRow, int rowsPerTask) {
+            this.expression = expression;
+            this.xSlot = xSlot;
+            this.ySlot = ySlot;
+            this.xs = xs;
+            this.ys = ys;
+            this.variables = variables;
+            this.out = out;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.rowsPerTask = rowsPerTask;
+        }
+
+        /**
+         * Evaluates the grid rows of the range, or splits it in half and evaluates both halves in parallel
+         * if it is too large.
+         */
+        @Override
+        protected void compute() {
+            if (toRow - fromRow > rowsPerTask) {
+                int middle = (fromRow + toRow) >>> 1;
+                invokeAll(new GridTask(expression, xSlot, ySlot, xs, ys, variables, out, fromRow, middle, rowsPerTask),
+                        new GridTask(expression, xSlot, ySlot, xs, ys, variables, out, middle, toRow, rowsPerTask));
+                return;
+            }
+            double[][] columns = new double[expression.getLayout().size()][];
+            for (int slot = 0; slot < columns.length; slot++) {
+                if (slot == xSlot) {
+                    columns[slot] = xs;
+                } else {
+                    columns[slot] = new double[xs.length];
+                    if (slot != ySlot) {
+                        Arrays.fill(columns[slot], variables[slot]);
+                    }
+                }
+            }
+            for (int row = fromRow; row < toRow; row++) {
+                if (ySlot >= 0 && ySlot < columns.length) {
+                    Arrays.fill(columns[ySlot], ys[row]);
+                }
+                BatchEvaluator.evaluate(expression, columns, 0, out, row * xs.length, xs.length);
+            }
+        }
+    }
+}
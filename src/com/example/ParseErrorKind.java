@@ -0,0 +1,14 @@
+package com.example;
+
+/**
+ * This enum lists the kinds of errors found when validating or parsing an expression.
+ */
+public enum ParseErrorKind {
+    INVALID_CHARACTER,
+    INVALID_NUMBER,
+    MISSING_OPERAND,
+    UNEXPECTED_TOKEN,
+    MISSING_LEFT_PAREN,
+    MISSING_RIGHT_PAREN,
+    WRONG_ARGUMENT_COUNT
+}
@@ -0,0 +1,42 @@
+package com.example;
+
+/**
+ * This interface receives the elements of an expression from a Parser in postfix order:
+ * the operands of every operator and the arguments of every function call are reported before it.
+ * This lets a parser build representations other than a tree of Node objects without creating nodes first.
+ */
+public interface ParseListener {
+
+    /**
+     * Receives a number literal.
+     *
+     * @param value The value of the number.
+     * @throws Exception If the listener rejects the number.
+     */
+    void number(double value) throws Exception;
+
+    /**
+     * Receives a variable.
+     *
+     * @param name The name of the variable.
+     * @throws Exception If the listener rejects the variable.
+     */
+    void variable(String name) throws Exception;
+
+    /**
+     * Receives a function call, after all of its arguments.
+     *
+     * @param name The name of the function.
+     * @param argumentCount The number of arguments of the call.
+     * @throws Exception If the listener rejects the call.
+     */
+    void function(String name, int argumentCount) throws Exception;
+
+    /**
+     * Receives a binary operator, after both of its operands.
+     *
+     * @param operator The operator: '+', '-', '*', '/' or '^'.
+     * @throws Exception If the listener rejects the operator.
+     */
+    void operator(char operator) throws Exception;
+}
@@ -1,19 +1,65 @@
 package com.example;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
 /**
  * This class is responsible for parsing an expression represented as a list of tokens into an expression tree.
+ * It can also read its tokens straight from a Lexer, in which case no token objects are created
+ * and number literals are passed to the tree as primitive doubles.
+ * The parser reports the elements of the expression to a ParseListener in postfix order; parse() uses a
+ * NodeBuilder to build a tree of Node objects, and other listeners can build other representations directly.
+ * Parsing is iterative, so the depth of the expression is limited only by the heap. The tree evaluator, the
+ * ExpressionCompiler, FreeVariables and CompactExpression handle trees of any depth too; the optimizing passes
+ * and the other compilers are still recursive and meant for trees of ordinary depth.
+ * Errors are recorded in a ValidationResult rather than thrown, and parsing continues after them, so validate()
+ * lists every error without throwing; the parse methods throw an exception describing the first one.
  */
 public class Parser {
 
     /**
-     * The list of tokens representing the expression to be parsed.
+     * The stack entry of an open parenthesis.
+     */
+    private static final char PARENTHESIS = '(';
+
+    /**
+     * The stack entry of an open function call.
+     */
+    private static final char FUNCTION_CALL = 'f';
+
+    /**
+     * A listener that ignores every element, used when validating and after the first error.
+     */
+    private static final ParseListener IGNORE = new ParseListener() {
+        @Override
+        public void number(double value) {
+        }
+
+        @Override
+        public void variable(String name) {
+        }
+
+        @Override
+        public void function(String name, int argumentCount) {
+        }
+
+        @Override
+        public void operator(char operator) {
+        }
+    };
+
+    /**
+     * The list of tokens representing the expression to be parsed, or null when reading from a lexer.
      */
     private List<Token> tokens;
 
+    /**
+     * The lexer the tokens are read from, or null when parsing a list of tokens.
+     */
+    private Lexer lexer;
+
     /**
      * The index of the current token being parsed.
      */
@@ -25,9 +71,44 @@ public class Parser {
     private Map<String, Double> variables;
 
     /**
-     * A map of functions in the expression to their respective implementations.
+     * The functions that can be called from the expression.
+     */
+    private FunctionRegistry functions;
+
+    /**
+     * The listener the elements of the expression are reported to, or IGNORE once an error has been found.
+     */
+    private ParseListener listener;
+
+    /**
+     * The result the errors found are added to.
+     */
+    private ValidationResult result;
+
+    /**
+     * The operators, open parentheses and open function calls waiting to be completed, innermost last.
+     */
+    private char[] stack;
+
+    /**
+     * The name of the function of each open function call on the stack.
+     */
+    private String[] names;
+
+    /**
+     * The number of arguments read so far by each open function call on the stack.
+     */
+    private int[] argumentCounts;
+
+    /**
+     * The position of the function name of each open function call on the stack.
      */
-    private Map<String, Function<Double, Double>> functions;
+    private int[] callPositions;
+
+    /**
+     * The number of entries on the stack.
+     */
+    private int stackSize;
 
     /**
      * Constructs a new parser with the given tokens, variables, and functions.
@@ -38,121 +119,382 @@ public class Parser {
      * @param functions A map of functions in the expression to their respective implementations.
      */
     public Parser(List<Token> tokens, Map<String, Double> variables, Map<String, Function<Double, Double>> functions) {
+        this(tokens, variables, FunctionRegistry.of(functions));
+    }
+
+    /**
+     * Constructs a new parser with the given tokens, variables, and function registry.
+     * The current index is initially set to 0.
+     *
+     * @param tokens The list of tokens representing the expression to be parsed.
+     * @param variables A map of variables in the expression to their respective values.
+     * @param functions The functions that can be called from the expression.
+     */
+    public Parser(List<Token> tokens, Map<String, Double> variables, FunctionRegistry functions) {
         this.tokens = tokens;
         this.variables = variables;
         this.functions = functions;
         this.current = 0;
     }
 
+    /**
+     * Constructs a new parser reading its tokens from the given lexer, with the given variables and functions.
+     *
+     * @param lexer The lexer positioned before the first token of the expression to be parsed.
+     * @param variables A map of variables in the expression to their respective values.
+     * @param functions A map of functions in the expression to their respective implementations.
+     */
+    public Parser(Lexer lexer, Map<String, Double> variables, Map<String, Function<Double, Double>> functions) {
+        this(lexer, variables, FunctionRegistry.of(functions));
+    }
+
+    /**
+     * Constructs a new parser reading its tokens from the given lexer, with the given variables and function registry.
+     *
+     * @param lexer The lexer positioned before the first token of the expression to be parsed.
+     * @param variables A map of variables in the expression to their respective values.
+     * @param functions The functions that can be called from the expression.
+     */
+    public Parser(Lexer lexer, Map<String, Double> variables, FunctionRegistry functions) {
+        this.lexer = lexer;
+        this.variables = variables;
+        this.functions = functions;
+        this.current = 0;
+    }
+
     /**
      * Parses the expression represented by the list of tokens and returns the root node of the resulting expression tree.
      *
      * @return The root node of the expression tree.
-     * @throws Exception If there is an error during parsing.
+     * @throws Exception If there is an error in the expression. The message describes the first error found.
      */
     public Node parse() throws Exception {
-        return expression();
+        NodeBuilder builder = new NodeBuilder();
+        parse(builder);
+        return builder.getRoot();
     }
 
     /**
-     * Parses an expression, which is a sequence of terms separated by addition or subtraction operators.
+     * Parses the expression represented by the list of tokens and reports its elements to the given listener in postfix order.
      *
-     * @return The root node of the subtree representing the expression.
-     * @throws Exception If there is an error during parsing.
+     * @param listener The listener the elements of the expression are reported to.
+     * @throws Exception If there is an error in the expression, or the listener rejects an element.
      */
-    private Node expression() throws Exception {
-        Node result = term();
-        while (current < tokens.size() && (tokens.get(current).getType() == TokenType.OPERATOR &&
-                ("+".equals(tokens.get(current).getValue()) || "-".equals(tokens.get(current).getValue())))) {
-            Token operator = tokens.get(current++);
-            Node right = term();
-            Node parent = new Node(operator.getValue(), NodeType.OPERATOR);
-            parent.addChild(result);
-            parent.addChild(right);
-            result = parent;
+    public void parse(ParseListener listener) throws Exception {
+        ValidationResult result = new ValidationResult();
+        parse(listener, result);
+        if (!result.isValid()) {
+            throw new Exception(result.getMessage(0));
         }
-        return result;
     }
 
     /**
-     * Parses a term, which is a sequence of powers separated by multiplication or division operators.
+     * Parses the expression and records every error in the given result instead of throwing.
+     * After an error the rest of the expression is still parsed, assuming the smallest repair that lets
+     * parsing continue, so that later errors are reported as well.
      *
-     * @return The root node of the subtree representing the term.
-     * @throws Exception If there is an error during parsing.
+     * @param result The result the errors are added to.
+     * @return Whether the expression is valid.
      */
-    private Node term() throws Exception {
-        Node result = power();
-        while (current < tokens.size() && (tokens.get(current).getType() == TokenType.OPERATOR &&
-                ("*".equals(tokens.get(current).getValue()) || "/".equals(tokens.get(current).getValue())))) {
-            Token operator = tokens.get(current++);
-            Node right = power();
-            Node parent = new Node(operator.getValue(), NodeType.OPERATOR);
-            parent.addChild(result);
-            parent.addChild(right);
-            result = parent;
+    public boolean validate(ValidationResult result) {
+        try {
+            parse(IGNORE, result);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
         }
-        return result;
+        return result.isValid();
     }
 
     /**
-     * Parses a power, which is a factor raised to another factor.
+     * Parses the expression, reporting its elements to the listener until the first error and recording every
+     * error in the result. The whole expression is always read, so that invalid characters are reported.
      *
-     * @return The root node of the subtree representing the power.
-     * @throws Exception If there is an error during parsing.
+     * @param listener The listener the elements of the expression are reported to.
+     * @param result The result the errors are added to.
+     * @throws Exception If the listener rejects an element.
      */
-    private Node power() throws Exception {
-        Node result = factor();
-        while (current < tokens.size() && tokens.get(current).getType() == TokenType.OPERATOR &&
-                "^".equals(tokens.get(current).getValue())) {
-            Token operator = tokens.get(current++);
-            Node right = factor();
-            Node parent = new Node(operator.getValue(), NodeType.OPERATOR);
-            parent.addChild(result);
-            parent.addChild(right);
-            result = parent;
+    private void parse(ParseListener listener, ValidationResult result) throws Exception {
+        this.listener = listener;
+        this.result = result;
+        this.stack = new char[16];
+        this.names = new String[16];
+        this.argumentCounts = new int[16];
+        this.callPositions = new int[16];
+        if (lexer != null) {
+            lexer.scan();
+            skipInvalid();
         }
-        return result;
+        expression();
     }
 
     /**
-     * Parses a factor, which can be a number, a variable or function, or an expression enclosed in parentheses.
+     * Parses an expression with operator-precedence parsing over an explicit stack, so that neither long nor deeply
+     * nested expressions use more than a constant amount of the call stack. Operands are reported to the listener as
+     * soon as they are read; operators, opening parentheses and function calls wait on the stack until an operator of
+     * lower precedence, a comma or a closing parenthesis completes them. + and - bind loosest, then * and /, and ^
+     * binds tightest and is right-associative.
      *
-     * @return The root node of the subtree representing the factor.
-     * @throws Exception If there is an error during parsing.
+     * @throws Exception If the listener rejects an element.
      */
-    private Node factor() throws Exception {
-        Node result;
-        if (tokens.get(current).getType() == TokenType.NUMBER) {
-            result = new Node(tokens.get(current++).getValue(), NodeType.NUMBER);
-        } else if (tokens.get(current).getType() == TokenType.VARIABLE_OR_FUNCTION) {
-            String name = tokens.get(current++).getValue();
-            if (functions.containsKey(name)) {
-                if (tokens.get(current).getType() != TokenType.LEFT_PAREN) {
-                    throw new Exception("Expected '(' after function name: " + name);
+    private void expression() throws Exception {
+        stackSize = 0;
+        boolean expectOperand = true;
+        while (true) {
+            TokenType type = peekType();
+            if (expectOperand) {
+                expectOperand = false;
+                if (type == TokenType.NUMBER) {
+                    number();
+                    advance();
+                } else if (type == TokenType.VARIABLE_OR_FUNCTION) {
+                    int position = position();
+                    String name = peekText();
+                    advance();
+                    if (functions.get(name) == null) {
+                        listener.variable(name);
+                    } else if (peekType() != TokenType.LEFT_PAREN) {
+                        error(ParseErrorKind.MISSING_LEFT_PAREN, "'('", "Expected '(' after function name: " + name);
+                    } else {
+                        advance();
+                        push(FUNCTION_CALL, name, position);
+                        expectOperand = true;
+                    }
+                } else if (type == TokenType.LEFT_PAREN) {
+                    advance();
+                    push(PARENTHESIS, null, 0);
+                    expectOperand = true;
+                } else {
+                    error(ParseErrorKind.MISSING_OPERAND, "operand", "Unexpected token: " + currentToken());
+                    if (type == TokenType.EOF) {
+                        break;
+                    }
                 }
-                current++;
-                Node argument = expression();
-                if (tokens.get(current).getType() != TokenType.RIGHT_PAREN) {
-                    throw new Exception("Expected ')' after function argument");
+            } else if (type == TokenType.OPERATOR && precedence(peekChar()) > 0) {
+                char operator = peekChar();
+                int precedence = precedence(operator);
+                while (stackSize > 0 && precedence(stack[stackSize - 1]) > 0
+                        && (precedence(stack[stackSize - 1]) > precedence
+                        || (precedence(stack[stackSize - 1]) == precedence && operator != '^'))) {
+                    listener.operator(stack[--stackSize]);
                 }
-                current++;
-                Node function = new Node(name, NodeType.VARIABLE_OR_FUNCTION);
-                function.addChild(argument);
-                result = function;
+                advance();
+                push(operator, null, 0);
+                expectOperand = true;
+            } else if (type == TokenType.COMMA) {
+                if (reduceOperators() && stack[stackSize - 1] == FUNCTION_CALL) {
+                    argumentCounts[stackSize - 1]++;
+                } else if (stackSize > 0) {
+                    error(ParseErrorKind.MISSING_RIGHT_PAREN, "')'", "Expected ')'");
+                } else {
+                    error(ParseErrorKind.UNEXPECTED_TOKEN, "operator", "Unexpected token: " + currentToken());
+                }
+                advance();
+                expectOperand = true;
+            } else if (type == TokenType.RIGHT_PAREN) {
+                if (reduceOperators()) {
+                    stackSize--;
+                    if (stack[stackSize] == FUNCTION_CALL) {
+                        finishCall(names[stackSize], argumentCounts[stackSize], callPositions[stackSize]);
+                    }
+                } else {
+                    error(ParseErrorKind.UNEXPECTED_TOKEN, "operator", "Unexpected token: " + currentToken());
+                }
+                advance();
+            } else if (type == TokenType.EOF) {
+                break;
             } else {
-                Node variable = new Node(name, NodeType.VARIABLE_OR_FUNCTION);
-                result = variable;
+                error(ParseErrorKind.UNEXPECTED_TOKEN, "operator", "Unexpected token: " + currentToken());
+                expectOperand = true;
             }
-        } else if (tokens.get(current).getType() == TokenType.LEFT_PAREN) {
-            current++;
-            result = expression();
-            if (tokens.get(current).getType() != TokenType.RIGHT_PAREN) {
-                throw new Exception("Expected ')'");
-            }
-            current++;
+        }
+        while (reduceOperators()) {
+            stackSize--;
+            error(ParseErrorKind.MISSING_RIGHT_PAREN, "')'",
+                    stack[stackSize] == FUNCTION_CALL ? "Expected ')' after function argument" : "Expected ')'");
+        }
+    }
+
+    /**
+     * Reports the operators on top of the stack, down to the innermost open parenthesis or function call.
+     *
+     * @return Whether a parenthesis or function call is still open.
+     * @throws Exception If the listener rejects an operator.
+     */
+    private boolean reduceOperators() throws Exception {
+        while (stackSize > 0 && precedence(stack[stackSize - 1]) > 0) {
+            listener.operator(stack[--stackSize]);
+        }
+        return stackSize > 0;
+    }
+
+    /**
+     * Checks the number of arguments of a completed function call and reports the call.
+     *
+     * @param name The name of the function.
+     * @param count The number of arguments of the call.
+     * @param position The position of the function name.
+     * @throws Exception If the listener rejects the call.
+     */
+    private void finishCall(String name, int count, int position) throws Exception {
+        ExpressionFunction definition = functions.get(name);
+        if (!definition.accepts(count)) {
+            String arity = definition.getArity() == ExpressionFunction.VARIADIC ? "at least 1" : String.valueOf(definition.getArity());
+            result.add(ParseErrorKind.WRONG_ARGUMENT_COUNT, position, arity + " arguments",
+                    "Function " + name + " expects " + arity + " arguments, got " + count);
+            listener = IGNORE;
+        }
+        listener.function(name, count);
+    }
+
+    /**
+     * Pushes an operator, an open parenthesis or an open function call onto the stack.
+     *
+     * @param entry The operator character, PARENTHESIS or FUNCTION_CALL.
+     * @param name The name of the function for a function call, or null.
+     * @param position The position of the function name for a function call.
+     */
+    private void push(char entry, String name, int position) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+            names = Arrays.copyOf(names, stackSize * 2);
+            argumentCounts = Arrays.copyOf(argumentCounts, stackSize * 2);
+            callPositions = Arrays.copyOf(callPositions, stackSize * 2);
+        }
+        stack[stackSize] = entry;
+        names[stackSize] = name;
+        argumentCounts[stackSize] = 1;
+        callPositions[stackSize] = position;
+        stackSize++;
+    }
+
+    /**
+     * Records an error at the current token and stops reporting elements to the listener, since the elements
+     * after an error no longer form a valid expression.
+     *
+     * @param kind The kind of the error.
+     * @param expected What was expected at the current token.
+     * @param message The message of the error.
+     */
+    private void error(ParseErrorKind kind, String expected, String message) {
+        result.add(kind, position(), expected, message);
+        listener = IGNORE;
+    }
+
+    /**
+     * Returns the precedence of a binary operator.
+     *
+     * @param operator The operator character.
+     * @return 1 for + and -, 2 for * and /, 3 for ^, and 0 for anything else.
+     */
+    private static int precedence(char operator) {
+        switch (operator) {
+            case '+':
+            case '-':
+                return 1;
+            case '*':
+            case '/':
+                return 2;
+            case '^':
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Reports the current number token to the listener, converting its text to a value when reading a token list.
+     *
+     * @throws Exception If the listener rejects the number.
+     */
+    private void number() throws Exception {
+        if (lexer != null) {
+            listener.number(lexer.getNumber());
+            return;
+        }
+        String text = tokens.get(current).getValue();
+        try {
+            listener.number(Double.parseDouble(text));
+        } catch (NumberFormatException e) {
+            error(ParseErrorKind.INVALID_NUMBER, "number", "Invalid number: " + text);
+        }
+    }
+
+    /**
+     * Returns the position of the current token.
+     *
+     * @return The character offset of the current token, or its index when reading a token list.
+     */
+    private int position() {
+        return lexer != null ? lexer.getStart() : current;
+    }
+
+    /**
+     * Returns the current token as a Token object, for error messages.
+     *
+     * @return The current token.
+     */
+    private Token currentToken() {
+        if (lexer != null) {
+            return lexer.toToken();
+        }
+        return current < tokens.size() ? tokens.get(current) : new Token("", TokenType.EOF);
+    }
+
+    /**
+     * Returns the type of the current token.
+     *
+     * @return The type of the current token, or EOF past the end of the tokens.
+     */
+    private TokenType peekType() {
+        if (lexer != null) {
+            return lexer.getType();
+        }
+        return current < tokens.size() ? tokens.get(current).getType() : TokenType.EOF;
+    }
+
+    /**
+     * Returns the first character of the current token, which identifies operators without comparing strings.
+     *
+     * @return The first character of the current token.
+     */
+    private char peekChar() {
+        if (lexer != null) {
+            return lexer.getChar();
+        }
+        String value = tokens.get(current).getValue();
+        return value.isEmpty() ? 0 : value.charAt(0);
+    }
+
+    /**
+     * Returns the text of the current token.
+     *
+     * @return The text of the current token.
+     */
+    private String peekText() {
+        return lexer != null ? lexer.getText() : tokens.get(current).getValue();
+    }
+
+    /**
+     * Moves to the next token, recording and skipping invalid characters and numbers.
+     */
+    private void advance() {
+        if (lexer != null) {
+            lexer.scan();
+            skipInvalid();
         } else {
-            throw new Exception("Unexpected token: " + tokens.get(current));
+            current++;
+        }
+    }
+
+    /**
+     * Records and skips invalid tokens until the lexer is on a valid token.
+     */
+    private void skipInvalid() {
+        while (lexer.getType() == TokenType.INVALID) {
+            boolean number = Character.isDigit(lexer.getChar());
+            error(number ? ParseErrorKind.INVALID_NUMBER : ParseErrorKind.INVALID_CHARACTER,
+                    number ? "number" : "token", lexer.getError());
+            lexer.scan();
         }
-        return result;
     }
 }
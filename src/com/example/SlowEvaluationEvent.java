@@ -0,0 +1,38 @@
+package com.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * This class represents a Flight Recorder event emitted by ExpressionMetrics when evaluating an expression tree
+ * takes at least the slow threshold.
+ */
+@Name("com.example.SlowEvaluation")
+@Label("Slow Expression Evaluation")
+@Category("Expressions")
+@Description("An expression tree whose evaluation took at least the configured threshold")
+class SlowEvaluationEvent extends Event {
+
+    /**
+     * The number of nodes in the expression tree.
+     */
+    @Label("Nodes")
+    int nodes;
+
+    /**
+     * The time the evaluation took.
+     */
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+
+    /**
+     * The value the expression evaluated to.
+     */
+    @Label("Result")
+    double result;
+}
@@ -0,0 +1,50 @@
+package com.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * This class represents a Flight Recorder event emitted by ExpressionMetrics when tokenizing or parsing an expression
+ * takes at least the slow threshold.
+ */
+@Name("com.example.SlowParse")
+@Label("Slow Expression Parse")
+@Category("Expressions")
+@Description("An expression whose tokenizing or parsing took at least the configured threshold")
+class SlowParseEvent extends Event {
+
+    /**
+     * The phase that was slow, TOKENIZE or PARSE.
+     */
+    @Label("Phase")
+    String phase;
+
+    /**
+     * The text of the expression.
+     */
+    @Label("Expression")
+    String expression;
+
+    /**
+     * The time the phase took.
+     */
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+
+    /**
+     * The number of tokens in the expression.
+     */
+    @Label("Tokens")
+    int tokens;
+
+    /**
+     * The number of nodes in the expression tree, or 0 when only tokenizing.
+     */
+    @Label("Nodes")
+    int nodes;
+}
@@ -7,5 +7,6 @@ public enum TokenType {
     LEFT_PAREN,
     RIGHT_PAREN,
     COMMA,
+    INVALID,
     EOF
 }
@@ -5,28 +5,29 @@ import java.util.List;
 
 /**
  * This class is responsible for tokenizing an expression into a list of tokens.
+ * It collects the tokens read by a Lexer; callers that do not need a list should use the Lexer directly.
+ * Tokenizing is measured by ExpressionMetrics as the TOKENIZE phase when instrumentation is on.
  */
 public class Tokenizer {
 
     /**
-     * The expression to be tokenized.
+     * The lexer reading the expression.
      */
-    private String expression;
+    private Lexer lexer;
 
     /**
-     * The current position in the expression being tokenized.
+     * The expression being tokenized.
      */
-    private int position;
+    private String expression;
 
     /**
      * Constructs a new tokenizer with the given expression.
-     * The current position is initially set to 0.
      *
      * @param expression The expression to be tokenized.
      */
     public Tokenizer(String expression) {
+        this.lexer = new Lexer(expression);
         this.expression = expression;
-        this.position = 0;
     }
 
     /**
@@ -36,73 +37,33 @@ public class Tokenizer {
      * @throws Exception If there is an error during tokenization.
      */
     public List<Token> tokenize() throws Exception {
-        List<Token> tokens = new ArrayList<>();
-        while (position < expression.length()) {
-            char ch = expression.charAt(position);
-            if (Character.isWhitespace(ch)) {
-                position++;
-            } else if (Character.isDigit(ch)) {
-                tokens.add(readNumber());
-            } else if (ch == '+' || ch == '-' || ch == '*' || ch == '/' || ch == '^') {
-                tokens.add(new Token(ch + "", TokenType.OPERATOR));
-                position++;
-            } else if (ch == '(') {
-                tokens.add(new Token("(", TokenType.LEFT_PAREN));
-                position++;
-            } else if (ch == ')') {
-                tokens.add(new Token(")", TokenType.RIGHT_PAREN));
-                position++;
-            } else if (ch == ',') {
-                tokens.add(new Token(",", TokenType.COMMA));
-                position++;
-            } else {
-                tokens.add(readVariableOrFunction());
-            }
-        }
-        tokens.add(new Token("", TokenType.EOF));
-        return tokens;
-    }
-
-    /**
-     * Reads a number from the expression and returns a token representing it.
-     *
-     * @return A token representing the number.
-     * @throws Exception If there is an error during reading.
-     */
-    private Token readNumber() throws Exception {
-        StringBuilder builder = new StringBuilder();
-        while (position < expression.length() && Character.isDigit(expression.charAt(position))) {
-            builder.append(expression.charAt(position++));
-        }
-        if (position < expression.length() && expression.charAt(position) == '.') {
-            builder.append(expression.charAt(position++));
-            while (position < expression.length() && Character.isDigit(expression.charAt(position))) {
-                builder.append(expression.charAt(position++));
-            }
+        if (!ExpressionMetrics.isEnabled()) {
+            return readTokens();
         }
+        long start = System.nanoTime();
+        List<Token> tokens;
         try {
-            double value = Double.parseDouble(builder.toString());
-            return new Token(value + "", TokenType.NUMBER);
-        } catch (NumberFormatException e) {
-            throw new Exception("Invalid number: " + builder.toString());
+            tokens = readTokens();
+        } catch (Exception e) {
+            ExpressionMetrics.recordFailure(MetricsPhase.TOKENIZE);
+            throw e;
         }
+        ExpressionMetrics.recordTokenize(expression, start, tokens.size() - 1);
+        return tokens;
     }
 
     /**
-     * Reads a variable or function name from the expression and returns a token representing it.
+     * Reads every token of the expression into a list ending with an EOF token.
      *
-     * @return A token representing the variable or function name.
-     * @throws Exception If there is an error during reading.
+     * @return A list of tokens representing the expression.
+     * @throws Exception If there is an error during tokenization.
      */
-    private Token readVariableOrFunction() throws Exception {
-        StringBuilder builder = new StringBuilder();
-        while (position < expression.length() && Character.isLetter(expression.charAt(position))) {
-            builder.append(expression.charAt(position++));
-        }
-        String name = builder.toString();
-        if (name.isEmpty()) {
-            throw new Exception("Unexpected character: " + expression.charAt(position));
+    private List<Token> readTokens() throws Exception {
+        List<Token> tokens = new ArrayList<>();
+        while (lexer.next() != TokenType.EOF) {
+            tokens.add(lexer.toToken());
         }
-        return new Token(name, TokenType.VARIABLE_OR_FUNCTION);
+        tokens.add(new Token("", TokenType.EOF));
+        return tokens;
     }
 }
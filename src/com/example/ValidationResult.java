@@ -0,0 +1,166 @@
+package com.example;
+
+import java.util.Arrays;
+
+/**
+ * This class represents the errors found while validating an expression. Each error has a position in the
+ * expression, a kind, a description of what was expected there, and a message.
+ * Errors are kept in arrays that grow as needed and are kept by reset, so a single result can be reused
+ * to validate many expressions without allocating for each one.
+ */
+public class ValidationResult {
+
+    /**
+     * The number of errors recorded.
+     */
+    private int count;
+
+    /**
+     * The position of each error: a character offset for expressions read by a Lexer, or a token index for token lists.
+     */
+    private int[] positions;
+
+    /**
+     * The kind of each error.
+     */
+    private ParseErrorKind[] kinds;
+
+    /**
+     * What was expected at the position of each error.
+     */
+    private String[] expected;
+
+    /**
+     * The message of each error.
+     */
+    private String[] messages;
+
+    /**
+     * Constructs a new result without errors.
+     */
+    public ValidationResult() {
+        this.positions = new int[4];
+        this.kinds = new ParseErrorKind[4];
+        this.expected = new String[4];
+        this.messages = new String[4];
+    }
+
+    /**
+     * Removes every error, so that the result can be used for another expression.
+     */
+    public void reset() {
+        Arrays.fill(expected, 0, count, null);
+        Arrays.fill(messages, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * Records an error.
+     *
+     * @param kind The kind of the error.
+     * @param position The position of the error.
+     * @param expectation What was expected at the position.
+     * @param message The message of the error.
+     */
+    void add(ParseErrorKind kind, int position, String expectation, String message) {
+        if (count == positions.length) {
+            positions = Arrays.copyOf(positions, count * 2);
+            kinds = Arrays.copyOf(kinds, count * 2);
+            expected = Arrays.copyOf(expected, count * 2);
+            messages = Arrays.copyOf(messages, count * 2);
+        }
+        positions[count] = position;
+        kinds[count] = kind;
+        expected[count] = expectation;
+        messages[count] = message;
+        count++;
+    }
+
+    /**
+     * Returns whether no errors were found.
+     *
+     * @return True if the expression is valid.
+     */
+    public boolean isValid() {
+        return count == 0;
+    }
+
+    /**
+     * Returns the number of errors found.
+     *
+     * @return The number of errors.
+     */
+    public int getErrorCount() {
+        return count;
+    }
+
+    /**
+     * Returns the position of an error.
+     *
+     * @param index The index of the error, in the order the errors were found.
+     * @return The character offset of the error, or its token index for token lists.
+     */
+    public int getPosition(int index) {
+        checkIndex(index);
+        return positions[index];
+    }
+
+    /**
+     * Returns the kind of an error.
+     *
+     * @param index The index of the error, in the order the errors were found.
+     * @return The kind of the error.
+     */
+    public ParseErrorKind getKind(int index) {
+        checkIndex(index);
+        return kinds[index];
+    }
+
+    /**
+     * Returns what was expected at the position of an error, such as "')'" or "operand".
+     *
+     * @param index The index of the error, in the order the errors were found.
+     * @return A description of the expected token.
+     */
+    public String getExpected(int index) {
+        checkIndex(index);
+        return expected[index];
+    }
+
+    /**
+     * Returns the message of an error.
+     *
+     * @param index The index of the error, in the order the errors were found.
+     * @return The message of the error.
+     */
+    public String getMessage(int index) {
+        checkIndex(index);
+        return messages[index];
+    }
+
+    /**
+     * Checks that an error index is in range.
+     *
+     * @param index The index of the error.
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Error " + index + " of " + count);
+        }
+    }
+
+    /**
+     * Returns a string representation of the result, listing every error with its position.
+     *
+     * @return A string representation of the result.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ValidationResult{");
+        for (int i = 0; i < count; i++) {
+            builder.append(i == 0 ? "" : ", ").append(kinds[i]).append('@').append(positions[i])
+                    .append(": ").append(messages[i]);
+        }
+        return builder.append('}').toString();
+    }
+}
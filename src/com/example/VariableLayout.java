@@ -0,0 +1,119 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents the assignment of variable names to integer slots.
+ * A compiled expression reads its variables from a double array indexed by these slots,
+ * so names are resolved once at compile time instead of on every evaluation.
+ */
+public class VariableLayout {
+
+    /**
+     * The names of the variables, indexed by slot.
+     */
+    private List<String> names;
+
+    /**
+     * The slot of each variable name.
+     */
+    private Map<String, Integer> slots;
+
+    /**
+     * Constructs a new layout with the given variable names, assigned to slots in the order they are given.
+     *
+     * @param names The names of the variables.
+     */
+    public VariableLayout(String... names) {
+        this.names = new ArrayList<>();
+        this.slots = new HashMap<>();
+        for (String name : names) {
+            addVariable(name);
+        }
+    }
+
+    /**
+     * Returns the slot of the given variable, adding it to the end of the layout if it is not present yet.
+     *
+     * @param name The name of the variable.
+     * @return The slot of the variable.
+     */
+    int addVariable(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            slot = names.size();
+            names.add(name);
+            slots.put(name, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the slot of the given variable.
+     *
+     * @param name The name of the variable.
+     * @return The slot of the variable, or -1 if the variable is not part of the layout.
+     */
+    public int slotOf(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Returns the name of the variable in the given slot.
+     *
+     * @param slot The slot of the variable.
+     * @return The name of the variable.
+     */
+    public String nameAt(int slot) {
+        return names.get(slot);
+    }
+
+    /**
+     * Returns the number of slots in the layout.
+     *
+     * @return The number of slots in the layout.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Returns a new array of variable values with one element per slot.
+     *
+     * @return A new array of variable values.
+     */
+    public double[] newValues() {
+        return new double[names.size()];
+    }
+
+    /**
+     * Copies the values of the variables in the given map into their slots.
+     *
+     * @param variables A map of variables to their respective values.
+     * @param values The array of variable values to be filled, indexed by slot.
+     * @throws Exception If a variable of the layout is not defined in the map.
+     */
+    public void bind(Map<String, Double> variables, double[] values) throws Exception {
+        for (int slot = 0; slot < names.size(); slot++) {
+            Double value = variables.get(names.get(slot));
+            if (value == null) {
+                throw new Exception("Variable not defined: " + names.get(slot));
+            }
+            values[slot] = value;
+        }
+    }
+
+    /**
+     * Returns a string representation of the layout.
+     *
+     * @return A string representation of the layout.
+     */
+    @Override
+    public String toString() {
+        return "VariableLayout" + names;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This interface represents a source of values for the variables an expression uses but that were not bound.
+ * Before evaluation, the evaluator finds every free variable of the tree and passes all of the unbound ones
+ * to the resolver in a single call, so evaluation itself never waits for input. The fail-fast resolver is the
+ * exception: with it, evaluation simply stops at the first unbound variable it reaches.
+ */
+@FunctionalInterface
+public interface VariableResolver {
+
+    /**
+     * Returns the values of the given unbound variables.
+     *
+     * @param names The names of the unbound variables, in the order they first appear in the expression.
+     * @return A map of the variables to their respective values. Every given name must be present.
+     * @throws Exception If the variables cannot be resolved.
+     */
+    Map<String, Double> resolve(Set<String> names) throws Exception;
+
+    /**
+     * The resolver that rejects every unbound variable. The evaluator recognizes it and skips the search for free
+     * variables, since evaluation fails on the first unbound variable anyway.
+     */
+    VariableResolver FAIL_FAST = names -> {
+        throw new Exception("Variable not defined: " + String.join(", ", names));
+    };
+
+    /**
+     * Returns a resolver that rejects every unbound variable.
+     *
+     * @return A resolver that always throws, the shared FAIL_FAST instance.
+     */
+    static VariableResolver failFast() {
+        return FAIL_FAST;
+    }
+
+    /**
+     * Returns a resolver that binds every unbound variable to the same value.
+     *
+     * @param value The value of the unbound variables.
+     * @return A resolver returning the given value for every variable.
+     */
+    static VariableResolver defaultValue(double value) {
+        return names -> {
+            Map<String, Double> values = new HashMap<>();
+            for (String name : names) {
+                values.put(name, value);
+            }
+            return values;
+        };
+    }
+}
@@ -0,0 +1,82 @@
+package com.example;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class contains a set of JUnit tests for the bulk evaluator.
+ */
+public class BulkEvaluatorTests {
+
+    /**
+     * Tests that bulk evaluation delivers results in input order and reports failing records without stopping.
+     *
+     * @throws Exception If there is an error reading or writing the records.
+     */
+    @Test
+    public void testBulkEvaluation() throws Exception {
+        StringBuilder records = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            records.append(i % 7 == 0 ? "x + sin(y" : "x * 2 + max(y, 1)").append(";x=").append(i).append("; y = 3\n");
+        }
+        records.append("x + z;x=1\n");
+        records.append("x;x=abc\n");
+        StringWriter output = new StringWriter();
+        long count;
+        try (BulkEvaluator evaluator = new BulkEvaluator(FunctionRegistry.standard(), 8)) {
+            count = evaluator.evaluate(new BufferedReader(new StringReader(records.toString())), output);
+            assertEquals(501, evaluator.getCache().getHits() + evaluator.getCache().getMisses());
+        }
+        assertEquals(502, count);
+        String[] lines = output.toString().split("\n");
+        assertEquals(502, lines.length);
+        for (int i = 0; i < 500; i++) {
+            if (i % 7 == 0) {
+                assertTrue(lines[i].startsWith("Error: "));
+            } else {
+                assertEquals(Double.toString(i * 2 + 3.0), lines[i]);
+            }
+        }
+        assertEquals("Error: Variable not defined: z", lines[500]);
+        assertEquals("Error: Invalid value for variable x: abc", lines[501]);
+    }
+
+    /**
+     * Tests that a failure without a message and an error thrown by a function are reported as failures
+     * of their own items, without stopping the other items.
+     */
+    @Test
+    public void testFailuresWithoutMessage() {
+        FunctionRegistry functions = FunctionRegistry.standard();
+        functions.register("missing", x -> {
+            throw new NullPointerException();
+        });
+        functions.register("fatal", x -> {
+            throw new AssertionError("fatal");
+        });
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 1.0);
+        List<BulkItem> items = new ArrayList<>();
+        items.add(new BulkItem("missing(x)", variables));
+        items.add(new BulkItem("fatal(x)", variables));
+        items.add(new BulkItem("x + 1", variables));
+        List<BulkResult> results = new ArrayList<>();
+        try (BulkEvaluator evaluator = new BulkEvaluator(functions, 4)) {
+            assertEquals(3, evaluator.evaluate(items.iterator(), results::add));
+        }
+        assertFalse(results.get(0).isSuccess());
+        assertEquals("java.lang.NullPointerException", results.get(0).getError());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("fatal", results.get(1).getError());
+        assertEquals(2.0, results.get(2).getValue(), 0.0);
+    }
+}
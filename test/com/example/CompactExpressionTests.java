@@ -0,0 +1,29 @@
+package com.example;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.HashMap;
+
+/**
+ * This class contains a set of JUnit tests for the compact form of expressions.
+ */
+public class CompactExpressionTests {
+
+    /**
+     * Tests that the compact form of an expression round-trips to the same tree and is smaller than the tree.
+     *
+     * @throws Exception If there is an error during parsing or converting the expression.
+     */
+    @Test
+    public void testCompactExpression() throws Exception {
+        FunctionRegistry functions = FunctionRegistry.standard();
+        String expression = "2 * (x + 3) ^ (1 / y) - max(x, sin(y), 4.5, x * x) + atan2(x, 2)";
+        Node root = ExpressionTreeBuilder.buildExpressionTree(expression, new HashMap<>(), functions);
+        CompactExpression compact = CompactExpression.parse(expression, functions);
+        assertEquals(root.toString(), compact.toNode().toString());
+        assertEquals(root.toString(), CompactExpression.fromNode(root).toNode().toString());
+        assertEquals(ExpressionOptimizer.countNodes(root), compact.size());
+        assertTrue(compact.estimateBytes() * 3 < CompactExpression.estimateBytes(root));
+    }
+}
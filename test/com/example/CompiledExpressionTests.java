@@ -0,0 +1,291 @@
+package com.example;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * This class contains a set of JUnit tests for the expression compiler and compiled expressions.
+ */
+public class CompiledExpressionTests {
+
+    /**
+     * Builds, compiles and evaluates an expression, checking that the results of the compiled program
+     * and of the generated bytecode match the tree evaluator.
+     *
+     * @param expression The expression to be evaluated.
+     * @param variables A map of variables in the expression to their respective values.
+     * @param functions A map of functions in the expression to their respective implementations.
+     * @return The result of the compiled expression.
+     * @throws Exception If there is an error during building, compiling or evaluating the expression.
+     */
+    private static double evaluateBoth(String expression, Map<String, Double> variables, Map<String, Function<Double, Double>> functions) throws Exception {
+        Node root = ExpressionTreeBuilder.buildExpressionTree(expression, variables, functions);
+        double expected = ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions);
+        CompiledExpression compiled = ExpressionCompiler.compile(root, functions);
+        double result = compiled.evaluate(variables);
+        assertEquals(expected, result, 0.0);
+        double[] values = compiled.getLayout().newValues();
+        compiled.getLayout().bind(variables, values);
+        assertEquals(expected, BytecodeCompiler.compile(compiled).evaluate(values), 0.0);
+        return result;
+    }
+
+    /**
+     * Tests compiling an expression with constants, variables, functions and every operator.
+     *
+     * @throws Exception If there is an error during building, compiling or evaluating the expression.
+     */
+    @Test
+    public void testMatchesTreeEvaluator() throws Exception {
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 2.0);
+        variables.put("y", 2.0);
+        variables.put("pi", Math.PI);
+        Map<String, Function<Double, Double>> functions = new HashMap<>();
+        functions.put("sin", Math::sin);
+        functions.put("ln", Math::log);
+        assertEquals(5.0, evaluateBoth("2 + 3", variables, functions), 0.0);
+        assertEquals(1.0, evaluateBoth("sin(pi/2)", variables, functions), 0.0);
+        assertEquals(4.47, evaluateBoth("2 * (x + 3) ^ (1 / y)", variables, functions), 0.01);
+        evaluateBoth("ln(x * y - 1) / (x - y / 4) + sin(sin(x)) ^ 2", variables, functions);
+    }
+
+    /**
+     * Tests evaluating a compiled expression repeatedly with changing variable values.
+     *
+     * @throws Exception If there is an error during building, compiling or evaluating the expression.
+     */
+    @Test
+    public void testRepeatedEvaluation() throws Exception {
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 0.0);
+        Map<String, Function<Double, Double>> functions = new HashMap<>();
+        Node root = ExpressionTreeBuilder.buildExpressionTree("x * x + 1", variables, functions);
+        CompiledExpression compiled = ExpressionCompiler.compile(root, functions);
+        for (int i = 0; i < 100; i++) {
+            variables.put("x", (double) i);
+            assertEquals(i * i + 1.0, compiled.evaluate(variables), 0.0);
+        }
+    }
+
+    /**
+     * Tests evaluating a compiled expression with an undefined variable.
+     *
+     * @throws Exception If there is an error during building, compiling or evaluating the expression.
+     */
+    @Test(expected = Exception.class)
+    public void testUndefinedVariable() throws Exception {
+        Map<String, Double> variables = new HashMap<>();
+        Map<String, Function<Double, Double>> functions = new HashMap<>();
+        Node root = ExpressionTreeBuilder.buildExpressionTree("x + 1", variables, functions);
+        ExpressionCompiler.compile(root, functions).evaluate(variables);
+    }
+
+    /**
+     * Tests evaluating a compiled expression with variables bound by slot.
+     *
+     * @throws Exception If there is an error during building, compiling or evaluating the expression.
+     */
+    @Test
+    public void testSlotEvaluation() throws Exception {
+        Map<String, Double> variables = new HashMap<>();
+        Map<String, Function<Double, Double>> functions = new HashMap<>();
+        Node root = ExpressionTreeBuilder.buildExpressionTree("y - x / y", variables, functions);
+        CompiledExpression compiled = ExpressionCompiler.compile(root, new VariableLayout("x", "y"), functions);
+        double[] values = compiled.getLayout().newValues();
+        values[1] = 4.0;
+        for (int i = 0; i < 100; i++) {
+            values[0] = i;
+            assertEquals(4.0 - i / 4.0, compiled.evaluate(values), 0.0);
+        }
+        assertEquals(1, ExpressionCompiler.compile(root, functions).getLayout().slotOf("x"));
+    }
+
+    /**
+     * Tests compiling an expression against a layout that is missing one of its variables.
+     *
+     * @throws Exception If there is an error during building or compiling the expression.
+     */
+    @Test(expected = Exception.class)
+    public void testVariableNotInLayout() throws Exception {
+        Map<String, Double> variables = new HashMap<>();
+        Map<String, Function<Double, Double>> functions = new HashMap<>();
+        Node root = ExpressionTreeBuilder.buildExpressionTree("x + z", variables, functions);
+        ExpressionCompiler.compile(root, new VariableLayout("x"), functions);
+    }
+
+    /**
+     * Tests evaluating a compiled expression over columns of variable values.
+     *
+     * @throws Exception If there is an error during building, compiling or evaluating the expression.
+     */
+    @Test
+    public void testBatchEvaluation() throws Exception {
+        Map<String, Double> variables = new HashMap<>();
+        Map<String, Function<Double, Double>> functions = new HashMap<>();
+        functions.put("sin", Math::sin);
+        Node root = ExpressionTreeBuilder.buildExpressionTree("(x - 1) * y / 2 + sin(x) ^ 2 - 3 ^ y", variables, functions);
+        CompiledExpression compiled = ExpressionCompiler.compile(root, new VariableLayout("x", "y"), functions);
+        int rows = BatchEvaluator.CHUNK_SIZE * 2 + 17;
+        double[][] columns = new double[2][rows];
+        for (int i = 0; i < rows; i++) {
+            columns[0][i] = i * 0.25;
+            columns[1][i] = 3.0 - i % 7;
+        }
+        double[] out = new double[rows];
+        BatchEvaluator.evaluate(compiled, columns, out);
+        double[] values = new double[2];
+        for (int i = 0; i < rows; i++) {
+            values[0] = columns[0][i];
+            values[1] = columns[1][i];
+            assertEquals(compiled.evaluate(values), out[i], 0.0);
+        }
+    }
+
+    /**
+     * Tests evaluating a compiled expression over rows and over a grid on several threads.
+     *
+     * @throws Exception If there is an error during building, compiling or evaluating the expression.
+     */
+    @Test
+    public void testParallelEvaluation() throws Exception {
+        Map<String, Double> variables = new HashMap<>();
+        Map<String, Function<Double, Double>> functions = new HashMap<>();
+        Node root = ExpressionTreeBuilder.buildExpressionTree("x * x - y / 3 + z", variables, functions);
+        CompiledExpression compiled = ExpressionCompiler.compile(root, new VariableLayout("x", "y", "z"), functions);
+        int rows = 100000;
+        double[][] columns = new double[3][rows];
+        for (int i = 0; i < rows; i++) {
+            columns[0][i] = i;
+            columns[1][i] = -i;
+            columns[2][i] = 1.5;
+        }
+        double[] out = new double[rows];
+        ParallelEvaluator.evaluate(compiled, columns, out);
+        double[] fromExecutor = new double[rows];
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ParallelEvaluator.evaluate(compiled, columns, fromExecutor, executor, 4);
+        } finally {
+            executor.shutdown();
+        }
+        for (int i = 0; i < rows; i++) {
+            double expected = (double) i * i + i / 3.0 + 1.5;
+            assertEquals(expected, out[i], 0.0);
+            assertEquals(expected, fromExecutor[i], 0.0);
+        }
+
+        double[] xs = {0, 1, 2, 3};
+        double[] ys = new double[5000];
+        for (int j = 0; j < ys.length; j++) {
+            ys[j] = j;
+        }
+        double[] grid = new double[xs.length * ys.length];
+        ParallelEvaluator.evaluateGrid(compiled, 0, 1, xs, ys, new double[] {0, 0, 2.0}, grid);
+        for (int j = 0; j < ys.length; j++) {
+            for (int i = 0; i < xs.length; i++) {
+                assertEquals(xs[i] * xs[i] - ys[j] / 3 + 2.0, grid[j * xs.length + i], 0.0);
+            }
+        }
+    }
+
+    /**
+     * Tests compiling an expression whose repeated subexpressions were merged into a DAG.
+     *
+     * @throws Exception If there is an error during building, compiling or evaluating the expression.
+     */
+    @Test
+    public void testCommonSubexpressions() throws Exception {
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 0.5);
+        variables.put("y", 3.0);
+        Map<String, Function<Double, Double>> functions = new HashMap<>();
+        functions.put("sin", Math::sin);
+        functions.put("cos", Math::cos);
+        String expression = "sin(x*y) + cos(x*y) * sin(x*y) - (x*y) ^ 2";
+        Node root = ExpressionTreeBuilder.buildExpressionTree(expression, variables, functions);
+        CommonSubexpressionEliminator eliminator = new CommonSubexpressionEliminator();
+        Node shared = eliminator.eliminate(root);
+        assertEquals(10, eliminator.getMergedNodes());
+        CompiledExpression tree = ExpressionCompiler.compile(root, functions);
+        CompiledExpression dag = ExpressionCompiler.compile(shared, functions);
+        assertEquals(2, dag.getTempCount());
+        assertEquals(tree.size() - 5, dag.size());
+
+        double expected = ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions);
+        double[] values = dag.getLayout().newValues();
+        dag.getLayout().bind(variables, values);
+        assertEquals(expected, dag.evaluate(values), 0.0);
+        assertEquals(expected, BytecodeCompiler.compile(dag).evaluate(values), 0.0);
+        double[] out = new double[3];
+        BatchEvaluator.evaluate(dag, new double[][] {{0.5, 0.5, 0.5}, {3.0, 3.0, 3.0}}, out);
+        assertEquals(expected, out[2], 0.0);
+    }
+
+    /**
+     * Tests that calls to impure functions are not merged, while calls to pure ones are.
+     *
+     * @throws Exception If there is an error during building the expression.
+     */
+    @Test
+    public void testImpureCallsNotMerged() throws Exception {
+        FunctionRegistry functions = FunctionRegistry.standard();
+        functions.register(ExpressionFunction.unary("f", x -> x, false));
+        Node root = ExpressionTreeBuilder.buildExpressionTree("f(x) + f(x) + sin(x) + sin(x)", new HashMap<>(), functions);
+        CommonSubexpressionEliminator eliminator = new CommonSubexpressionEliminator(functions);
+        Node shared = eliminator.eliminate(root);
+        assertEquals(4, eliminator.getMergedNodes());
+        Node left = shared.getChildren().get(0).getChildren().get(0);
+        assertNotSame(left.getChildren().get(0), left.getChildren().get(1));
+    }
+
+    /**
+     * Tests calling functions with several arguments from the registry in every evaluation tier.
+     *
+     * @throws Exception If there is an error during building, compiling or evaluating the expression.
+     */
+    @Test
+    public void testMultiArgumentFunctions() throws Exception {
+        FunctionRegistry functions = FunctionRegistry.standard();
+        functions.register(ExpressionFunction.nary("hypot3", 3, a -> Math.sqrt(a[0] * a[0] + a[1] * a[1] + a[2] * a[2]), true));
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", -2.0);
+        variables.put("y", 0.5);
+        Node root = ExpressionTreeBuilder.buildExpressionTree(
+                "atan2(y, x) + max(x, y * 4, 1) * min(3) - hypot3(x, y, 2) + sin(max(x, y))", variables, functions);
+        double expected = Math.atan2(0.5, -2.0) + 2.0 * 3.0 - Math.sqrt(4 + 0.25 + 4) + Math.sin(0.5);
+        assertEquals(expected, ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions), 0.0);
+
+        CompiledExpression compiled = ExpressionCompiler.compile(root, new VariableLayout("x", "y"), functions);
+        double[] values = {-2.0, 0.5};
+        assertEquals(expected, compiled.evaluate(values), 0.0);
+        assertEquals(expected, BytecodeCompiler.compile(compiled).evaluate(values), 0.0);
+        double[] out = new double[2];
+        BatchEvaluator.evaluate(compiled, new double[][] {{-2.0, -2.0}, {0.5, 0.5}}, out);
+        assertEquals(expected, out[1], 0.0);
+    }
+
+    /**
+     * Tests calling a function with the wrong number of arguments.
+     *
+     * @throws Exception If there is an error during building the expression.
+     */
+    @Test(expected = Exception.class)
+    public void testWrongArgumentCount() throws Exception {
+        ExpressionTreeBuilder.buildExpressionTree("atan2(1)", new HashMap<>(), FunctionRegistry.standard());
+    }
+
+    /**
+     * Tests that a function without arguments is rejected, since it could never be called.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testFunctionWithoutArguments() {
+        ExpressionFunction.nary("f", 0, arguments -> 1, true);
+    }
+}
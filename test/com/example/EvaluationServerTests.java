@@ -0,0 +1,95 @@
+package com.example;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class contains a set of JUnit tests for the evaluation server and its client.
+ */
+public class EvaluationServerTests {
+
+    /**
+     * Tests the evaluation server end to end on localhost: pipelined load from several connections gets the same
+     * values as local evaluation, repeated formulas are batched and compiled once, and errors are reported per request.
+     *
+     * @throws Exception If there is an error starting the server or on a connection.
+     */
+    @Test
+    public void testEvaluationServer() throws Exception {
+        FunctionRegistry functions = FunctionRegistry.standard();
+        try (EvaluationServer server = new EvaluationServer(0, functions)) {
+            List<BulkItem> items = LoadGenerator.workload(20000, 3);
+            LoadGenerator generator = new LoadGenerator(server.getPort(), 4, 512);
+            BulkResult[] results = generator.run(items);
+            for (int i = 0; i < items.size(); i++) {
+                BulkItem item = items.get(i);
+                Node root = ExpressionTreeBuilder.buildExpressionTree(item.getExpression(), item.getVariables(), functions);
+                double expected = ExpressionTreeEvaluator.evaluateExpressionTree(root, item.getVariables(), functions);
+                assertTrue(results[i].isSuccess());
+                assertEquals(expected, results[i].getValue(), 1e-12 * Math.max(1, Math.abs(expected)));
+            }
+            assertEquals(20000, server.getRequests());
+            assertTrue(server.getBatchedRequests() > 0);
+            assertEquals(0, server.getAcceptErrors());
+            assertEquals(4, server.getCache().getMisses());
+
+            try (EvaluationClient client = new EvaluationClient(server.getPort())) {
+                Map<String, Double> variables = new HashMap<>();
+                variables.put("x", 2.0);
+                client.send(1, "x * 3", variables);
+                client.send(2, "x * (3", variables);
+                client.send(3, "x * y", variables);
+                client.send(4, "x * 3", new HashMap<>());
+                client.send(5, "x * 3", variables);
+                assertEquals(6.0, client.receive().getValue(), 0.0);
+                assertTrue(client.receive().getError().startsWith("Expected ')'"));
+                assertEquals("Variable not defined: y", client.receive().getError());
+                BulkResult missing = client.receive();
+                assertEquals(4, missing.getIndex());
+                assertEquals("Variable not defined: x", missing.getError());
+                assertEquals(6.0, client.receive().getValue(), 0.0);
+                assertEquals(4.0, client.evaluate("x ^ 2", variables), 0.0);
+            }
+        }
+    }
+
+    /**
+     * Tests that a function throwing for some requests of a pipelined batch, with an exception that has no message,
+     * fails only those requests, each with an error, and leaves the connection usable.
+     *
+     * @throws Exception If there is an error starting the server or on the connection.
+     */
+    @Test
+    public void testFailingFunction() throws Exception {
+        FunctionRegistry functions = FunctionRegistry.standard().register("check", x -> {
+            if (x < 0) {
+                throw new IllegalArgumentException();
+            }
+            return x;
+        });
+        try (EvaluationServer server = new EvaluationServer(0, functions);
+             EvaluationClient client = new EvaluationClient(server.getPort())) {
+            for (int i = 0; i < 100; i++) {
+                Map<String, Double> variables = new HashMap<>();
+                variables.put("x", i % 10 == 3 ? -1.0 : i);
+                client.send(i, "check(x) + 1", variables);
+            }
+            for (int i = 0; i < 100; i++) {
+                BulkResult result = client.receive();
+                assertEquals(i, result.getIndex());
+                if (i % 10 == 3) {
+                    assertEquals("java.lang.IllegalArgumentException", result.getError());
+                } else {
+                    assertEquals(i + 1.0, result.getValue(), 0.0);
+                }
+            }
+            Map<String, Double> variables = new HashMap<>();
+            variables.put("x", 4.0);
+            assertEquals(5.0, client.evaluate("check(x) + 1", variables), 0.0);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class contains a set of JUnit tests for expression archives.
+ */
+public class ExpressionArchiveTests {
+
+    /**
+     * Tests writing expressions to an archive, loading them back lazily, and rejecting a file that is not an archive.
+     *
+     * @throws Exception If there is an error during writing or reading the archive.
+     */
+    @Test
+    public void testExpressionArchive() throws Exception {
+        FunctionRegistry functions = FunctionRegistry.standard();
+        List<String> expressions = new ArrayList<>();
+        List<CompactExpression> compacts = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            expressions.add("x" + i % 7 + " * " + i + ".5 - max(y, sin(x0 / " + (i + 1) + "), 2) ^ 2");
+            compacts.add(CompactExpression.parse(expressions.get(i), functions));
+        }
+        Path path = Files.createTempFile("expressions", ".bin");
+        try {
+            ExpressionArchive.write(path, compacts);
+            ExpressionArchive archive = ExpressionArchive.open(path);
+            assertEquals(1000, archive.size());
+            for (int i = 999; i >= 0; i -= 37) {
+                Node expected = ExpressionTreeBuilder.buildExpressionTree(expressions.get(i), new HashMap<>(), functions);
+                assertEquals(expected.toString(), archive.get(i).toNode().toString());
+            }
+            Files.write(path, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20});
+            try {
+                ExpressionArchive.open(path);
+                fail("Expected a file that is not an archive to be rejected");
+            } catch (Exception e) {
+                assertTrue(e.getMessage().startsWith("Not an expression archive"));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Tests that a corrupted entry is reported with its index, while the other entries can still be read.
+     *
+     * @throws Exception If there is an error during writing or reading the archive.
+     */
+    @Test
+    public void testCorruptEntry() throws Exception {
+        FunctionRegistry functions = FunctionRegistry.standard();
+        List<CompactExpression> compacts = new ArrayList<>();
+        compacts.add(CompactExpression.parse("x + 1", functions));
+        compacts.add(CompactExpression.parse("x + 1", functions));
+        Path path = Files.createTempFile("expressions", ".bin");
+        try {
+            ExpressionArchive.write(path, compacts);
+            byte[] bytes = Files.readAllBytes(path);
+            ByteBuffer data = ByteBuffer.wrap(bytes);
+            int entry = (int) data.getLong((int) data.getLong(12) + 8);
+            // The opcode of the first node follows the three counts, the name "x" and the constant 1.
+            bytes[entry + 12 + 3 + 8] = 0x7F;
+            Files.write(path, bytes);
+            ExpressionArchive archive = ExpressionArchive.open(path);
+            Node expected = ExpressionTreeBuilder.buildExpressionTree("x + 1", new HashMap<>(), functions);
+            assertEquals(expected.toString(), archive.get(0).toNode().toString());
+            try {
+                archive.get(1);
+                fail("Expected a corrupted entry to be rejected");
+            } catch (Exception e) {
+                assertEquals("Corrupt archive entry 1: Invalid node 0", e.getMessage());
+                assertNotNull(e.getCause());
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * This class contains a set of JUnit tests for the compiled expression cache.
+ */
+public class ExpressionCacheTests {
+
+    /**
+     * Tests that differently spaced copies of an expression share an entry and that the counters are updated.
+     *
+     * @throws Exception If there is an error during parsing or compiling the expression.
+     */
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        ExpressionCache cache = new ExpressionCache(10);
+        Map<String, Function<Double, Double>> functions = new HashMap<>();
+        CompiledExpression first = cache.get("x + 3", functions);
+        CompiledExpression second = cache.get(" x+3 ", functions);
+        assertSame(first, second);
+        functions.put("sin", Math::sin);
+        cache.get("x + 3", functions);
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+    }
+
+    /**
+     * Tests that the least recently used entry is evicted once the cache is full.
+     *
+     * @throws Exception If there is an error during parsing or compiling the expression.
+     */
+    @Test
+    public void testEviction() throws Exception {
+        ExpressionCache cache = new ExpressionCache(2);
+        Map<String, Function<Double, Double>> functions = new HashMap<>();
+        CompiledExpression one = cache.get("1", functions);
+        cache.get("2", functions);
+        cache.get("1", functions);
+        cache.get("3", functions);
+        assertEquals(1, cache.getEvictions());
+        assertSame(one, cache.get("1", functions));
+        assertEquals(3, cache.getMisses());
+        cache.get("2", functions);
+        assertEquals(4, cache.getMisses());
+    }
+
+    /**
+     * Tests that concurrent lookups of the same expression compile it only once.
+     *
+     * @throws Exception If there is an error during parsing or compiling the expression.
+     */
+    @Test
+    public void testConcurrentMisses() throws Exception {
+        ExpressionCache cache = new ExpressionCache(10);
+        Map<String, Function<Double, Double>> functions = new HashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<CompiledExpression>> lookups = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                lookups.add(() -> cache.get("2 * (x + 3) ^ (1 / y)", functions));
+            }
+            for (Future<CompiledExpression> result : executor.invokeAll(lookups)) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, cache.getMisses());
+        assertEquals(63, cache.getHits());
+    }
+
+    /**
+     * Tests that an invalid expression is reported and not cached.
+     *
+     * @throws Exception If there is an error during parsing or compiling the expression.
+     */
+    @Test(expected = Exception.class)
+    public void testInvalidExpression() throws Exception {
+        ExpressionCache cache = new ExpressionCache(10);
+        try {
+            cache.get("2 + * 3", new HashMap<>());
+        } finally {
+            assertEquals(0, cache.size());
+        }
+    }
+
+    /**
+     * Tests that registries giving different implementations the same names do not share entries.
+     *
+     * @throws Exception If there is an error during parsing or compiling the expression.
+     */
+    @Test
+    public void testRegistriesNotShared() throws Exception {
+        ExpressionCache cache = new ExpressionCache(10);
+        FunctionRegistry standard = FunctionRegistry.standard();
+        FunctionRegistry fast = FunctionRegistry.fastMath();
+        CompiledExpression exact = cache.get("sin(x)", standard);
+        assertNotSame(exact, cache.get("sin(x)", fast));
+        assertSame(exact, cache.get("sin(x)", standard));
+        Map<String, Function<Double, Double>> first = new HashMap<>();
+        first.put("f", x -> x + 1);
+        Map<String, Function<Double, Double>> second = new HashMap<>();
+        second.put("f", x -> x + 2);
+        assertEquals(2.0, cache.get("f(x)", first).evaluate(new double[] {1}), 0);
+        assertEquals(3.0, cache.get("f(x)", second).evaluate(new double[] {1}), 0);
+    }
+
+    /**
+     * Tests that whitespace separating two tokens is not removed, so that invalid expressions do not
+     * alias valid ones.
+     *
+     * @throws Exception If there is an error during parsing or compiling the expression.
+     */
+    @Test
+    public void testWhitespaceBetweenTokens() throws Exception {
+        ExpressionCache cache = new ExpressionCache(10);
+        assertEquals("x+3", ExpressionCache.normalize(" x +\t3 "));
+        assertEquals("1 2", ExpressionCache.normalize("1   2"));
+        assertEquals("sin x", ExpressionCache.normalize("sin x"));
+        assertEquals(12.0, cache.get("12", new HashMap<>()).evaluate(new double[0]), 0);
+        try {
+            cache.get("1 2", new HashMap<>());
+            fail("Expected an error for separated numbers");
+        } catch (Exception e) {
+            assertEquals(1, cache.size());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * This class contains a set of JUnit tests for the instrumentation of parsing and evaluation.
+ */
+public class ExpressionMetricsTests {
+
+    /**
+     * Tests that instrumentation counts each phase, the tokens and the nodes of each expression and the failures,
+     * that nothing is recorded while it is off, and that slow phases are reported as Flight Recorder events.
+     *
+     * @throws Exception If there is an error during building, evaluating or recording.
+     */
+    @Test
+    public void testMetrics() throws Exception {
+        FunctionRegistry functions = FunctionRegistry.standard();
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 1.0);
+        ExpressionMetrics.reset();
+        ExpressionTreeEvaluator.evaluateExpressionTree(
+                ExpressionTreeBuilder.buildExpressionTree("x + 1", variables, functions), variables, functions);
+        assertEquals(0, ExpressionMetrics.getCount(MetricsPhase.PARSE));
+
+        Path file = Files.createTempFile("metrics", ".jfr");
+        ExpressionMetrics.setEnabled(true);
+        ExpressionMetrics.setSlowThreshold(Duration.ZERO);
+        try (Recording recording = new Recording()) {
+            recording.enable("com.example.SlowParse");
+            recording.enable("com.example.SlowEvaluation");
+            recording.start();
+            Node root = ExpressionTreeBuilder.buildExpressionTree("2 * (x + 3)", variables, functions);
+            assertEquals(8.0, ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions), 0.0);
+            new Tokenizer("sin(x)").tokenize();
+            try {
+                ExpressionTreeBuilder.buildExpressionTree("2 +", variables, functions);
+                fail("Expected an error for the missing operand");
+            } catch (Exception e) {
+                assertTrue(e.getMessage().startsWith("Unexpected"));
+            }
+            recording.stop();
+            recording.dump(file);
+        } finally {
+            ExpressionMetrics.setEnabled(false);
+            ExpressionMetrics.setSlowThreshold(Duration.ofMillis(10));
+        }
+
+        assertEquals(1, ExpressionMetrics.getCount(MetricsPhase.PARSE));
+        assertEquals(1, ExpressionMetrics.getFailures(MetricsPhase.PARSE));
+        assertEquals(1, ExpressionMetrics.getCount(MetricsPhase.EVALUATE));
+        assertEquals(1, ExpressionMetrics.getCount(MetricsPhase.TOKENIZE));
+        assertEquals(7, ExpressionMetrics.getTokenCounts().getMax());
+        assertEquals(5, ExpressionMetrics.getNodeCounts().getMax());
+        assertEquals(1, ExpressionMetrics.getLatency(MetricsPhase.PARSE).getCount());
+
+        List<String> events = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            events.add(event.getEventType().getName());
+            if (event.getEventType().getName().equals("com.example.SlowEvaluation")) {
+                assertEquals(5, event.getInt("nodes"));
+                assertEquals(8.0, event.getDouble("result"), 0.0);
+            }
+        }
+        Files.delete(file);
+        assertTrue(events.contains("com.example.SlowParse"));
+        assertTrue(events.contains("com.example.SlowEvaluation"));
+        ExpressionMetrics.reset();
+    }
+
+    /**
+     * Tests that the histogram reports percentiles within its precision, and that its buckets cover every value.
+     */
+    @Test
+    public void testHistogram() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500.0, histogram.getMean(), 0.0);
+        assertEquals(1000000, histogram.getMax());
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue(median >= 500000 && median <= 500000 * 17 / 16);
+        assertEquals(1000000, histogram.getValueAtPercentile(100));
+        for (long value : new long[] {0, 31, 32, 33, 1000, 1L << 40, Long.MAX_VALUE}) {
+            int bucket = Histogram.bucketOf(value);
+            assertTrue(Histogram.upperBoundOf(bucket) >= value);
+            assertTrue(bucket == 0 || Histogram.upperBoundOf(bucket - 1) < value);
+        }
+    }
+}
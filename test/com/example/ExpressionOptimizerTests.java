@@ -0,0 +1,107 @@
+package com.example;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * This class contains a set of JUnit tests for the expression optimizer.
+ */
+public class ExpressionOptimizerTests {
+
+    /**
+     * Builds and optimizes an expression, checking that the optimized tree evaluates to the same result as the original.
+     *
+     * @param expression The expression to be optimized.
+     * @param optimizer The optimizer.
+     * @param variables A map of variables in the expression to their respective values.
+     * @param functions A map of functions in the expression to their respective implementations.
+     * @return The root node of the optimized tree.
+     * @throws Exception If there is an error during building, optimizing or evaluating the expression.
+     */
+    private static Node optimize(String expression, ExpressionOptimizer optimizer, Map<String, Double> variables,
+                                 Map<String, Function<Double, Double>> functions) throws Exception {
+        Node root = ExpressionTreeBuilder.buildExpressionTree(expression, variables, functions);
+        Node optimized = optimizer.optimize(root);
+        assertEquals(ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions),
+                ExpressionTreeEvaluator.evaluateExpressionTree(optimized, variables, functions), 0.0);
+        return optimized;
+    }
+
+    /**
+     * Tests folding constant subtrees and calls to pure functions.
+     *
+     * @throws Exception If there is an error during building, optimizing or evaluating the expression.
+     */
+    @Test
+    public void testConstantFolding() throws Exception {
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 3.0);
+        Map<String, Function<Double, Double>> functions = new HashMap<>();
+        functions.put("sin", Math::sin);
+        functions.put("cos", Math::cos);
+        FunctionRegistry registry = FunctionRegistry.of(functions);
+        registry.register("sin", Math::sin);
+        ExpressionOptimizer optimizer = new ExpressionOptimizer(registry);
+
+        Node folded = optimize("2 * 3 * x - 0", optimizer, variables, functions);
+        assertEquals(3, ExpressionOptimizer.countNodes(folded));
+        assertEquals(4, optimizer.getRemovedNodes());
+
+        Node call = optimize("sin(2 - 1) + cos(0)", optimizer, variables, functions);
+        assertEquals("+", call.getValue());
+        assertEquals(Double.toString(Math.sin(1.0)), call.getChildren().get(0).getValue());
+        assertEquals("cos", call.getChildren().get(1).getValue());
+    }
+
+    /**
+     * Tests algebraic identities and strength reductions.
+     *
+     * @throws Exception If there is an error during building, optimizing or evaluating the expression.
+     */
+    @Test
+    public void testIdentities() throws Exception {
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 1.5);
+        variables.put("y", -2.0);
+        Map<String, Function<Double, Double>> functions = new HashMap<>();
+        ExpressionOptimizer optimizer = new ExpressionOptimizer(FunctionRegistry.of(functions));
+
+        assertEquals("x", optimize("x ^ 1", optimizer, variables, functions).getValue());
+        assertEquals("x", optimize("1 * x / 1 - 0", optimizer, variables, functions).getValue());
+        assertEquals("1.0", optimize("(x + y) ^ 0", optimizer, variables, functions).getValue());
+        assertEquals("*", optimize("x ^ 2", optimizer, variables, functions).getValue());
+        assertEquals("^", optimize("(x + y) ^ 2", optimizer, variables, functions).getValue());
+        assertEquals("+", optimize("2 * y", optimizer, variables, functions).getValue());
+        Node division = optimize("y / 8", optimizer, variables, functions);
+        assertEquals("*", division.getValue());
+        assertEquals("0.125", division.getChildren().get(1).getValue());
+        assertEquals("/", optimize("y / 3", optimizer, variables, functions).getValue());
+        assertEquals(0, optimizer.getRemovedNodes());
+    }
+
+    /**
+     * Tests that adding zero is kept, since it turns -0.0 into +0.0.
+     *
+     * @throws Exception If there is an error during building, optimizing or evaluating the expression.
+     */
+    @Test
+    public void testSignedZero() throws Exception {
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", -0.0);
+        Map<String, Function<Double, Double>> functions = new HashMap<>();
+        ExpressionOptimizer optimizer = new ExpressionOptimizer(FunctionRegistry.of(functions));
+
+        Node sum = optimize("x + 0", optimizer, variables, functions);
+        assertEquals("+", sum.getValue());
+        assertEquals(Double.doubleToRawLongBits(0.0),
+                Double.doubleToRawLongBits(ExpressionTreeEvaluator.evaluateExpressionTree(sum, variables, functions)));
+        assertEquals("+", optimize("0 + x", optimizer, variables, functions).getValue());
+        Node difference = optimize("x - 0", optimizer, variables, functions);
+        assertEquals("x", difference.getValue());
+        assertEquals(Double.doubleToRawLongBits(-0.0),
+                Double.doubleToRawLongBits(ExpressionTreeEvaluator.evaluateExpressionTree(difference, variables, functions)));
+    }
+}
@@ -2,6 +2,10 @@ package com.example;
 
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import java.nio.CharBuffer;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.function.Function;
@@ -89,4 +93,63 @@ public class ExpressionTreeTests {
         Node root = ExpressionTreeBuilder.buildExpressionTree(expression, variables, functions);
         double result = ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions);
     }
+
+    /**
+     * Tests that the lexer reads the same tokens and number values as the tokenizer.
+     *
+     * @throws Exception If there is an error during tokenization.
+     */
+    @Test
+    public void testLexerMatchesTokenizer() throws Exception {
+        String expression = "0.1 + 12345678901234567890 * (x - 3.25) / sin(007.50, 0.00000000000000000000000001) ^ 1.";
+        List<Token> tokens = new Tokenizer(expression).tokenize();
+        Lexer lexer = new Lexer(CharBuffer.wrap(expression));
+        for (Token token : tokens) {
+            assertEquals(token.getType(), lexer.next());
+            assertEquals(token.getValue(), lexer.toToken().getValue());
+            if (token.getType() == TokenType.NUMBER) {
+                assertEquals(Double.parseDouble(token.getValue()), lexer.getNumber(), 0.0);
+            }
+        }
+        assertEquals(TokenType.EOF, lexer.next());
+    }
+
+    /**
+     * Tests resolving unbound variables with the default value and batched resolvers.
+     *
+     * @throws Exception If there is an error during building or evaluating the expression tree.
+     */
+    @Test
+    public void testVariableResolvers() throws Exception {
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 2.0);
+        FunctionRegistry functions = FunctionRegistry.standard();
+        Node root = ExpressionTreeBuilder.buildExpressionTree("x * y + sin(z) * y", variables, functions);
+        assertEquals(2.0 + Math.sin(1.0), ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions, VariableResolver.defaultValue(1.0)), 0.0);
+
+        AtomicReference<Set<String>> requested = new AtomicReference<>();
+        double result = ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions, names -> {
+            requested.set(names);
+            Map<String, Double> values = new HashMap<>();
+            values.put("y", 3.0);
+            values.put("z", 0.0);
+            return values;
+        });
+        assertEquals(6.0, result, 0.0);
+        assertEquals("[y, z]", requested.get().toString());
+        assertEquals(1, variables.size());
+    }
+
+    /**
+     * Tests evaluating an expression tree with an unbound variable and no resolver.
+     *
+     * @throws Exception If there is an error during building or evaluating the expression tree.
+     */
+    @Test(expected = Exception.class)
+    public void testUnboundVariable() throws Exception {
+        Map<String, Double> variables = new HashMap<>();
+        Map<String, Function<Double, Double>> functions = new HashMap<>();
+        Node root = ExpressionTreeBuilder.buildExpressionTree("x + 3", variables, functions);
+        ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions);
+    }
 }
@@ -0,0 +1,124 @@
+package com.example;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * This class contains a set of JUnit tests checking the accuracy of the fast math functions against StrictMath.
+ */
+public class FastMathTests {
+
+    /**
+     * The number of random arguments checked for each function and range.
+     */
+    private static final int SAMPLES = 200000;
+
+    /**
+     * Checks that a fast function stays within the declared relative error of its exact counterpart
+     * for random arguments in a range.
+     *
+     * @param fast The fast function.
+     * @param exact The exact function.
+     * @param low The lower bound of the range.
+     * @param high The upper bound of the range.
+     * @param random The source of arguments.
+     */
+    private static void assertAccurate(DoubleUnaryOperator fast, DoubleUnaryOperator exact, double low, double high, Random random) {
+        double worst = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            double x = low + (high - low) * random.nextDouble();
+            worst = Math.max(worst, relativeError(fast.applyAsDouble(x), exact.applyAsDouble(x)));
+        }
+        assertTrue("worst relative error in [" + low + ", " + high + "]", worst <= FastMath.RELATIVE_ERROR);
+    }
+
+    /**
+     * Returns the relative error of an approximation, or its absolute error if the exact value is 0.
+     *
+     * @param approximation The approximate value.
+     * @param exact The exact value.
+     * @return The relative error.
+     */
+    private static double relativeError(double approximation, double exact) {
+        if (approximation == exact) {
+            return 0;
+        }
+        return Math.abs(approximation - exact) / (exact == 0 ? 1 : Math.abs(exact));
+    }
+
+    /**
+     * Tests sin, cos and tan on small, medium and large angles, including angles beyond the reduced range.
+     */
+    @Test
+    public void testTrigonometricAccuracy() {
+        Random random = new Random(42);
+        double[][] ranges = {{-Math.PI / 4, Math.PI / 4}, {-10, 10}, {-1e4, 1e4}, {-1.6e6, 1.6e6}, {1e7, 1e9}};
+        for (double[] range : ranges) {
+            assertAccurate(FastMath::sin, StrictMath::sin, range[0], range[1], random);
+            assertAccurate(FastMath::cos, StrictMath::cos, range[0], range[1], random);
+            assertAccurate(FastMath::tan, StrictMath::tan, range[0], range[1], random);
+        }
+        for (int k = -64; k <= 64; k++) {
+            double x = k * Math.PI / 4;
+            assertTrue(relativeError(FastMath.sin(x), StrictMath.sin(x)) <= FastMath.RELATIVE_ERROR);
+            assertTrue(relativeError(FastMath.cos(x), StrictMath.cos(x)) <= FastMath.RELATIVE_ERROR);
+        }
+        assertEquals(0.0, FastMath.sin(0.0), 0.0);
+        assertEquals(1.0, FastMath.cos(0.0), 0.0);
+        assertTrue(Double.isNaN(FastMath.sin(Double.NaN)));
+        assertTrue(Double.isNaN(FastMath.cos(Double.POSITIVE_INFINITY)));
+        assertTrue(Double.isNaN(FastMath.tan(Double.NEGATIVE_INFINITY)));
+    }
+
+    /**
+     * Tests ln near 1, on ordinary numbers and across the whole exponent range, and its special cases.
+     */
+    @Test
+    public void testLogarithmAccuracy() {
+        Random random = new Random(7);
+        assertAccurate(FastMath::log, StrictMath::log, 0.5, 2, random);
+        assertAccurate(FastMath::log, StrictMath::log, 0.999, 1.001, random);
+        assertAccurate(FastMath::log, StrictMath::log, 1e-3, 1e6, random);
+        double worst = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            double x = Math.pow(10, -300 + 600 * random.nextDouble());
+            worst = Math.max(worst, relativeError(FastMath.log(x), StrictMath.log(x)));
+        }
+        assertTrue(worst <= FastMath.RELATIVE_ERROR);
+        assertEquals(0.0, FastMath.log(1.0), 0.0);
+        assertEquals(StrictMath.log(Double.MIN_VALUE), FastMath.log(Double.MIN_VALUE), 1e-12);
+        assertEquals(Double.NEGATIVE_INFINITY, FastMath.log(0.0), 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, FastMath.log(Double.POSITIVE_INFINITY), 0.0);
+        assertTrue(Double.isNaN(FastMath.log(-1.0)));
+        assertTrue(Double.isNaN(FastMath.log(Double.NaN)));
+    }
+
+    /**
+     * Tests that the fast registry is used when an expression is evaluated with it, and agrees with the standard one.
+     *
+     * @throws Exception If there is an error during building, compiling or evaluating the expression.
+     */
+    @Test
+    public void testFastMathRegistry() throws Exception {
+        FunctionRegistry fast = FunctionRegistry.fastMath();
+        FunctionRegistry standard = FunctionRegistry.standard();
+        assertEquals(new ArrayList<>(standard.names()), new ArrayList<>(fast.names()));
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 0.7);
+        Node root = ExpressionTreeBuilder.buildExpressionTree("sin(x) * cos(x) + tan(x) - ln(x)", variables, fast);
+        double exact = ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, standard);
+        double approximate = ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, fast);
+        assertEquals(exact, approximate, 1e-6);
+        assertEquals(approximate, ExpressionCompiler.compile(root, fast).evaluate(variables), 0.0);
+        CompiledGradient gradient = GradientCompiler.compile(root, fast);
+        double[] partials = gradient.newGradient();
+        gradient.evaluate(new double[] {0.7}, partials);
+        assertEquals(Math.cos(1.4) + 1 / (Math.cos(0.7) * Math.cos(0.7)) - 1 / 0.7, partials[0], 1e-6);
+    }
+}
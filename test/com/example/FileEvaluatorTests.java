@@ -0,0 +1,46 @@
+package com.example;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * This class contains a set of JUnit tests for the evaluation of CSV files.
+ */
+public class FileEvaluatorTests {
+
+    /**
+     * Tests evaluating an expression for every row of a CSV file, with windows small enough that lines
+     * cross window boundaries.
+     *
+     * @throws Exception If there is an error during evaluating the file.
+     */
+    @Test
+    public void testFileEvaluation() throws Exception {
+        Path input = Files.createTempFile("input", ".csv");
+        Path output = Files.createTempFile("output", ".csv");
+        try {
+            StringBuilder csv = new StringBuilder("x, label ,y\r\n");
+            for (int i = 0; i < 10000; i++) {
+                csv.append(i * 0.25).append(",row").append(i).append(',').append(-i).append("e-2\r\n");
+            }
+            csv.append("\n1.2345678901234567,last, 3.5");
+            Files.write(input, csv.toString().getBytes(StandardCharsets.US_ASCII));
+
+            long rows = new FileEvaluator("x * 2 + sin(y)", FunctionRegistry.standard(), 64).evaluate(input, output);
+            assertEquals(10001, rows);
+            List<String> lines = Files.readAllLines(output);
+            assertEquals("result", lines.get(0));
+            for (int i = 0; i < 10000; i++) {
+                assertEquals(i * 0.25 * 2 + Math.sin(-i / 100.0), Double.parseDouble(lines.get(i + 1)), 0.0);
+            }
+            assertEquals(1.2345678901234567 * 2 + Math.sin(3.5), Double.parseDouble(lines.get(10001)), 0.0);
+        } finally {
+            Files.delete(input);
+            Files.delete(output);
+        }
+    }
+}
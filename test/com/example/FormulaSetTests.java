@@ -0,0 +1,92 @@
+package com.example;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * This class contains a set of JUnit tests for formula sets.
+ */
+public class FormulaSetTests {
+
+    /**
+     * Tests that a formula set computes every formula like separate evaluation, shares subexpressions across
+     * formulas, and reports errors with the name of the formula.
+     *
+     * @throws Exception If there is an error during compiling or evaluating the formulas.
+     */
+    @Test
+    public void testFormulaSet() throws Exception {
+        FunctionRegistry functions = FunctionRegistry.standard();
+        Map<String, String> formulas = new LinkedHashMap<>();
+        formulas.put("total", "price * quantity * (1 + tax)");
+        formulas.put("net", "price * quantity");
+        formulas.put("margin", "(price * quantity - cost) / (price * quantity)");
+        formulas.put("scaled", "ln(price * quantity) + 2 * 3");
+        formulas.put("copy", "price * quantity * (1 + tax)");
+        FormulaSet set = FormulaSet.compile(formulas, functions);
+        assertEquals(5, set.size());
+        assertEquals(2, set.indexOf("margin"));
+        assertEquals(-1, set.indexOf("missing"));
+        assertTrue(set.getMergedNodes() >= 12);
+
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("price", 2.5);
+        variables.put("quantity", 4.0);
+        variables.put("tax", 0.2);
+        variables.put("cost", 6.0);
+        double[] results = set.evaluate(variables);
+        int i = 0;
+        for (String expression : formulas.values()) {
+            Node root = ExpressionTreeBuilder.buildExpressionTree(expression, variables, functions);
+            assertEquals(ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions), results[i++], 0.0);
+        }
+
+        double[] values = set.getLayout().newValues();
+        set.getLayout().bind(variables, values);
+        double[] reused = set.newResults();
+        set.evaluate(values, reused, set.newStack());
+        assertEquals(results[0], reused[0], 0.0);
+        assertEquals(results[4], reused[4], 0.0);
+
+        formulas.put("broken", "price * (quantity");
+        try {
+            FormulaSet.compile(formulas, functions);
+            fail("Expected an error for the broken formula");
+        } catch (Exception e) {
+            assertTrue(e.getMessage().startsWith("broken: "));
+        }
+    }
+
+    /**
+     * Tests that calls to an impure function are not merged, so that each call is made like in separate evaluation.
+     *
+     * @throws Exception If there is an error during compiling or evaluating the formulas.
+     */
+    @Test
+    public void testImpureFunction() throws Exception {
+        double[] calls = new double[1];
+        Map<String, Function<Double, Double>> counter = new HashMap<>();
+        counter.put("f", x -> ++calls[0]);
+        FunctionRegistry functions = FunctionRegistry.of(counter);
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 0.0);
+        Node root = ExpressionTreeBuilder.buildExpressionTree("f(x) + f(x)", variables, functions);
+        assertEquals(3.0, ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions), 0.0);
+
+        calls[0] = 0;
+        Map<String, String> formulas = new LinkedHashMap<>();
+        formulas.put("twice", "f(x) + f(x)");
+        formulas.put("once", "f(x)");
+        FormulaSet set = FormulaSet.compile(formulas, functions);
+        double[] results = set.evaluate(variables);
+        assertEquals(3.0, results[0], 0.0);
+        assertEquals(3.0, results[1], 0.0);
+        assertEquals(2, set.getMergedNodes());
+    }
+}
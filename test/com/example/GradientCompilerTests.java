@@ -0,0 +1,58 @@
+package com.example;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import java.util.HashMap;
+
+/**
+ * This class contains a set of JUnit tests for the gradient compiler and compiled gradients.
+ */
+public class GradientCompilerTests {
+
+    /**
+     * Tests that a compiled gradient matches the compiled value and central finite differences,
+     * including variables read several times, shared subexpressions and calls with several arguments.
+     *
+     * @throws Exception If there is an error during building or compiling the expression.
+     */
+    @Test
+    public void testGradient() throws Exception {
+        FunctionRegistry functions = FunctionRegistry.standard().register(
+                ExpressionFunction.unary("square", v -> v * v, true).withGradient((arguments, partials) -> partials[0] = 2 * arguments[0]));
+        Node root = ExpressionTreeBuilder.buildExpressionTree(
+                "x * y ^ 2 - sin(x / y) + ln(x + 3) * cos(y) + atan2(y, x) + max(x, 2 * y, 0.5) + tan(y) / (x + y)"
+                        + " + square(x - y) + min(x, y)",
+                new HashMap<>(), functions);
+        root = new CommonSubexpressionEliminator().eliminate(root);
+        CompiledExpression compiled = ExpressionCompiler.compile(root, functions);
+        CompiledGradient program = GradientCompiler.compile(root, compiled.getLayout(), functions);
+        double[] values = {1.5, 0.8};
+        double[] gradient = program.newGradient();
+        assertEquals(compiled.evaluate(values), program.evaluate(values, gradient), 0.0);
+        for (int slot = 0; slot < values.length; slot++) {
+            double h = 1e-6;
+            double[] shifted = values.clone();
+            shifted[slot] += h;
+            double above = compiled.evaluate(shifted);
+            shifted[slot] -= 2 * h;
+            double below = compiled.evaluate(shifted);
+            assertEquals((above - below) / (2 * h), gradient[slot], 1e-6);
+        }
+        CompiledGradient constantPower = GradientCompiler.compile(
+                ExpressionTreeBuilder.buildExpressionTree("(0 - 2) ^ 3 + x", new HashMap<>(), functions), functions).copy();
+        double[] single = new double[1];
+        assertEquals(-4.0, constantPower.evaluate(new double[] {4.0}, single), 0.0);
+        assertEquals(1.0, single[0], 0.0);
+    }
+
+    /**
+     * Tests that differentiating a call to a function without declared derivatives fails.
+     *
+     * @throws Exception If the function has no derivative.
+     */
+    @Test(expected = Exception.class)
+    public void testGradientWithoutDerivative() throws Exception {
+        FunctionRegistry functions = FunctionRegistry.standard().register("cube", x -> x * x * x);
+        GradientCompiler.compile(ExpressionTreeBuilder.buildExpressionTree("cube(x)", new HashMap<>(), functions), functions);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class contains a set of JUnit tests for the incremental evaluator.
+ */
+public class IncrementalEvaluatorTests {
+
+    /**
+     * Tests that setting a variable in an incremental session recomputes only the nodes that depend on it
+     * and keeps the value equal to a full evaluation.
+     *
+     * @throws Exception If there is an error during building or evaluating the expression tree.
+     */
+    @Test
+    public void testIncrementalEvaluation() throws Exception {
+        FunctionRegistry functions = FunctionRegistry.standard();
+        Map<String, Double> variables = new HashMap<>();
+        String[] names = {"a", "b", "c", "d", "e", "f"};
+        for (int i = 0; i < names.length; i++) {
+            variables.put(names[i], i + 1.0);
+        }
+        Node root = ExpressionTreeBuilder.buildExpressionTree(
+                "((a + b) * c + sin(d) * (e - f)) / max(a, d, e, 2) + a ^ 2", variables, functions);
+        IncrementalEvaluator session = new IncrementalEvaluator(root, variables, functions);
+        assertEquals(ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions), session.getValue(), 0.0);
+
+        session.set("f", 10.0);
+        assertEquals(5, session.getRecomputedNodes());
+        session.set("f", 10.0);
+        assertEquals(0, session.getRecomputedNodes());
+        session.set("c", 3.0);
+        assertEquals(0, session.getRecomputedNodes());
+        variables.put("f", 10.0);
+
+        for (int i = 0; i < 100; i++) {
+            String name = names[i % names.length];
+            double value = Math.sin(i) * 10;
+            variables.put(name, value);
+            assertEquals(ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions),
+                    session.set(name, value), 0.0);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class contains a set of JUnit tests for memoized functions and their cache.
+ */
+public class MemoCacheTests {
+
+    /**
+     * Tests that a memoized function calls its implementation once per distinct argument, reports its hit rate,
+     * stays within its capacity by evicting, and gives the right results when evaluated from several threads.
+     *
+     * @throws Exception If there is an error during compiling or evaluating, or a thread fails.
+     */
+    @Test
+    public void testMemoizedFunction() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ExpressionFunction lookup = ExpressionFunction.unary("lookup", x -> {
+            calls.incrementAndGet();
+            return Math.sqrt(x) * 10;
+        }, true).memoized(256);
+        FunctionRegistry functions = FunctionRegistry.standard().register(lookup);
+        CompiledExpression compiled = ExpressionCompiler.compile(
+                ExpressionTreeBuilder.buildExpressionTree("lookup(x) + lookup(x + 1)", new HashMap<>(), functions), functions);
+        double[] values = new double[1];
+        for (int i = 0; i < 1000; i++) {
+            values[0] = i % 50;
+            assertEquals(Math.sqrt(i % 50) * 10 + Math.sqrt(i % 50 + 1) * 10, compiled.evaluate(values), 1e-12);
+        }
+        MemoCache cache = lookup.getMemoCache();
+        assertEquals(51, calls.get());
+        assertEquals(51, cache.getMisses());
+        assertEquals(1949, cache.getHits());
+        assertEquals(0.9745, cache.getHitRate(), 1e-9);
+        assertEquals(0, cache.getEvictions());
+
+        for (int i = 0; i < 10 * cache.capacity(); i++) {
+            lookup.apply(1000 + i);
+        }
+        assertTrue(cache.getEvictions() >= 9 * cache.capacity());
+        assertEquals(Math.sqrt(7) * 10, lookup.apply(7), 0.0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100000; i++) {
+                        double x = i % 3000;
+                        if (lookup.apply(x) != Math.sqrt(x) * 10) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        try {
+            ExpressionFunction.unary("random", x -> Math.random(), false).memoized(16);
+            fail("Expected an impure function to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Function random is not pure", e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that memoizing a function keeps its derivatives, whether declared as a derivative or as a gradient.
+     *
+     * @throws Exception If there is an error during building or differentiating the expression.
+     */
+    @Test
+    public void testMemoizedDerivatives() throws Exception {
+        FunctionRegistry functions = new FunctionRegistry();
+        functions.register(ExpressionFunction.unary("square", x -> x * x, true)
+                .withGradient((arguments, partials) -> partials[0] = 2 * arguments[0]).memoized(16));
+        functions.register(ExpressionFunction.unary("cube", x -> x * x * x, true).withDerivative(x -> 3 * x * x).memoized(16));
+        assertTrue(functions.get("square").isDifferentiable());
+        assertTrue(functions.get("cube").isDifferentiable());
+        CompiledGradient program = GradientCompiler.compile(
+                ExpressionTreeBuilder.buildExpressionTree("square(x) + cube(x)", new HashMap<>(), functions), functions);
+        double[] gradient = program.newGradient();
+        assertEquals(12.0, program.evaluate(new double[] {2.0}, gradient), 0.0);
+        assertEquals(16.0, gradient[0], 0.0);
+    }
+
+    /**
+     * Tests memoizing a function with one argument that was declared with nary().
+     */
+    @Test
+    public void testMemoizedNaryFunction() {
+        int[] calls = new int[1];
+        ExpressionFunction half = ExpressionFunction.nary("half", 1, arguments -> {
+            calls[0]++;
+            return arguments[0] / 2;
+        }, true).memoized(16);
+        assertEquals(1.5, half.apply(3.0), 0.0);
+        assertEquals(1.5, half.apply(new double[] {3.0}), 0.0);
+        assertEquals(1, calls[0]);
+    }
+}
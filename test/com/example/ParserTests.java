@@ -0,0 +1,61 @@
+package com.example;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class contains a set of JUnit tests for the parser.
+ */
+public class ParserTests {
+
+    /**
+     * Tests that ^ is right-associative and binds tighter than the other operators.
+     *
+     * @throws Exception If there is an error during building or evaluating the expression tree.
+     */
+    @Test
+    public void testPowerAssociativity() throws Exception {
+        Map<String, Double> variables = new HashMap<>();
+        FunctionRegistry functions = FunctionRegistry.standard();
+        Node root = ExpressionTreeBuilder.buildExpressionTree("2 ^ 3 ^ 2", variables, functions);
+        assertEquals(512.0, ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions), 0.0);
+        root = ExpressionTreeBuilder.buildExpressionTree("2 * 3 ^ 2 ^ 0.5 / (4 - 2) ^ 2", variables, functions);
+        assertEquals(2 * Math.pow(3, Math.sqrt(2)) / 4, ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions), 1e-12);
+    }
+
+    /**
+     * Tests parsing, evaluating, compiling and converting expressions nested far deeper than a recursive walk
+     * could handle.
+     *
+     * @throws Exception If there is an error during building, compiling or evaluating the expression.
+     */
+    @Test
+    public void testDeeplyNestedExpression() throws Exception {
+        int depth = 200000;
+        StringBuilder expression = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            expression.append(i % 2 == 0 ? "(" : "max(");
+        }
+        expression.append("x");
+        for (int i = depth - 1; i >= 0; i--) {
+            expression.append(i % 2 == 0 ? " + 1)" : ", 0)");
+        }
+        FunctionRegistry functions = FunctionRegistry.standard();
+        CompactExpression compact = CompactExpression.parse(expression.toString(), functions);
+        assertEquals(2 * depth + 1, compact.size());
+
+        Map<String, Double> variables = new HashMap<>();
+        variables.put("x", 1.0);
+        Node root = ExpressionTreeBuilder.buildExpressionTree(expression.toString(), variables, functions);
+        double expected = depth / 2 + 1;
+        assertEquals(expected, ExpressionTreeEvaluator.evaluateExpressionTree(root, variables, functions), 0.0);
+        assertEquals(expected, ExpressionTreeEvaluator.evaluateExpressionTree(root, new HashMap<>(), functions,
+                VariableResolver.defaultValue(1.0)), 0.0);
+        assertEquals(expected, ExpressionCompiler.compile(root, functions).evaluate(new double[] {1.0}), 0.0);
+        assertEquals(2 * depth + 1, CompactExpression.fromNode(root).size());
+        assertTrue(CompactExpression.estimateBytes(root) > CompactExpression.fromNode(root).estimateBytes());
+    }
+}
@@ -0,0 +1,51 @@
+package com.example;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.util.HashMap;
+
+/**
+ * This class contains a set of JUnit tests for the validation of expressions.
+ */
+public class ValidationTests {
+
+    /**
+     * Tests that validation lists every error with its position and kind, that the result can be reused,
+     * and that the throwing API reports the first of the same errors.
+     */
+    @Test
+    public void testValidation() {
+        FunctionRegistry functions = FunctionRegistry.standard();
+        ValidationResult result = new ValidationResult();
+        assertFalse(ExpressionTreeBuilder.validate("2 + * x # 3) + atan2(1) + (sin 4", functions, result));
+        assertEquals(8, result.getErrorCount());
+        assertEquals(ParseErrorKind.MISSING_OPERAND, result.getKind(0));
+        assertEquals(4, result.getPosition(0));
+        assertEquals("operand", result.getExpected(0));
+        assertEquals(ParseErrorKind.INVALID_CHARACTER, result.getKind(1));
+        assertEquals(8, result.getPosition(1));
+        assertEquals(ParseErrorKind.UNEXPECTED_TOKEN, result.getKind(2));
+        assertEquals(10, result.getPosition(2));
+        assertEquals(ParseErrorKind.UNEXPECTED_TOKEN, result.getKind(3));
+        assertEquals(11, result.getPosition(3));
+        assertEquals(ParseErrorKind.WRONG_ARGUMENT_COUNT, result.getKind(4));
+        assertEquals(15, result.getPosition(4));
+        assertEquals(ParseErrorKind.MISSING_LEFT_PAREN, result.getKind(5));
+        assertEquals(ParseErrorKind.UNEXPECTED_TOKEN, result.getKind(6));
+        assertEquals(ParseErrorKind.MISSING_RIGHT_PAREN, result.getKind(7));
+        assertEquals(32, result.getPosition(7));
+        assertEquals("')'", result.getExpected(7));
+
+        assertTrue(ExpressionTreeBuilder.validate("max(x, 2) ^ (y - 1)", functions, result));
+        assertEquals(0, result.getErrorCount());
+        try {
+            ExpressionTreeBuilder.buildExpressionTree("sin(x", new HashMap<>(), functions);
+            fail("Expected an error for the missing parenthesis");
+        } catch (Exception e) {
+            assertEquals("Expected ')' after function argument", e.getMessage());
+        }
+    }
+}